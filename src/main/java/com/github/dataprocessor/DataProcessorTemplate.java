@@ -1,19 +1,33 @@
 package com.github.dataprocessor;
 
+import com.github.dataprocessor.deadletter.DeadLetterFile;
+import com.github.dataprocessor.lease.SliceLeaseCoordinator;
 import com.github.dataprocessor.provider.Page;
+import com.github.dataprocessor.provider.Weigher;
 import com.github.dataprocessor.slice.*;
+import com.github.dataprocessor.threadpool.AdaptiveConcurrencyLimiter;
+import com.github.dataprocessor.threadpool.BatchExecutor;
+import com.github.dataprocessor.threadpool.BatchGroup;
+import com.github.dataprocessor.threadpool.CircuitBreaker;
 import com.github.dataprocessor.threadpool.DefaultThreadPoolFactory;
+import com.github.dataprocessor.threadpool.InFlightBudget;
+import com.github.dataprocessor.threadpool.RetryScheduler;
 import com.github.dataprocessor.threadpool.ThreadPoolFactory;
-import com.github.dataprocessor.util.RetryUtil;
+import com.github.dataprocessor.threadpool.VirtualThreadPoolFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * 数据处理器模板，使用此模板，需要实现
@@ -64,12 +78,113 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
      * 多个分片同时启动时，每个启动之间的间隔，单位毫秒
      * <p>
      * 有些查询会比较耗时，如果同时启动太多个分片，会导致数据库压力过大导致超时，建议在会给数据库造成压力的时候适当调整此参数
+     * <p>
+     * 只有第一批同时启动的 slicesThreadNum 个分片之间会错开，之后每当有分片处理结束就立即启动下一个分片
      */
     private long launchInterval = 3000L;
+    /**
+     * 是否根据首页的获取耗时错开分片的启动，若是则第一批分片中上一个分片获取到第一页后就启动下一个分片，最多等待 launchInterval
+     */
+    private boolean adaptiveLaunchInterval;
+    /**
+     * 正在启动的分片获取到第一页时的通知，只在开启 adaptiveLaunchInterval 时使用
+     */
+    private final Map<Slice<S>, CountDownLatch> firstPageSignals = new ConcurrentHashMap<>();
+    /**
+     * 是否动态拆分正在处理的分片，若是则有空闲的启动线程时，正在处理的分片在分页边界把还没有读取的部分拆分成子分片交给空闲的启动线程
+     */
+    private boolean dynamicSplitting;
+    /**
+     * 本轮待启动的分片队列，只在启动分片期间不为null
+     */
+    private volatile SliceLaunchQueue<S> pendingSlices;
+    /**
+     * 本轮的分片启动槽位，只在启动分片期间不为null
+     */
+    private volatile Semaphore launcherSlots;
+    /**
+     * 分片成本估算器，不为null时按预估成本从大到小启动分片
+     */
+    private SliceCostEstimator<S> sliceCostEstimator;
+    /**
+     * 最近一次执行中处理成功的分片的实际成本，即处理的数据量
+     */
+    private final Map<Slice<S>, Long> sliceCosts = new ConcurrentHashMap<>();
     /**
      * 线程池工厂
      */
     private ThreadPoolFactory threadPoolFactory;
+    /**
+     * 所有分片共享的批次处理线程数，小于等于0时使用 {@link #desiredThreadNum()}
+     */
+    private int batchThreadNum;
+    /**
+     * 分片启动线程池，每次执行期间所有分片共享
+     */
+    private ExecutorService sliceLauncher;
+    /**
+     * 批次任务执行引擎，每次执行期间所有分片共享
+     */
+    private BatchExecutor batchExecutor;
+    /**
+     * 分页预取深度，即每个分片在处理当前页的同时最多提前获取的页数，0表示不预取
+     */
+    private int prefetchDepth;
+    /**
+     * 分页预取线程池，只在开启预取时创建
+     */
+    private ExecutorService pageFetcher;
+    /**
+     * 是否快速失败，若是则分片中第一个批次失败后不再获取后续分页，并取消本分片还在排队的批次
+     */
+    private boolean failFast;
+    /**
+     * 是否只重新处理失败的批次，若是则分片失败时通过 SliceRecorder 记录失败的批次，重新处理时只处理这些批次
+     */
+    private boolean retryFailedBatchesOnly;
+    /**
+     * 是否保存分页检查点，若是则分片中每一页及其之前的页的批次都处理成功后，通过 SliceRecorder 保存这一页的游标，
+     * 断点续传时从检查点的下一页继续处理
+     */
+    private boolean checkpointEnabled;
+    /**
+     * 本次执行中各分片开始处理时使用的检查点
+     */
+    private volatile Map<Slice<S>, PageCursor> checkpoints = Collections.emptyMap();
+    /**
+     * 是否根据批次的执行耗时自适应调整同时执行的批次数，若是则 batchThreadNum 为并发数的上限
+     */
+    private boolean adaptiveConcurrency;
+    /**
+     * 最近一次执行使用的自适应并发限制器，执行结束后保留以便查看统计数据
+     */
+    private volatile AdaptiveConcurrencyLimiter concurrencyLimiter;
+    /**
+     * 所有分片在途（已提交但还没有处理完）的数据条数和估算字节数的上限，小于等于0则不限制
+     */
+    private long maxInFlightRecords;
+    private long maxInFlightBytes;
+    /**
+     * 估算数据字节数的权重估算器，为null则不限制字节数
+     */
+    private Weigher<? super T> weigher;
+    /**
+     * 最近一次执行使用的在途数据预算，执行结束后保留以便查看统计数据，未开启时为null
+     */
+    private volatile InFlightBudget inFlightBudget;
+    /**
+     * 多节点分片协调器，不为null时只处理领取到租约的分片，其他节点持有的分片等其完成或者租约过期
+     */
+    private SliceLeaseCoordinator<S> leaseCoordinator;
+    /**
+     * 静态分区的序号和分区数，分区数大于1时本进程只处理分配给本分区的分片
+     */
+    private int shardIndex;
+    private int shardCount = 1;
+    /**
+     * 按预估成本分区时使用的成本估算器，为null则按分片的哈希值分区
+     */
+    private SliceCostEstimator<S> shardCostEstimator;
 
     /**
      * 执行任务失败的重试次数
@@ -79,6 +194,30 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
      * 被重试的方法是否可以接受null值，若不能接受则如果方法返回null值视为失败
      */
     private boolean retryNullable = true;
+    /**
+     * 第一次重试前的退避间隔，之后每次翻倍，不超过 retryMaxDelay，单位毫秒
+     */
+    private long retryBaseDelay = 500L;
+    private long retryMaxDelay = 10_000L;
+    /**
+     * 重试预算，即重试次数与调用次数的比例上限，防止目标系统故障时大量重试
+     */
+    private double retryBudgetRatio = 0.2;
+    /**
+     * 本次执行的重试调度器，执行结束后保留以便查看统计数据
+     */
+    private volatile RetryScheduler retryScheduler;
+    /**
+     * 数据来源（getResources）和处理目标（批次任务）的熔断器，所有分片共享，为null则不熔断
+     */
+    private CircuitBreaker sourceCircuitBreaker;
+    private CircuitBreaker sinkCircuitBreaker;
+    /**
+     * 死信文件，不为null时开启故障隔离：批次重试之后仍然失败则不断对半拆分重新处理，
+     * 拆分到 minIsolationBatchSize 仍然失败的数据写入死信文件，批次视为成功
+     */
+    private DeadLetterFile<T> deadLetterFile;
+    private int minIsolationBatchSize = 1;
 
     /**
      * @param threadPoolFactory 线程池工厂
@@ -153,6 +292,17 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
      */
     protected abstract Set<Slice<S>> generateSlices();
 
+    /**
+     * 获取分片来源，处理时边遍历边启动分片，记录器也可以只保存分片的生成规则
+     * <p>
+     * 默认使用 {@link #generateSlices()} 生成的分片集合，分片数量很多时可以重写此方法返回 {@link RangeSliceSource} 等按需生成的分片来源
+     *
+     * @return 分片来源
+     */
+    protected SliceSource<S> sliceSource() {
+        return SliceSource.of(generateSlices());
+    }
+
     /**
      * 从数据源获取需要处理的资源
      * <p>
@@ -173,6 +323,31 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
      */
     protected abstract Callable<?> createTask(List<T> resources);
 
+    /**
+     * 将分片拆分成多个子分片，子分片合起来必须与原分片完全相同，用于动态拆分
+     * <p>
+     * 默认不拆分
+     *
+     * @param slice 需要拆分的分片
+     * @return 子分片，不能拆分时返回空列表
+     */
+    protected List<Slice<S>> splitSlice(Slice<S> slice) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 获取分片中在给定的页之后还没有读取的部分，用于动态拆分正在处理的分片
+     * <p>
+     * 只有按分片的键的顺序分页读取时才能确定，默认返回null，即不拆分正在处理的分片
+     *
+     * @param slice    正在处理的分片
+     * @param lastPage 已经读取的最后一页
+     * @return 还没有读取的部分，无法确定时返回null
+     */
+    protected Slice<S> remainingSlice(Slice<S> slice, Page<T> lastPage) {
+        return null;
+    }
+
     /**
      * 处理数据，如果有任务正在执行（state!=0），不允许调用此方法
      */
@@ -180,21 +355,82 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
     public boolean process() {
         runState();
         try {
-            Set<Slice<S>> slices = generateSlices();
-            return launchSlices(slices);
+            return launchSlices(shard(sliceSource()));
         } finally {
-            state = 0;
+            stopState();
+        }
+    }
+
+    /**
+     * 取出分配给本分区的分片
+     * <p>
+     * 通过 {@link #setShard(int, int, SliceCostEstimator)} 指定了成本估算器时按预估成本均衡分配，需要先取出全部分片；
+     * 否则按分片序列化后的哈希值分配，边遍历边过滤
+     *
+     * @param source 全部分片
+     * @return 本分区的分片
+     */
+    private SliceSource<S> shard(SliceSource<S> source) {
+        if (shardCount <= 1 || source == null) {
+            return source;
+        }
+        if (shardCostEstimator != null) {
+            List<Slice<S>> all = new ArrayList<>();
+            for (Slice<S> slice : source) {
+                if (slice != null) {
+                    all.add(slice);
+                }
+            }
+            List<Slice<S>> assigned = SliceSchedule.shardByCost(all, shardCostEstimator, sliceParser::serialize, shardIndex, shardCount);
+            logger.info("按预估成本分区，本分区 {}/{} 分配到 {} 个分片，共 {} 个分片", shardIndex, shardCount, assigned.size(), all.size());
+            return SliceSource.of(new LinkedHashSet<>(assigned));
         }
+        logger.info("按分片的哈希值分区，本分区: {}/{}", shardIndex, shardCount);
+        return () -> new Iterator<Slice<S>>() {
+            private final Iterator<Slice<S>> it = source.iterator();
+            private Slice<S> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && it.hasNext()) {
+                    Slice<S> slice = it.next();
+                    // 使用序列化后的字符串而不是分片本身的哈希值，保证各进程计算的结果相同
+                    if (slice != null && Math.floorMod(sliceParser.serialize(slice).hashCode(), shardCount) == shardIndex) {
+                        next = slice;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Slice<S> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Slice<S> slice = next;
+                next = null;
+                return slice;
+            }
+        };
     }
 
-    private boolean launchSlices(Set<Slice<S>> slices) {
+    private boolean launchSlices(SliceSource<S> slices) {
         long start = System.currentTimeMillis();
         sliceRecorder.clearRecord();
+        // 只在启动时保存全部分片，重新处理失败分片时不能覆盖，否则断点续传时无法与已完成的分片取差集
+        if (slices != null && !slices.isEmpty()) {
+            sliceRecorder.saveSliceSource(slices);
+            // 清理记录之后重新保存要处理的分片的检查点，防止再次中断时丢失
+            for (Map.Entry<Slice<S>, PageCursor> entry : checkpoints.entrySet()) {
+                sliceRecorder.saveCheckpoint(entry.getKey(), entry.getValue());
+            }
+        }
         counter.set(0);
         Set<Slice<S>> errorSlices = launchBySliceTasks(slices);
         if (!errorSlices.isEmpty()) {
             logger.info("有{}个分片失败了，尝试重新处理失败的分片: {}", errorSlices.size(), errorSlices);
-            errorSlices = launchBySliceTasks(errorSlices);
+            checkpoints = getCheckpoints();
+            errorSlices = launchBySliceTasks(SliceSource.of(errorSlices), getFailedBatches());
         }
         if (errorSlices.isEmpty()) {
             logger.info("数据处理任务全部完成，总量:{}, 共耗时:{}", counter.get(), (System.currentTimeMillis() - start));
@@ -225,14 +461,14 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
                 return true;
             }
             // 排除掉已完成的
-            Set<Slice<S>> completed = sliceRecorder.getCompletedSlices();
-            errorSlices.removeAll(completed);
+            removeCompleted(errorSlices, sliceRecorder.getCompletedSlices(), sliceRecorder.getSplitSlices());
             if (errorSlices.isEmpty()) {
                 logger.info("有获取到{}个失败的分片，但之前已全部处理完成");
                 return true;
             }
             logger.info("共获取到 {} 个处理失败的分片，现在开始处理", errorSlices.size());
-            Set<Slice<S>> err = launchBySliceTasks(errorSlices);
+            checkpoints = getCheckpoints();
+            Set<Slice<S>> err = launchBySliceTasks(SliceSource.of(errorSlices), getFailedBatches());
             if (err.isEmpty()) {
                 logger.info("失败的分片重新处理完毕，总量: {}, 耗时: {}", errorSlices.size(), (System.currentTimeMillis() - start));
                 return true;
@@ -242,7 +478,7 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
                 return false;
             }
         } finally {
-            state = 0;
+            stopState();
         }
     }
 
@@ -257,7 +493,7 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
     public boolean resumeProgress() {
         runState();
         try {
-            Set<Slice<S>> allSlice = sliceRecorder.getAllSlices();
+            SliceSource<S> allSlice = sliceRecorder.getSliceSource();
             if (allSlice == null || allSlice.isEmpty()) {
                 String msg = "没有读取到上次执行的分片记录，无法恢复上次的未完成任务，请重新进行全量处理";
                 logger.warn(msg);
@@ -269,10 +505,30 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
                 logger.warn(msg);
                 throw new IllegalStateException(msg);
             }
-            boolean isRemoved = allSlice.removeAll(completedSlice);
+            // 逐个遍历而不是生成全部分片，只要有一个已完成的分片在上次的分片中就可以取差集
+            boolean isRemoved = false;
+            for (Slice<S> slice : allSlice) {
+                if (completedSlice.contains(slice)) {
+                    isRemoved = true;
+                    break;
+                }
+            }
             if (isRemoved) {
+                // 已完成的分片如果被动态拆分过，其未完成的子分片需要继续处理
+                List<Slice<S>> unfinishedSplitSlices = new ArrayList<>();
+                for (Map.Entry<Slice<S>, List<Slice<S>>> entry : sliceRecorder.getSplitSlices().entrySet()) {
+                    if (completedSlice.contains(entry.getKey())) {
+                        for (Slice<S> child : entry.getValue()) {
+                            if (!completedSlice.contains(child)) {
+                                unfinishedSplitSlices.add(child);
+                            }
+                        }
+                    }
+                }
                 logger.info("开始恢复上次未完成的任务");
-                launchSlices(allSlice);
+                // 未完成的分片从检查点继续处理，需要在清理记录之前读取
+                checkpoints = getCheckpoints();
+                launchSlices(allSlice.excluding(completedSlice, unfinishedSplitSlices));
                 logger.info("恢复上次未完成的任务结束");
             } else {
                 String msg = "上次记录的时间分片与已完成的分片无法取差集，请确认用于分片的类型是否实现了equals和hashCode方法，且上次的记录没有被篡改";
@@ -280,249 +536,1046 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
                 throw new IllegalStateException(msg);
             }
         } finally {
-            state = 0;
+            stopState();
         }
         // 全部处理完毕之后，需要重新
         logger.info("尝试处理错误数据，若没有错误数据需要处理，则为全部成功");
         return processErrorSlices();
     }
 
+    /**
+     * 从分片集合中排除已完成的分片
+     * <p>
+     * Long 分片使用合并后的区间集合判断是否已完成，
+     * 被已完成的分片（如动态拆分出来的子分片）完全覆盖的分片也视为已完成。
+     * 被拆分的分片虽然记录为已完成，但只处理了拆分点之前的部分，其子分片的范围不计入已完成的区间
+     *
+     * @param slices      需要排除已完成分片的集合
+     * @param completed   已完成的分片
+     * @param splitSlices 被拆分的分片与其子分片
+     */
+    private void removeCompleted(Set<Slice<S>> slices, Set<Slice<S>> completed, Map<Slice<S>, List<Slice<S>>> splitSlices) {
+        if (completed == null || completed.isEmpty()) {
+            return;
+        }
+        LongRangeSet completedRanges = LongRangeSet.tryOf(completed);
+        if (completedRanges == null) {
+            slices.removeAll(completed);
+            return;
+        }
+        if (splitSlices != null && !splitSlices.isEmpty()) {
+            completedRanges = new LongRangeSet();
+            for (Slice<S> slice : completed) {
+                LongRangeSet processed = new LongRangeSet();
+                processed.add((Long) slice.getBegin(), (Long) slice.getEnd());
+                for (Slice<S> child : splitSlices.getOrDefault(slice, Collections.emptyList())) {
+                    if (child.getBegin() instanceof Long && child.getEnd() instanceof Long) {
+                        processed.remove((Long) child.getBegin(), (Long) child.getEnd());
+                    }
+                }
+                completedRanges.addAll(processed);
+            }
+        }
+        LongRangeSet ranges = completedRanges;
+        slices.removeIf(slice -> slice.getBegin() instanceof Long && slice.getEnd() instanceof Long
+                ? ranges.covers((Long) slice.getBegin(), (Long) slice.getEnd())
+                : completed.contains(slice));
+    }
+
     /**
      * 根据分片启动处理任务
      *
      * @param slices 要处理的分片
      * @return 处理出错的时间分片
      */
-    private Set<Slice<S>> launchBySliceTasks(Set<Slice<S>> slices) {
+    private Set<Slice<S>> launchBySliceTasks(SliceSource<S> slices) {
+        return launchBySliceTasks(slices, Collections.emptyMap());
+    }
+
+    /**
+     * 根据分片启动处理任务
+     *
+     * @param slices        要处理的分片
+     * @param failedBatches 分片上次处理失败的批次，有记录的分片只重新处理这些批次
+     * @return 处理出错的时间分片
+     */
+    private Set<Slice<S>> launchBySliceTasks(SliceSource<S> slices, Map<Slice<S>, List<BatchRange>> failedBatches) {
         if (slices == null || slices.isEmpty()) {
             logger.warn("没有需要执行的分片");
             return Collections.emptySet();
         }
-        Set<Slice<S>> errorSlices = new LinkedHashSet<>();
-        sliceRecorder.saveAllSlices(slices);
+        Set<Slice<S>> errorSlices = Collections.synchronizedSet(new LinkedHashSet<>());
         try {
-            logger.info("分片任务开始启动，同时开始分片数:{}, 共有{}个分片需要处理", slicesThreadNum, slices.size());
-            // 如果只有一个切片，则直接处理，不再启动线程池
-            if (slices.size() == 1) {
-                launchSlice(errorSlices, slices.iterator().next());
+            long total = slices.size();
+            logger.info("分片任务开始启动，同时开始分片数:{}, 共有{}个分片需要处理", slicesThreadNum, total < 0 ? "未知数量" : total);
+            // 如果只有一个切片且不会动态拆分，则直接处理，不再启动线程池
+            if (total == 1 && !dynamicSplitting && leaseCoordinator == null) {
+                Slice<S> slice = slices.iterator().next();
+                if (slice != null) {
+                    launchSlice(errorSlices, slice, failedBatches.get(slice));
+                }
                 return errorSlices;
             }
-            ExecutorService executor = threadPoolFactory.createThreadPool(slicesThreadNum, THREAD_NAME + "-sliceLauncher");
-            for (final Slice<S> slice : slices) {
-                // 处理每个分片
-                if (slice != null) {
-                    executor.execute(() -> launchSlice(errorSlices, slice));
-                    // 错开时间执行
-                    Thread.sleep(launchInterval);
+            Iterator<Slice<S>> launchOrder = slices.iterator();
+            SliceSchedule<S> schedule = null;
+            if (sliceCostEstimator != null) {
+                // 最长处理时间优先，避免耗时最长的分片最后才启动，需要先取出全部分片
+                List<Slice<S>> all = new ArrayList<>();
+                for (Slice<S> slice : slices) {
+                    if (slice != null) {
+                        all.add(slice);
+                    }
+                }
+                schedule = SliceSchedule.longestFirst(all, sliceCostEstimator, slicesThreadNum);
+                launchOrder = schedule.getSlices().iterator();
+                logger.info("按预估成本从大到小启动分片，预估总成本: {}, 预估总耗时: {}, 与理想值之比: {}", schedule.getTotalCost(),
+                        schedule.getPredictedMakespan(), String.format("%.2f", schedule.predictedImbalance(slicesThreadNum)));
+            }
+            // 待启动的分片队列，边遍历分片来源边启动，动态拆分出来的子分片优先被空闲的启动线程领取
+            SliceLaunchQueue<S> queue = new SliceLaunchQueue<>(launchOrder);
+            // 启动槽位，有空闲的槽位才启动下一个分片，因此不会在线程池的队列中堆积
+            Semaphore slots = new Semaphore(slicesThreadNum);
+            pendingSlices = queue;
+            launcherSlots = slots;
+            // 由其他节点持有租约的分片，遍历完分片来源之后等待其完成或者租约过期
+            List<Slice<S>> leasedByOthers = new ArrayList<>();
+            int launched = 0;
+            CountDownLatch lastFirstPage = null;
+            long launchStart = System.currentTimeMillis();
+            // 所有分片的处理耗时之和，用于计算总耗时的理想值
+            AtomicLong busyMillis = new AtomicLong();
+            while (true) {
+                // 先获取槽位再取分片，等待槽位期间拆分出来的子分片可以优先启动
+                slots.acquire();
+                // 熔断期间暂停启动新的分片
+                awaitCircuitBreakers();
+                final Slice<S> slice = queue.next();
+                if (slice == null) {
+                    slots.release();
+                    if (leasedByOthers.isEmpty()) {
+                        break;
+                    }
+                    // 本节点的分片都已结束，重新领取租约已过期的分片，直到其他节点持有的分片全部完成
+                    queue.addSplitSlices(leaseCoordinator.awaitClaimable(leasedByOthers));
+                    continue;
+                }
+                if (leaseCoordinator != null && !leaseCoordinator.tryClaim(slice)) {
+                    if (!leaseCoordinator.isCompleted(slice)) {
+                        leasedByOthers.add(slice);
+                    }
+                    slots.release();
+                    queue.finished();
+                    continue;
+                }
+                // 只错开第一批同时启动的分片，之后有分片结束就立即启动下一个
+                if (launched > 0 && launched < slicesThreadNum) {
+                    staggerLaunch(lastFirstPage);
+                }
+                CountDownLatch firstPage = new CountDownLatch(1);
+                if (adaptiveLaunchInterval) {
+                    firstPageSignals.put(slice, firstPage);
                 }
+                lastFirstPage = firstPage;
+                launched++;
+                sliceLauncher.execute(() -> {
+                    long sliceStart = System.currentTimeMillis();
+                    try {
+                        // 拆分出来的子分片必须在本分片结束之前加入队列，否则队列可能提前结束
+                        queue.addSplitSlices(launchSlice(errorSlices, slice, failedBatches.get(slice)));
+                    } finally {
+                        if (leaseCoordinator != null) {
+                            leaseCoordinator.finish(slice, !errorSlices.contains(slice));
+                        }
+                        busyMillis.addAndGet(System.currentTimeMillis() - sliceStart);
+                        signalFirstPage(slice);
+                        slots.release();
+                        queue.finished();
+                    }
+                });
+            }
+            long makespan = System.currentTimeMillis() - launchStart;
+            String actualImbalance = String.format("%.2f", SliceSchedule.imbalance(makespan, busyMillis.get(), Math.min(slicesThreadNum, launched)));
+            logger.info("分片任务执行完成，共启动 {} 个分片，总量: {}, 总耗时: {}, 与理想值之比: {}", launched, counter.get(), makespan, actualImbalance);
+            if (schedule != null) {
+                logger.info("总耗时与理想值之比，预估: {}, 实际: {}", String.format("%.2f", schedule.predictedImbalance(slicesThreadNum)), actualImbalance);
             }
-            logger.info("分片任务启动完成，等待执行");
-            executor.shutdown();
-            executor.awaitTermination(7, TimeUnit.DAYS);
-            logger.info("分片任务执行完成，总量: " + counter.get());
         } catch (InterruptedException e) {
             logger.error("分片任务启动发生异常", e);
             Thread.currentThread().interrupt();
+        } finally {
+            pendingSlices = null;
+            launcherSlots = null;
         }
         return errorSlices;
     }
 
+    /**
+     * 错开第一批分片的启动时间
+     *
+     * @param lastFirstPage 上一个启动的分片获取到第一页时的通知
+     * @throws InterruptedException 等待时被中断
+     */
+    private void staggerLaunch(CountDownLatch lastFirstPage) throws InterruptedException {
+        if (launchInterval <= 0) {
+            return;
+        }
+        if (!adaptiveLaunchInterval || lastFirstPage == null) {
+            Thread.sleep(launchInterval);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        boolean fetched = lastFirstPage.await(launchInterval, TimeUnit.MILLISECONDS);
+        logger.debug("等待上一个分片获取第一页 {} ms, 是否已获取: {}", System.currentTimeMillis() - start, fetched);
+    }
+
+    /**
+     * 通知正在等待的启动线程：分片已获取到第一页（或者已结束）
+     *
+     * @param slice 分片
+     */
+    private void signalFirstPage(Slice<S> slice) {
+        if (!adaptiveLaunchInterval) {
+            return;
+        }
+        CountDownLatch signal = firstPageSignals.remove(slice);
+        if (signal != null) {
+            signal.countDown();
+        }
+    }
+
     /**
      * 启动分片任务并记录处理结果
      *
      * @param errorSlicesCollector 如果分片处理失败则把该分片添加到这个集合中
      * @param slice                本次要处理的分片
+     * @param replayBatches        分片上次处理失败的批次，不为空则只重新处理这些批次
+     * @return 分片处理过程中拆分出来的子分片，需要继续处理，没有拆分则返回空列表
      */
-    private void launchSlice(Set<Slice<S>> errorSlicesCollector, Slice<S> slice) {
+    private List<Slice<S>> launchSlice(Set<Slice<S>> errorSlicesCollector, Slice<S> slice, List<BatchRange> replayBatches) {
         boolean rs = false;
+        List<BatchRange> failedBatches = new ArrayList<>();
+        List<Slice<S>> splitSlices = new ArrayList<>();
         try {
-            rs = processBySlice(slice);
+            if (replayBatches != null && !replayBatches.isEmpty()) {
+                rs = replayBatches(slice, replayBatches, failedBatches);
+            } else {
+                rs = processBySlice(slice, failedBatches, splitSlices);
+            }
         } catch (InterruptedException e) {
             logger.error("处理批次发生异常, 分片: " + slice, e);
+            failedBatches.clear();
         }
         if (rs) {
+            if (!splitSlices.isEmpty()) {
+                // 先记录拆分再记录完成，断点续传时已完成的分片的子分片需要继续处理
+                logger.info("分片 {} 已读取的部分处理完成，剩余部分拆分为: {}", slice, splitSlices);
+                sliceRecorder.saveSplitSlice(slice, splitSlices);
+            }
             logger.info("分片任务 {} 完成, 当前处理总数: {}", slice.toString(), counter.get());
             sliceRecorder.saveCompletedSlice(slice);
         } else {
+            splitSlices.clear();
             logger.info("当前时间分片处理失败: " + slice);
+            if (retryFailedBatchesOnly && !failedBatches.isEmpty()) {
+                logger.info("分片 {} 有 {} 个批次处理失败，记录失败的批次以便只重新处理这些批次", slice, failedBatches.size());
+                sliceRecorder.saveFailedBatches(slice, failedBatches);
+            }
             sliceRecorder.saveErrorSlice(slice);
             errorSlicesCollector.add(slice);
         }
+        return splitSlices;
     }
 
     /**
-     * 建立线程池启动处理单个时间分片的任务
+     * 启动处理单个时间分片的任务，批次任务提交到共享的批次线程池中执行
      *
-     * @param slice 需要处理的时间分片
-     * @return 是否成功
+     * @param slice                  需要处理的时间分片
+     * @param failedBatchesCollector 处理失败的批次，只有分片的所有分页都获取成功、只是部分批次失败时才会收集
+     * @param splitSlicesCollector   动态拆分出来的子分片，只有已读取的部分全部处理成功时才会收集，为null则不拆分
+     * @return 是否成功，拆分时表示已读取的部分是否处理成功
      * @throws InterruptedException 执行中断
      */
-    private boolean processBySlice(final Slice<S> slice) throws InterruptedException {
+    private boolean processBySlice(final Slice<S> slice, List<BatchRange> failedBatchesCollector, List<Slice<S>> splitSlicesCollector) throws InterruptedException {
         long start = System.currentTimeMillis();
         long count = 0L;
-        List<Future> allFutures = new LinkedList<>();
-        ExecutorService taskPool = null;
+        // 开启只重新处理失败批次时，收集所有失败的批次，只要有分页没有处理完（如获取失败或快速失败提前退出）就不能只重试批次
+        boolean collectFailedBatches = retryFailedBatchesOnly;
+        List<BatchRange> failedBatches = new ArrayList<>();
+        List<Slice<S>> splitSlices = Collections.emptyList();
+        BatchGroup batchGroup = null;
         Page<T> currentPage;
-        Page<T> lastResource = null;
-        do {
-            logger.info("从来源获取需要处理的资源开始");
-            final Page<T> lastPage = lastResource;
-            try {
-                currentPage = RetryUtil.retryCall(() -> getResources(slice, lastPage), retryTime, false);
+        // 有检查点则从检查点的下一页开始处理
+        PageCursor checkpoint = checkpoints.get(slice);
+        Page<T> lastResource = checkpoint == null ? null : Page.fromCursor(checkpoint);
+        if (checkpoint != null) {
+            logger.info("分片 {} 从检查点 {} 继续处理", slice, checkpoint);
+        }
+        PageCheckpointTracker tracker = checkpointEnabled ? new PageCheckpointTracker(cursor -> sliceRecorder.saveCheckpoint(slice, cursor)) : null;
+        PagePrefetcher<T> prefetcher = null;
+        if (prefetchDepth > 0) {
+            // 在独立的获取线程中提前获取后面的分页，与当前页的批次处理重叠进行
+            prefetcher = new PagePrefetcher<>(pageFetcher, prefetchDepth, lastPage -> fetchPage(slice, lastPage), lastResource);
+            prefetcher.start();
+        }
+        try {
+            do {
+                if (failFast && batchGroup != null && batchGroup.isFailed()) {
+                    logger.info("分片 {} 已有批次处理失败，不再获取后续分页", slice);
+                    collectFailedBatches = false;
+                    break;
+                }
+                if (sinkCircuitBreaker != null) {
+                    // 处理目标熔断期间不再获取后续分页
+                    sinkCircuitBreaker.awaitReady();
+                }
+                currentPage = prefetcher != null ? prefetcher.take() : fetchPage(slice, lastResource);
+                signalFirstPage(slice);
                 if (currentPage == null) {
-                    logger.info("分页获取到null值，认为本分片处理失败:" + slice);
+                    if (batchGroup != null) {
+                        if (failFast) {
+                            batchGroup.cancel();
+                        }
+                        // 等已提交的批次结束再返回，否则分片重新处理时上一次的批次可能还在执行并保存检查点
+                        batchGroup.await();
+                    }
                     return false;
                 }
-            } catch (Exception e) {
-                logger.error("分片任务执行有异常，本分片处理失败: " + slice, e);
-                return false;
-            }
 
-            List<T> resources = currentPage.getData();
-            if (resources == null || resources.size() <= 0) {
-                // 没有数据则退出循环
-                logger.info("查无数据，认为本批次数据已全部获取完成");
-                break;
-            }
-            logger.info("从来源获取需要处理的资源结束，数据量: " + resources.size());
-            // 第一次查询到的资源数量比要求的少且只有一批，直接单线程一次处理
-            if (useSingleThread(count, currentPage.isHasNext(), resources.size())) {
-                try {
-                    logger.debug("使用单线线程执行分批导入任务, count:{}, hasNext:{}, srcSize:{}", count, currentPage.isHasNext(), resources.size());
-                    Callable<?> callable = createTask(resources);
-                    RetryUtil.retryCall(callable, retryTime, retryNullable);
-                } catch (Exception e) {
-                    logger.error("分片任务执行有异常，本分片处理失败: " + slice, e);
-                    return false;
+                List<T> resources = currentPage.getData();
+                if (resources == null || resources.size() <= 0) {
+                    // 没有数据则退出循环
+                    logger.info("查无数据，认为本批次数据已全部获取完成");
+                    break;
                 }
-            } else {
-                // 只在需要的时候才初始化线程池
-                if (taskPool == null) {
-                    // 控制总体线程数不超过理想值，上面useSingleThread已确保poolSize>1
-                    int poolSize = desiredThreadNum() / slicesThreadNum;
-                    logger.info("创建分批处理线程池,线程数量: " + poolSize);
-                    taskPool = threadPoolFactory.createThreadPool(poolSize, THREAD_NAME + "-" + slice.getBegin() + "-" + slice.getEnd());
+                logger.info("从来源获取需要处理的资源结束，数据量: " + resources.size());
+                PageCursor lastCursor = lastResource == null ? null : lastResource.toCursor();
+                // 第一次查询到的资源数量比要求的少且只有一批，直接单线程一次处理
+                if (useSingleThread(count, currentPage.isHasNext(), resources.size())) {
+                    long pageSeq = tracker == null ? -1 : tracker.register(currentPage.toCursor(), 1);
+                    InFlightBudget budget = inFlightBudget;
+                    long bytes = budget == null ? 0 : weigh(resources);
+                    if (budget != null) {
+                        budget.acquire(resources.size(), bytes);
+                    }
+                    try {
+                        logger.debug("使用单线线程执行分批导入任务, count:{}, hasNext:{}, srcSize:{}", count, currentPage.isHasNext(), resources.size());
+                        try {
+                            // createTask 抛出异常或者返回null时不需要重试，同样进行故障隔离
+                            Callable<?> callable = Objects.requireNonNull(createTask(resources), "createTask 返回的任务为null");
+                            retryScheduler.call(guardSink(callable), retryNullable);
+                        } catch (Exception e) {
+                            if (deadLetterFile == null) {
+                                throw e;
+                            }
+                            logger.warn("批次处理失败，开始拆分隔离无法处理的数据, 分片: " + slice, e);
+                            isolateFailures(slice, resources, e);
+                        }
+                        if (tracker != null) {
+                            tracker.ack(pageSeq, true);
+                        }
+                    } catch (Exception e) {
+                        logger.error("分片任务执行有异常，本分片处理失败: " + slice, e);
+                        if (tracker != null) {
+                            tracker.ack(pageSeq, false);
+                        }
+                        if (!collectFailedBatches || failFast) {
+                            if (batchGroup != null) {
+                                batchGroup.await();
+                            }
+                            return false;
+                        }
+                        // 记录失败的批次后继续处理后面的分页
+                        failedBatches.add(new BatchRange(lastCursor, 0, resources.size()));
+                    } finally {
+                        if (budget != null) {
+                            budget.release(resources.size(), bytes);
+                        }
+                    }
+                } else {
+                    // 只在需要的时候才创建任务组，批次任务统一提交到共享线程池
+                    if (batchGroup == null) {
+                        batchGroup = newBatchGroup(tracker);
+                    }
+                    int batches = (resources.size() + numPerBatch - 1) / numPerBatch;
+                    long pageSeq = tracker == null ? -1 : tracker.register(currentPage.toCursor(), batches);
+                    // 切割并启动处理任务，任务组在每个任务完成时记录其结果
+                    execTask(batchGroup, slice, resources, lastCursor, pageSeq);
                 }
-                // 切割并启动处理任务
-                List<Future> futures = execTask(taskPool, resources);
-                // 将执行处理任务返回的Future记录下来以确认是否处理成功
-                allFutures.addAll(futures);
-            }
-            lastResource = currentPage;
-            count += resources.size();
-        } while (currentPage.isHasNext());
-        logger.info("本批次 {} 任务同步启动，等待执行", slice);
-        if (taskPool != null) {
-            taskPool.shutdown();
-            taskPool.awaitTermination(1, TimeUnit.HOURS);
-        }
-        // 只要有一个执行失败，则认为本分片任务执行失败
-        // 这是为性能和实际情况考虑的一个取舍，实际情况中出错的概率较小，而且前面加上重试机制，失败的可能性大大降低
-        // 如果每批次都等待再继续下一个批次，则会降低效率；
-        // 如果这里再加一个失败重试机制，复杂性增加，而且如果前面已多次重试失败，这里再重试意义也不大
-        for (Future future : allFutures) {
-            try {
-                Object obj = future.get();
-                // 返回值为null则说明执行失败
-                if (obj == null || Objects.equals(obj, false)) {
-                    return false;
+                lastResource = currentPage;
+                count += resources.size();
+                if (splitSlicesCollector != null && currentPage.isHasNext() && hasIdleLauncher()) {
+                    splitSlices = trySplit(slice, currentPage);
+                    if (!splitSlices.isEmpty()) {
+                        // 不再读取后续分页，剩余部分交给空闲的启动线程，未读取完的分片不能只重试批次
+                        collectFailedBatches = false;
+                        break;
+                    }
                 }
-            } catch (Exception e) {
-                logger.error("分片任务执行有异常，本分片处理失败: " + slice, e);
-                return false;
+            } while (currentPage.isHasNext());
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.stop();
             }
         }
+        logger.info("本批次 {} 任务同步启动，等待执行", slice);
+        boolean failed = !failedBatches.isEmpty();
+        if (batchGroup != null) {
+            batchGroup.await();
+            // 只要有一个执行失败，则认为本分片任务执行失败
+            // 这是为性能和实际情况考虑的一个取舍，实际情况中出错的概率较小，而且前面加上重试机制，失败的可能性大大降低
+            // 如果每批次都等待再继续下一个批次，则会降低效率；
+            // 如果这里再加一个失败重试机制，复杂性增加，而且如果前面已多次重试失败，这里再重试意义也不大
+            if (batchGroup.isFailed()) {
+                logger.error("分片任务执行有异常，本分片处理失败: " + slice + ", 失败批次数: " + batchGroup.getFailed()
+                        + ", 取消批次数: " + batchGroup.getCancelled(), batchGroup.getFailure());
+                collectFailedBatches(batchGroup, failedBatches);
+                failed = true;
+            }
+        }
+        if (failed) {
+            if (collectFailedBatches) {
+                failedBatchesCollector.addAll(failedBatches);
+            }
+            return false;
+        }
         logger.info("批次 {} 处理完成，共处理 {} 条数据，耗时: {}", slice, count, (System.currentTimeMillis() - start));
         counter.addAndGet(count);
+        sliceCosts.put(slice, count);
+        if (!splitSlices.isEmpty()) {
+            splitSlicesCollector.addAll(splitSlices);
+        }
         return true;
     }
 
     /**
-     * 根据本次资源创建Task提交到给定的线程池中
-     * <p>
-     * 如果本次资源的量超过每批需要处理的量则进行切分
-     *
-     * @param taskPool  线程池
-     * @param resources 需要被处理的资源
-     * @return 任务提交到线程池后返回的 Future 类
+     * @return 是否有空闲的启动线程，即没有待启动的分片而且有空闲的启动槽位
      */
-    private List<Future> execTask(ExecutorService taskPool, List<T> resources) {
-        // 资源的数量比每批需要处理的数据少或相同则直接添加到任务队列
-        if (resources.size() <= numPerBatch) {
-            return Collections.singletonList(submitRetryTask(taskPool, createTask(resources)));
-        } else {
-            // 否则将获取到的商机进行分批
-            List<Future> futures = new LinkedList<>();
-            for (int i = 0; i < resources.size(); i += numPerBatch) {
-                int toIndex = i + numPerBatch;
-                List<T> subList = resources.subList(i, toIndex > resources.size() ? resources.size() : toIndex);
-                futures.add(submitRetryTask(taskPool, createTask(subList)));
-            }
-            return futures;
-        }
+    private boolean hasIdleLauncher() {
+        SliceLaunchQueue<S> queue = pendingSlices;
+        Semaphore slots = launcherSlots;
+        return dynamicSplitting && queue != null && slots != null
+                && !queue.hasPending() && slots.availablePermits() > 0;
     }
 
     /**
-     * 提交出错会重试的任务，就是将 callable 包了一层重试机制
+     * 尝试把分片在给定页之后还没有读取的部分拆分成子分片
      *
-     * @param taskPool 线程池
-     * @param callable 具体调用的方法
-     * @return 任务提交到线程池后返回的 Future 类
+     * @param slice    正在处理的分片
+     * @param lastPage 已经读取的最后一页
+     * @return 子分片，不能拆分时返回空列表
      */
-    private Future submitRetryTask(ExecutorService taskPool, Callable<?> callable) {
-        return taskPool.submit((Callable<Object>) () -> RetryUtil.retryCall(callable, retryTime, retryNullable));
+    private List<Slice<S>> trySplit(Slice<S> slice, Page<T> lastPage) {
+        try {
+            Slice<S> remaining = remainingSlice(slice, lastPage);
+            if (remaining == null) {
+                return Collections.emptyList();
+            }
+            List<Slice<S>> splitSlices = splitSlice(remaining);
+            return splitSlices == null || splitSlices.size() < 2 ? Collections.emptyList() : splitSlices;
+        } catch (Exception e) {
+            logger.warn("拆分分片失败，继续处理整个分片: " + slice, e);
+            return Collections.emptyList();
+        }
     }
 
     /**
-     * 进入运行状态
+     * 只重新处理分片中上次失败的批次
+     * <p>
+     * 使用批次记录的上一页游标重新获取批次所在的页，只处理其中失败的范围，
+     * 因此要求 getResources 对同样的分片和上一页返回相同的数据。
+     * 若重新获取到的页与记录的范围对不上，则改为处理整个分片
      *
-     * @throws ConcurrentModificationException 如果 state 不等于0则表示有任务正在执行，抛出非法状态异常
+     * @param slice                  分片
+     * @param replayBatches          上次失败的批次
+     * @param failedBatchesCollector 再次失败的批次
+     * @return 是否全部成功
+     * @throws InterruptedException 执行中断
      */
-    private void runState() {
-        ensureState();
-        state = 1;
+    private boolean replayBatches(Slice<S> slice, List<BatchRange> replayBatches, List<BatchRange> failedBatchesCollector) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        logger.info("分片 {} 只重新处理上次失败的 {} 个批次", slice, replayBatches.size());
+        // 同一页的批次只获取一次
+        Map<PageCursor, List<BatchRange>> batchesByPage = new LinkedHashMap<>();
+        for (BatchRange batch : replayBatches) {
+            batchesByPage.computeIfAbsent(batch.getLastPage(), k -> new ArrayList<>()).add(batch);
+        }
+        BatchGroup batchGroup = newBatchGroup(null);
+        long count = 0L;
+        for (Map.Entry<PageCursor, List<BatchRange>> entry : batchesByPage.entrySet()) {
+            Page<T> lastPage = entry.getKey() == null ? null : Page.fromCursor(entry.getKey());
+            Page<T> page = fetchPage(slice, lastPage);
+            if (page == null) {
+                // 获取失败则保留上次的失败批次记录，下次继续只重试这些批次
+                batchGroup.cancel();
+                batchGroup.await();
+                return false;
+            }
+            List<T> resources = page.getData() == null ? Collections.emptyList() : page.getData();
+            for (BatchRange batch : entry.getValue()) {
+                if (batch.getFromIndex() < 0 || batch.getToIndex() > resources.size() || batch.getFromIndex() >= batch.getToIndex()) {
+                    logger.warn("重新获取的分页与失败批次的记录不一致，改为重新处理整个分片: {}, 批次: {}, 数据量: {}", slice, batch, resources.size());
+                    batchGroup.cancel();
+                    batchGroup.await();
+                    return processBySlice(slice, failedBatchesCollector, null);
+                }
+                List<T> subList = new ArrayList<>(resources.subList(batch.getFromIndex(), batch.getToIndex()));
+                submitRetryTask(batchGroup, slice, subList, new BatchTag(-1, batch));
+                count += subList.size();
+            }
+        }
+        batchGroup.await();
+        if (batchGroup.isFailed()) {
+            logger.error("重新处理失败批次时再次出错: " + slice + ", 失败批次数: " + batchGroup.getFailed(), batchGroup.getFailure());
+            collectFailedBatches(batchGroup, failedBatchesCollector);
+            return false;
+        }
+        logger.info("分片 {} 失败的批次重新处理完成，共处理 {} 条数据，耗时: {}", slice, count, (System.currentTimeMillis() - start));
+        counter.addAndGet(count);
+        return true;
     }
 
     /**
-     * 判断是否使用单线程，可以启动的线程数 <=1 或者一次性可以全部导完就使用单线程
+     * 创建分片的批次任务组，批次完成时确认检查点并归还在途数据预算
      *
-     * @param count       当前处理的总量
-     * @param hasNextPage 是否有下一页
-     * @param srcSize     本次需要处理的资源量
-     * @return 是否使用单线程
-     */
-    private boolean useSingleThread(long count, boolean hasNextPage, int srcSize) {
-        return (desiredThreadNum() / slicesThreadNum <= 1)
-                || (count == 0 && !hasNextPage && srcSize <= numPerBatch);
-    }
-
-    /**
-     * 理想的线程数，使用 2倍cpu核心数+1
+     * @param tracker 检查点跟踪器，为null则不确认检查点
+     * @return 批次任务组
      */
-    private int desiredThreadNum() {
-        return Runtime.getRuntime().availableProcessors() * 2 + 1;
+    private BatchGroup newBatchGroup(PageCheckpointTracker tracker) {
+        BatchGroup batchGroup = batchExecutor.newGroup(failFast);
+        InFlightBudget budget = inFlightBudget;
+        if (tracker != null || budget != null) {
+            batchGroup.setListener((tag, succeeded) -> {
+                BatchTag batch = (BatchTag) tag;
+                if (batch == null) {
+                    return;
+                }
+                if (tracker != null) {
+                    tracker.ack(batch.pageSeq, succeeded);
+                }
+                if (budget != null) {
+                    budget.release(batch.records, batch.bytes);
+                }
+            });
+        }
+        return batchGroup;
     }
 
-    public void setSlicesThreadNum(int slicesThreadNum) {
-        requirePositive(slicesThreadNum, "分片任务执行线程数必须大于0, slicesThreadNum:");
-        ensureState();
-        this.slicesThreadNum = slicesThreadNum;
+    private void collectFailedBatches(BatchGroup batchGroup, List<BatchRange> collector) {
+        for (Object tag : batchGroup.getFailedTags()) {
+            BatchRange range = ((BatchTag) tag).range;
+            if (range != null) {
+                collector.add(range);
+            }
+        }
     }
 
-    public void setSliceRecorder(SliceRecorder<S> sliceRecorder) {
-        ensureState();
-        this.sliceRecorder = sliceRecorder;
+    /**
+     * 读取上次处理失败的批次，未开启只重新处理失败批次时返回空
+     */
+    private Map<Slice<S>, List<BatchRange>> getFailedBatches() {
+        if (!retryFailedBatchesOnly) {
+            return Collections.emptyMap();
+        }
+        Map<Slice<S>, List<BatchRange>> failedBatches = sliceRecorder.getFailedBatches();
+        return failedBatches == null ? Collections.emptyMap() : failedBatches;
     }
 
-    public void setNumPerBatch(int numPerBatch) {
-        requirePositive(numPerBatch, "每批次的数量必须大于0，numPerBatch:");
-        ensureState();
-        this.numPerBatch = numPerBatch;
+    /**
+     * 读取上次保存的检查点，未开启检查点时返回空
+     */
+    private Map<Slice<S>, PageCursor> getCheckpoints() {
+        if (!checkpointEnabled) {
+            return Collections.emptyMap();
+        }
+        Map<Slice<S>, PageCursor> saved = sliceRecorder.getCheckpoints();
+        return saved == null ? Collections.emptyMap() : saved;
     }
 
-    private void requirePositive(int num, String msg) {
-        if (num <= 0) {
-            throw new IllegalArgumentException(msg + num);
+    /**
+     * 从来源获取一页需要处理的资源，失败时会重试
+     *
+     * @param slice    分片
+     * @param lastPage 上一页，第一次获取则为null
+     * @return 获取到的分页，重试之后仍然失败或者获取到null值则返回null
+     */
+    private Page<T> fetchPage(Slice<S> slice, Page<T> lastPage) {
+        logger.info("从来源获取需要处理的资源开始");
+        try {
+            Page<T> page = retryScheduler.call(guard(sourceCircuitBreaker, () -> getResources(slice, lastPage), Objects::isNull), false);
+            if (page == null) {
+                logger.info("分页获取到null值，认为本分片处理失败:" + slice);
+            }
+            return page;
+        } catch (InterruptedException e) {
+            logger.error("获取分页时被中断，本分片处理失败: " + slice, e);
+            // 保留中断状态，使取消可以传递给调用方
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            logger.error("分片任务执行有异常，本分片处理失败: " + slice, e);
+            return null;
+        }
+    }
+
+    /**
+     * 根据本次资源创建Task提交到给定的任务组中
+     * <p>
+     * 如果本次资源的量超过每批需要处理的量则进行切分
+     *
+     * @param batchGroup 分片的批次任务组
+     * @param slice      分片
+     * @param resources  需要被处理的资源
+     * @param lastCursor 上一页的游标，用于记录失败的批次
+     * @param pageSeq    本页在检查点跟踪器中的序号
+     * @throws InterruptedException 等待在途数据预算时被中断
+     */
+    private void execTask(BatchGroup batchGroup, Slice<S> slice, List<T> resources, PageCursor lastCursor, long pageSeq) throws InterruptedException {
+        // 资源的数量比每批需要处理的数据少或相同则直接添加到任务队列
+        if (resources.size() <= numPerBatch) {
+            submitRetryTask(batchGroup, slice, resources, batchTag(pageSeq, lastCursor, 0, resources.size()));
+        } else {
+            // 否则将获取到的商机进行分批
+            // 每个批次复制一份自己的数据而不是使用 subList 视图，这样整页数据不会被未完成的批次一直引用，
+            // 分片线程获取下一页之后，每个批次完成时就可以回收这个批次的数据
+            for (int i = 0; i < resources.size(); i += numPerBatch) {
+                int toIndex = i + numPerBatch;
+                toIndex = toIndex > resources.size() ? resources.size() : toIndex;
+                List<T> subList = new ArrayList<>(resources.subList(i, toIndex));
+                submitRetryTask(batchGroup, slice, subList, batchTag(pageSeq, lastCursor, i, toIndex));
+            }
+        }
+    }
+
+    /**
+     * 只在开启只重新处理失败批次或者检查点时才需要标记批次
+     */
+    private BatchTag batchTag(long pageSeq, PageCursor lastCursor, int fromIndex, int toIndex) {
+        if (!retryFailedBatchesOnly && !checkpointEnabled) {
+            return null;
+        }
+        BatchRange range = retryFailedBatchesOnly ? new BatchRange(lastCursor, fromIndex, toIndex) : null;
+        return new BatchTag(pageSeq, range);
+    }
+
+    /**
+     * 提交出错会重试的任务，失败后在退避间隔之后重新提交，等待重试期间不占用批次线程
+     *
+     * @param batchGroup 分片的批次任务组
+     * @param slice      分片
+     * @param resources  本批次的资源
+     * @param batch      批次的标记，用于记录失败的批次和确认检查点，可以为null
+     * @throws InterruptedException 等待在途数据预算时被中断
+     */
+    private void submitRetryTask(BatchGroup batchGroup, Slice<S> slice, List<T> resources, BatchTag batch) throws InterruptedException {
+        // 先创建任务再获取预算；createTask 抛出异常时与返回null一样作为失败的批次提交，由任务组记录失败并归还预算
+        Callable<?> callable;
+        RuntimeException createFailure = null;
+        try {
+            callable = createTask(resources);
+        } catch (RuntimeException e) {
+            callable = null;
+            createFailure = e;
+        }
+        InFlightBudget budget = inFlightBudget;
+        if (budget != null) {
+            // 超出在途数据预算时阻塞，不再提交批次也就不再获取后续分页，批次完成时由任务组的回调归还
+            long bytes = weigh(resources);
+            budget.acquire(resources.size(), bytes);
+            batch = batch == null ? new BatchTag(-1, null, resources.size(), bytes)
+                    : new BatchTag(batch.pageSeq, batch.range, resources.size(), bytes);
+        }
+        // 开启故障隔离时，重试之后仍然失败则拆分批次，在最后一次失败的批次线程中执行
+        BatchGroup.Fallback<Object> fallback = deadLetterFile == null ? null : failure -> {
+            logger.warn("批次处理失败，开始拆分隔离无法处理的数据, 分片: {}, 数据量: {}", slice, resources.size());
+            isolateFailures(slice, resources, failure);
+            return true;
+        };
+        if (callable == null) {
+            // createTask 返回null或者抛出异常时不需要重试，可能只是个别数据导致的，开启故障隔离时同样拆分批次，否则本批次失败
+            RuntimeException failure = createFailure != null ? createFailure : new NullPointerException("createTask 返回的任务为null");
+            batchGroup.submit(() -> {
+                if (fallback == null) {
+                    throw failure;
+                }
+                return fallback.call(failure);
+            }, batch);
+            return;
+        }
+        Callable<?> guarded = guardSink(callable);
+        // 不保留 Future，批次的结果由任务组在完成时计入成功或失败的计数后即可回收
+        batchGroup.submitWithRetry(guarded::call, batch, retryNullable, fallback);
+    }
+
+    /**
+     * @return 数据的估算字节数，没有设置权重估算器时返回0
+     */
+    private long weigh(List<T> resources) {
+        Weigher<? super T> w = weigher;
+        if (w == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (T resource : resources) {
+            bytes += w.weigh(resource);
+        }
+        return bytes;
+    }
+
+    /**
+     * 故障隔离：把失败的批次对半拆分分别重新处理，失败的一半继续拆分，拆分到 minIsolationBatchSize 后再按重试次数确认，
+     * 仍然失败的数据写入死信文件，其余数据都已处理成功。拆分后的两半都失败时（如两条无法处理的数据分别在两半中）两半都继续拆分
+     * <p>
+     * 无法处理的数据超过一半时，更可能是处理目标不可用等系统性的故障而不是个别数据有问题，
+     * 此时不写入死信文件而是抛出异常，批次按原来的方式失败
+     *
+     * @param slice     分片
+     * @param resources 重试之后仍然失败的批次
+     * @param cause     批次最后一次执行抛出的异常，返回null值或false而失败时为null
+     * @throws Exception 放弃隔离时抛出
+     */
+    private void isolateFailures(Slice<S> slice, List<T> resources, Throwable cause) throws Exception {
+        if (resources.size() <= minIsolationBatchSize) {
+            // 批次已经不能再拆分，整个批次都失败同样超过了一半，不能把整个批次写入死信而让分片成功
+            throw new IllegalStateException("批次不超过拆分的最小批次大小，整个批次处理失败，可能是系统性的故障，放弃故障隔离, 分片: " + slice, cause);
+        }
+        List<T> deadLetters = new ArrayList<>();
+        // 拆分后的批次只返回失败而没有异常时，使用整个批次的异常
+        Throwable[] lastError = {cause};
+        int limit = resources.size() / 2;
+        if (!bisect(resources, deadLetters, lastError, limit)) {
+            throw new IllegalStateException("超过一半的数据处理失败，可能是系统性的故障，放弃故障隔离, 分片: " + slice, lastError[0]);
+        }
+        if (!deadLetters.isEmpty()) {
+            deadLetterFile.write(sliceParser.serialize(slice), deadLetters, lastError[0]);
+        }
+    }
+
+    /**
+     * 拆分失败的数据，直到找出无法处理的数据
+     *
+     * @param resources   处理失败的数据
+     * @param deadLetters 收集无法处理的数据
+     * @param lastError   最后一次处理的异常
+     * @param limit       无法处理的数据的上限
+     * @return 无法处理的数据是否没有超过上限
+     */
+    private boolean bisect(List<T> resources, List<T> deadLetters, Throwable[] lastError, int limit) {
+        if (resources.size() <= minIsolationBatchSize) {
+            // 写入死信之前按重试次数再确认一次，避免偶发的失败导致正常数据被当成无法处理的数据
+            try {
+                Object result = retryScheduler.call(guardSink(createTask(resources)), retryNullable);
+                if (result != null && !Boolean.FALSE.equals(result)) {
+                    return true;
+                }
+            } catch (Exception e) {
+                lastError[0] = e;
+            }
+            deadLetters.addAll(resources);
+            return deadLetters.size() <= limit;
+        }
+        int mid = resources.size() / 2;
+        for (List<T> half : Arrays.asList(resources.subList(0, mid), resources.subList(mid, resources.size()))) {
+            if (!callOnce(half) && !bisect(half, deadLetters, lastError, limit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 不重试地处理一次，与批次任务一样，抛出异常、返回null或者false视为失败
+     */
+    private boolean callOnce(List<T> resources) {
+        try {
+            Object result = guardSink(createTask(resources)).call();
+            return result != null && !Boolean.FALSE.equals(result);
+        } catch (Exception e) {
+            logger.debug("拆分后的批次处理失败, 数据量: {}", resources.size(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 使每次调用（包括每次重试）都经过熔断器，熔断期间等待而不是执行
+     *
+     * @param breaker   熔断器，为null则不包装
+     * @param callable  被执行的方法
+     * @param isFailure 根据返回值判断调用是否失败
+     * @return 经过熔断器的方法
+     */
+    private static <V> Callable<V> guard(CircuitBreaker breaker, Callable<V> callable, Predicate<? super V> isFailure) {
+        if (breaker == null || callable == null) {
+            return callable;
+        }
+        return () -> breaker.call(callable, isFailure);
+    }
+
+    /**
+     * 批次任务经过目标的熔断器，与任务组判断批次结果的方式一致：返回false视为失败，不接受null返回值时返回null也视为失败
+     *
+     * @param callable 批次任务
+     * @return 经过熔断器的批次任务
+     */
+    private <V> Callable<V> guardSink(Callable<V> callable) {
+        return guard(sinkCircuitBreaker, callable, v -> Boolean.FALSE.equals(v) || (v == null && !retryNullable));
+    }
+
+    /**
+     * 等待来源和目标的熔断器都可以放行调用
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    private void awaitCircuitBreakers() throws InterruptedException {
+        if (sourceCircuitBreaker != null) {
+            sourceCircuitBreaker.awaitReady();
+        }
+        if (sinkCircuitBreaker != null) {
+            sinkCircuitBreaker.awaitReady();
+        }
+    }
+
+    /**
+     * 进入运行状态
+     *
+     * @throws ConcurrentModificationException 如果 state 不等于0则表示有任务正在执行，抛出非法状态异常
+     */
+    private void runState() {
+        ensureState();
+        state = 1;
+        sliceCosts.clear();
+        // 每次执行只创建一次线程池，所有分片共享，线程数不会随分片数量增长
+        sliceLauncher = threadPoolFactory.createThreadPool(slicesThreadNum, THREAD_NAME + "-sliceLauncher");
+        int poolSize = getBatchThreadNum();
+        logger.info("创建共享的分批处理线程池,线程数量: " + poolSize);
+        ExecutorService batchPool = threadPoolFactory.createThreadPool(poolSize, THREAD_NAME + "-batch");
+        // 原来的重试次数为0时一次都不执行，这里至少执行一次
+        retryScheduler = new RetryScheduler(Math.max(1, retryTime), retryBaseDelay, retryMaxDelay, retryBudgetRatio);
+        if (adaptiveConcurrency) {
+            // 开始时每个同时处理的分片一个批次，再根据执行耗时逐步增加
+            concurrencyLimiter = new AdaptiveConcurrencyLimiter(1, poolSize, Math.min(poolSize, slicesThreadNum));
+        } else {
+            concurrencyLimiter = null;
+        }
+        batchExecutor = new BatchExecutor(batchPool, concurrencyLimiter, retryScheduler);
+        long maxBytes = weigher == null ? 0 : maxInFlightBytes;
+        inFlightBudget = maxInFlightRecords > 0 || maxBytes > 0 ? new InFlightBudget(maxInFlightRecords, maxBytes) : null;
+        if (prefetchDepth > 0) {
+            // 每个同时处理的分片最多占用一个获取线程
+            pageFetcher = threadPoolFactory.createThreadPool(slicesThreadNum, THREAD_NAME + "-pageFetcher");
+        }
+    }
+
+    /**
+     * 退出运行状态，关闭本次执行所使用的线程池
+     */
+    private void stopState() {
+        try {
+            if (sliceLauncher != null) {
+                sliceLauncher.shutdown();
+            }
+            if (batchExecutor != null) {
+                batchExecutor.shutdown();
+                if (batchExecutor.getLimiter() != null) {
+                    logger.info("自适应并发统计: " + batchExecutor.getLimiter());
+                }
+                logger.info("重试统计: " + retryScheduler);
+                if (inFlightBudget != null) {
+                    logger.info("在途数据统计: " + inFlightBudget);
+                }
+                retryScheduler.shutdown();
+            }
+            if (pageFetcher != null) {
+                pageFetcher.shutdownNow();
+            }
+            // 缓冲写入或按策略刷盘的记录器，在处理结束时把记录全部写入
+            if (sliceRecorder instanceof Flushable) {
+                try {
+                    ((Flushable) sliceRecorder).flush();
+                } catch (IOException e) {
+                    logger.warn("刷新分片记录发生异常", e);
+                }
+            }
+        } finally {
+            sliceLauncher = null;
+            batchExecutor = null;
+            pageFetcher = null;
+            checkpoints = Collections.emptyMap();
+            state = 0;
+        }
+    }
+
+    /**
+     * 判断是否使用单线程，可以启动的线程数 <=1 或者一次性可以全部导完就使用单线程
+     *
+     * @param count       当前处理的总量
+     * @param hasNextPage 是否有下一页
+     * @param srcSize     本次需要处理的资源量
+     * @return 是否使用单线程
+     */
+    private boolean useSingleThread(long count, boolean hasNextPage, int srcSize) {
+        return (getBatchThreadNum() <= 1)
+                || (count == 0 && !hasNextPage && srcSize <= numPerBatch);
+    }
+
+    /**
+     * 理想的线程数，使用 2倍cpu核心数+1
+     */
+    private int desiredThreadNum() {
+        return Runtime.getRuntime().availableProcessors() * 2 + 1;
+    }
+
+    public void setSlicesThreadNum(int slicesThreadNum) {
+        requirePositive(slicesThreadNum, "分片任务执行线程数必须大于0, slicesThreadNum:");
+        ensureState();
+        this.slicesThreadNum = slicesThreadNum;
+    }
+
+    /**
+     * 设置所有分片共享的批次处理线程数
+     *
+     * @param batchThreadNum 批次处理线程数
+     * @throws IllegalArgumentException 给定的线程数小于等于0时抛出
+     */
+    public void setBatchThreadNum(int batchThreadNum) {
+        requirePositive(batchThreadNum, "批次处理线程数必须大于0, batchThreadNum:");
+        ensureState();
+        this.batchThreadNum = batchThreadNum;
+    }
+
+    /**
+     * 设置分页预取深度，开启后每个分片会在独立的线程中提前获取后面的分页，使来源查询和批次处理重叠进行
+     * <p>
+     * 预取的分页保存在有界队列中，每个分片最多额外占用 prefetchDepth 页的内存
+     *
+     * @param prefetchDepth 预取深度，0表示不预取
+     * @throws IllegalArgumentException 给定的深度小于0时抛出
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        requireNotNegative(prefetchDepth, "预取深度不能为负数, prefetchDepth:");
+        ensureState();
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * 设置是否快速失败
+     * <p>
+     * 开启后分片中第一个批次失败时，该分片不再获取后续分页，并取消本分片还在排队的批次，尽快把分片标记为失败
+     *
+     * @param failFast 是否快速失败
+     */
+    public void setFailFast(boolean failFast) {
+        ensureState();
+        this.failFast = failFast;
+    }
+
+    /**
+     * 设置是否只重新处理失败的批次
+     * <p>
+     * 开启后分片的所有分页都获取成功而只是部分批次失败时，会通过 SliceRecorder 记录失败批次所在页的上一页游标和批次在页中的范围，
+     * 重新处理失败分片时只重新获取这些页并处理失败的批次，而不是重新处理整个分片。
+     * 使用此功能要求 getResources 对同样的分片和上一页返回相同的数据，且只依赖上一页的分页信息而不依赖上一页的数据
+     *
+     * @param retryFailedBatchesOnly 是否只重新处理失败的批次
+     */
+    public void setRetryFailedBatchesOnly(boolean retryFailedBatchesOnly) {
+        ensureState();
+        this.retryFailedBatchesOnly = retryFailedBatchesOnly;
+    }
+
+    /**
+     * 设置是否保存分页检查点
+     * <p>
+     * 开启后分片中某一页及其之前的所有页的批次都处理成功时，通过 SliceRecorder 保存这一页的游标，
+     * 断点续传或重新处理失败分片时从检查点的下一页继续，而不是从头处理整个分片。
+     * 框架只保存分页信息而不保存数据，如果获取下一页需要依赖上一页的数据，请在 Page 中设置 continuationToken
+     *
+     * @param checkpointEnabled 是否保存分页检查点
+     */
+    public void setCheckpointEnabled(boolean checkpointEnabled) {
+        ensureState();
+        this.checkpointEnabled = checkpointEnabled;
+    }
+
+    /**
+     * 设置是否自适应调整同时执行的批次数
+     * <p>
+     * 开启后批次耗时保持平稳时逐步增加并发数，耗时明显上升或者批次失败时按比例减少，
+     * 并发数的上限为 batchThreadNum，详见 {@link AdaptiveConcurrencyLimiter}
+     *
+     * @param adaptiveConcurrency 是否自适应调整并发数
+     */
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        ensureState();
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    /**
+     * 设置多节点分片协调器，多个节点（进程）使用共享同一个租约存储的协调器处理同一个任务时，每个分片只由一个节点处理
+     * <p>
+     * 每个节点应当使用自己的 SliceRecorder，全局的完成情况以租约存储为准
+     *
+     * @param leaseCoordinator 分片协调器，为null则由本节点处理全部分片
+     */
+    public void setLeaseCoordinator(SliceLeaseCoordinator<S> leaseCoordinator) {
+        ensureState();
+        this.leaseCoordinator = leaseCoordinator;
+    }
+
+    /**
+     * 设置静态分区，同一个任务启动多个进程时，每个进程设置不同的分区序号，各自只处理分配给自己的分片，进程之间不需要协调
+     * <p>
+     * 按分片序列化后的哈希值分配。
+     * 每个分区需要使用各自的 SliceRecorder（如不同目录），断点续传和重新处理失败分片时各分区只处理自己的记录，
+     * 也可以使用 {@link SliceRecorders#merge} 合并各分区的记录后由一个进程处理
+     *
+     * @param shardIndex 分区序号，从0开始
+     * @param shardCount 分区数，为1则不分区
+     * @throws IllegalArgumentException 分区数小于1或者分区序号不在 [0, shardCount) 之间时抛出
+     */
+    public void setShard(int shardIndex, int shardCount) {
+        setShard(shardIndex, shardCount, null);
+    }
+
+    /**
+     * 设置静态分区，按预估成本把分片均衡地分配给各分区
+     * <p>
+     * 各进程独立计算分配结果，因此估算器对同一个分片必须在所有进程中给出相同的成本，
+     * 如使用 {@link SliceCostEstimator#fromHistory} 基于同一份上次的实际成本快照，
+     * 不能使用依赖实时状态（如当前的行数统计）的估算器，否则分区之间会有重叠或遗漏。
+     * 估算失败或者成本为负数时 {@link #process()} 直接抛出异常，不会按0处理。
+     * <p>
+     * 与 {@link #setSliceCostEstimator} 相互独立，后者只决定本进程内分片的启动顺序
+     *
+     * @param shardIndex    分区序号，从0开始
+     * @param shardCount    分区数，为1则不分区
+     * @param costEstimator 成本估算器，为null则按分片的哈希值分配
+     * @throws IllegalArgumentException 分区数小于1或者分区序号不在 [0, shardCount) 之间时抛出
+     */
+    public void setShard(int shardIndex, int shardCount, SliceCostEstimator<S> costEstimator) {
+        requirePositive(shardCount, "分区数必须大于0, shardCount:");
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("分区序号必须在0到分区数之间, shardIndex:" + shardIndex + ", shardCount:" + shardCount);
+        }
+        ensureState();
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.shardCostEstimator = costEstimator;
+    }
+
+    public void setSliceRecorder(SliceRecorder<S> sliceRecorder) {
+        ensureState();
+        this.sliceRecorder = sliceRecorder;
+    }
+
+    public void setNumPerBatch(int numPerBatch) {
+        requirePositive(numPerBatch, "每批次的数量必须大于0，numPerBatch:");
+        ensureState();
+        this.numPerBatch = numPerBatch;
+    }
+
+    private void requirePositive(int num, String msg) {
+        if (num <= 0) {
+            throw new IllegalArgumentException(msg + num);
         }
     }
 
@@ -549,6 +1602,43 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
         this.launchInterval = launchInterval;
     }
 
+    /**
+     * 设置是否根据首页的获取耗时错开分片的启动
+     * <p>
+     * 开启后第一批同时启动的分片中，上一个分片获取到第一页后立即启动下一个分片，最多等待 launchInterval，
+     * 来源查询压力大、首页获取慢时启动自然会被拉开，查询快时则不会白白等待
+     *
+     * @param adaptiveLaunchInterval 是否根据首页的获取耗时错开分片的启动
+     */
+    public void setAdaptiveLaunchInterval(boolean adaptiveLaunchInterval) {
+        ensureState();
+        this.adaptiveLaunchInterval = adaptiveLaunchInterval;
+    }
+
+    /**
+     * 设置是否动态拆分正在处理的分片
+     * <p>
+     * 开启后当没有待启动的分片而有空闲的启动线程时，正在处理的分片在分页边界通过 {@link #remainingSlice(Slice, Page)}
+     * 获取还没有读取的部分，再通过 {@link #splitSlice(Slice)} 拆分成子分片交给空闲的启动线程处理，
+     * 原分片等已读取部分的批次全部成功后视为完成，子分片的拆分关系通过 SliceRecorder 记录以便断点续传
+     *
+     * @param dynamicSplitting 是否动态拆分正在处理的分片
+     */
+    public void setDynamicSplitting(boolean dynamicSplitting) {
+        ensureState();
+        this.dynamicSplitting = dynamicSplitting;
+    }
+
+    /**
+     * 设置分片成本估算器，设置后按预估成本从大到小启动分片，并输出预估和实际的总耗时；不影响静态分区的分配方式
+     *
+     * @param sliceCostEstimator 分片成本估算器，为null则按分片集合的顺序启动
+     */
+    public void setSliceCostEstimator(SliceCostEstimator<S> sliceCostEstimator) {
+        ensureState();
+        this.sliceCostEstimator = sliceCostEstimator;
+    }
+
     public void setThreadPoolFactory(ThreadPoolFactory threadPoolFactory) {
         if (threadPoolFactory == null) {
             throw new NullPointerException("线程池工厂不能为空");
@@ -557,6 +1647,22 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
         this.threadPoolFactory = threadPoolFactory;
     }
 
+    /**
+     * 使用虚拟线程执行分片和批次任务，适用于IO密集型的处理
+     * <p>
+     * 批次任务的并发数由信号量限制为 maxBatchConcurrency，而不是平台线程数，
+     * 当前JDK不支持虚拟线程时退回使用平台线程池，详见 {@link VirtualThreadPoolFactory}
+     *
+     * @param maxBatchConcurrency 所有分片共享的最大批次并发数
+     * @throws IllegalArgumentException 给定的并发数小于等于0时抛出
+     */
+    public void useVirtualThreads(int maxBatchConcurrency) {
+        requirePositive(maxBatchConcurrency, "最大批次并发数必须大于0, maxBatchConcurrency:");
+        ensureState();
+        this.threadPoolFactory = new VirtualThreadPoolFactory();
+        this.batchThreadNum = maxBatchConcurrency;
+    }
+
     public void setRetryTime(int retryTime) {
         requireNotNegative(retryTime, "重试次数不能为负数: retryTime:");
         ensureState();
@@ -568,6 +1674,106 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
         this.retryNullable = retryNullable;
     }
 
+    /**
+     * 设置失败重试的退避间隔，实际间隔在上限的一半到上限之间随机，避免同时失败的批次一起重试
+     *
+     * @param retryBaseDelay 第一次重试前的退避间隔上限，之后每次翻倍，单位毫秒
+     * @param retryMaxDelay  退避间隔的最大值，单位毫秒
+     * @throws IllegalArgumentException 间隔为负数或者最大值小于初始间隔时抛出
+     */
+    public void setRetryBackoff(long retryBaseDelay, long retryMaxDelay) {
+        requireNotNegative(retryBaseDelay, "退避间隔不能为负数, retryBaseDelay:");
+        if (retryMaxDelay < retryBaseDelay) {
+            throw new IllegalArgumentException("退避间隔的最大值不能小于初始间隔, retryMaxDelay:" + retryMaxDelay);
+        }
+        ensureState();
+        this.retryBaseDelay = retryBaseDelay;
+        this.retryMaxDelay = retryMaxDelay;
+    }
+
+    /**
+     * 设置数据来源的熔断器，每次调用 getResources（包括重试）都经过熔断器，抛出异常或者返回null视为失败。
+     * 熔断期间暂停启动新的分片和获取分页，探测成功后自动恢复
+     *
+     * @param sourceCircuitBreaker 熔断器，为null则不熔断
+     */
+    public void setSourceCircuitBreaker(CircuitBreaker sourceCircuitBreaker) {
+        ensureState();
+        this.sourceCircuitBreaker = sourceCircuitBreaker;
+    }
+
+    /**
+     * 设置处理目标的熔断器，每次执行批次任务（包括重试）都经过熔断器，抛出异常视为失败。
+     * 熔断期间暂停启动新的分片和获取分页，等待中的批次也不会执行，探测成功后自动恢复
+     *
+     * @param sinkCircuitBreaker 熔断器，为null则不熔断
+     */
+    public void setSinkCircuitBreaker(CircuitBreaker sinkCircuitBreaker) {
+        ensureState();
+        this.sinkCircuitBreaker = sinkCircuitBreaker;
+    }
+
+    /**
+     * 设置在途数据条数的预算，即所有分片已提交但还没有处理完的数据条数的上限
+     *
+     * @param maxRecords 在途数据条数的上限，小于等于0则不限制
+     * @see #setInFlightBudget(long, long, Weigher)
+     */
+    public void setInFlightBudget(long maxRecords) {
+        setInFlightBudget(maxRecords, 0, null);
+    }
+
+    /**
+     * 设置在途数据的预算，即所有分片已提交但还没有处理完的数据条数和估算字节数的上限
+     * <p>
+     * 提交批次前获取预算，超出时阻塞，不再提交批次也就不再获取后续分页，批次完成（包括失败）时归还，
+     * 因此来源获取得比处理快时占用的内存是有上限的。已获取但还没有提交的数据不计入预算，
+     * 每个分片最多额外占用一页（开启预取时再加上预取深度的页数）
+     *
+     * @param maxRecords 在途数据条数的上限，小于等于0则不限制
+     * @param maxBytes   在途数据估算字节数的上限，小于等于0或者 weigher 为null则不限制
+     * @param weigher    估算每条数据字节数的权重估算器，可以为null
+     */
+    public void setInFlightBudget(long maxRecords, long maxBytes, Weigher<? super T> weigher) {
+        ensureState();
+        this.maxInFlightRecords = maxRecords;
+        this.maxInFlightBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    /**
+     * 开启故障隔离：批次重试之后仍然失败时，不断对半拆分重新处理，只有拆分到 minBatchSize 仍然失败的数据写入死信文件，
+     * 其余数据正常处理，批次和分片视为成功，因此个别无法处理的数据不会导致整个分片重新处理
+     * <p>
+     * 拆分后的两半都失败或者超过一半的数据无法处理时视为系统性的故障，批次按原来的方式失败，
+     * 不超过 minBatchSize 的批次（如每页末尾较小的批次）不能拆分，同样按原来的方式失败。
+     * 拆分后的批次会再次调用 createTask，已成功的一半可能被重复处理，处理逻辑需要是幂等的
+     *
+     * @param deadLetterFile 死信文件，为null则关闭故障隔离
+     * @param minBatchSize   拆分的最小批次大小，必须大于0
+     * @throws IllegalArgumentException minBatchSize 小于等于0时抛出
+     */
+    public void setFailureIsolation(DeadLetterFile<T> deadLetterFile, int minBatchSize) {
+        requirePositive(minBatchSize, "拆分的最小批次大小必须大于0, minBatchSize:");
+        ensureState();
+        this.deadLetterFile = deadLetterFile;
+        this.minIsolationBatchSize = minBatchSize;
+    }
+
+    /**
+     * 设置重试预算，所有分片的批次和分页获取共享，重试次数超过调用次数的这个比例（加上初始余量）之后失败不再重试
+     *
+     * @param retryBudgetRatio 重试次数与调用次数的比例上限，必须大于0
+     * @throws IllegalArgumentException 比例小于等于0时抛出
+     */
+    public void setRetryBudgetRatio(double retryBudgetRatio) {
+        if (!(retryBudgetRatio > 0)) {
+            throw new IllegalArgumentException("重试预算必须大于0, retryBudgetRatio:" + retryBudgetRatio);
+        }
+        ensureState();
+        this.retryBudgetRatio = retryBudgetRatio;
+    }
+
     /**
      * 判断当前执行状态
      *
@@ -587,6 +1793,22 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
         return numPerBatch;
     }
 
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public SliceCostEstimator<S> getShardCostEstimator() {
+        return shardCostEstimator;
+    }
+
+    public SliceLeaseCoordinator<S> getLeaseCoordinator() {
+        return leaseCoordinator;
+    }
+
     public SliceRecorder<S> getSliceRecorder() {
         return sliceRecorder;
     }
@@ -595,6 +1817,81 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
         return slicesThreadNum;
     }
 
+    /**
+     * @return 所有分片共享的批次处理线程数，未设置时为 2倍cpu核心数+1
+     */
+    public int getBatchThreadNum() {
+        return batchThreadNum > 0 ? batchThreadNum : desiredThreadNum();
+    }
+
+    public boolean isCheckpointEnabled() {
+        return checkpointEnabled;
+    }
+
+    public SliceCostEstimator<S> getSliceCostEstimator() {
+        return sliceCostEstimator;
+    }
+
+    /**
+     * 获取最近一次执行中处理成功的分片的实际成本（处理的数据量），可以通过
+     * {@link SliceCostEstimator#fromHistory(Map, long)} 作为下次执行的成本估算
+     *
+     * @return 分片与其处理的数据量
+     */
+    public Map<Slice<S>, Long> getSliceCosts() {
+        return new HashMap<>(sliceCosts);
+    }
+
+    public boolean isDynamicSplitting() {
+        return dynamicSplitting;
+    }
+
+    public boolean isAdaptiveLaunchInterval() {
+        return adaptiveLaunchInterval;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    /**
+     * @return 正在执行或最近一次执行使用的自适应并发限制器，可以查看当前并发数、耗时和吞吐量，未开启时返回null
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public long getMaxInFlightRecords() {
+        return maxInFlightRecords;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public Weigher<? super T> getWeigher() {
+        return weigher;
+    }
+
+    /**
+     * @return 正在执行或最近一次执行使用的在途数据预算，可以查看在途数据量的峰值和等待次数，未开启时返回null
+     */
+    public InFlightBudget getInFlightBudget() {
+        return inFlightBudget;
+    }
+
+    public boolean isRetryFailedBatchesOnly() {
+        return retryFailedBatchesOnly;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
     public SliceParser<S> getSliceParser() {
         return sliceParser;
     }
@@ -611,4 +1908,62 @@ public abstract class DataProcessorTemplate<T, S> implements DataProcessor {
         return retryNullable;
     }
 
+    public long getRetryBaseDelay() {
+        return retryBaseDelay;
+    }
+
+    public long getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    public DeadLetterFile<T> getDeadLetterFile() {
+        return deadLetterFile;
+    }
+
+    public int getMinIsolationBatchSize() {
+        return minIsolationBatchSize;
+    }
+
+    public CircuitBreaker getSourceCircuitBreaker() {
+        return sourceCircuitBreaker;
+    }
+
+    public CircuitBreaker getSinkCircuitBreaker() {
+        return sinkCircuitBreaker;
+    }
+
+    /**
+     * @return 最近一次执行使用的重试调度器，可以查看重试次数等统计数据，还没有执行过则返回null
+     */
+    public RetryScheduler getRetryScheduler() {
+        return retryScheduler;
+    }
+
+    /**
+     * 批次的标记，记录批次所在页在检查点跟踪器中的序号和批次的范围
+     */
+    private static class BatchTag {
+        private final long pageSeq;
+        private final BatchRange range;
+        /**
+         * 批次占用的在途数据预算
+         */
+        private final long records;
+        private final long bytes;
+
+        private BatchTag(long pageSeq, BatchRange range) {
+            this(pageSeq, range, 0, 0);
+        }
+
+        private BatchTag(long pageSeq, BatchRange range, long records, long bytes) {
+            this.pageSeq = pageSeq;
+            this.range = range;
+            this.records = records;
+            this.bytes = bytes;
+        }
+    }
 }
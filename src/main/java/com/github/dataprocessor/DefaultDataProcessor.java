@@ -2,7 +2,9 @@ package com.github.dataprocessor;
 
 import com.github.dataprocessor.provider.DataProvider;
 import com.github.dataprocessor.provider.Page;
+import com.github.dataprocessor.provider.ProviderUtil;
 import com.github.dataprocessor.slice.Slice;
+import com.github.dataprocessor.slice.SliceSource;
 
 import java.util.List;
 import java.util.Set;
@@ -66,6 +68,21 @@ public class DefaultDataProcessor<T, S> extends DataProcessorTemplate<T, S> {
         return dataProvider.generateSlices();
     }
 
+    /**
+     * 委托给 DataProvider 的分片来源
+     * <p>
+     * 如果子类重写了 generateSlices，则使用 generateSlices 生成的分片集合
+     *
+     * @return 分片来源
+     */
+    @Override
+    protected SliceSource<S> sliceSource() {
+        if (ProviderUtil.overrides(getClass(), DefaultDataProcessor.class, "generateSlices")) {
+            return SliceSource.of(generateSlices());
+        }
+        return dataProvider.sliceSource();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -82,6 +99,22 @@ public class DefaultDataProcessor<T, S> extends DataProcessorTemplate<T, S> {
         return dataProvider.createTask(resources);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<Slice<S>> splitSlice(Slice<S> slice) {
+        return dataProvider.split(slice);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Slice<S> remainingSlice(Slice<S> slice, Page<T> lastPage) {
+        return dataProvider.remainingSlice(slice, lastPage);
+    }
+
     public DataProvider<T, S> getDataProvider() {
         return dataProvider;
     }
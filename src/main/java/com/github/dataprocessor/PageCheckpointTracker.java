@@ -0,0 +1,101 @@
+package com.github.dataprocessor;
+
+import com.github.dataprocessor.slice.PageCursor;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * 分页检查点跟踪器，跟踪一个分片中每一页的批次完成情况
+ * <p>
+ * 批次是乱序完成的，只有某一页以及它之前的所有页的批次都处理成功，这一页才算已确认，
+ * 每当已确认的最后一页往后推进时，就把这一页的游标作为检查点保存下来。
+ * 一旦有批次失败，该页永远不会被确认，检查点也不会再往后推进，
+ * 因此失败页及其之后的页不再保留，只有失败页之前的页还可以继续确认，分片中的页再多也只占用固定的内存
+ */
+class PageCheckpointTracker {
+    private final Consumer<PageCursor> checkpointSaver;
+    /**
+     * 已登记但还没有确认的页，按登记的顺序排列
+     */
+    private final TreeMap<Long, PageState> pages = new TreeMap<>();
+    private long nextSeq;
+    /**
+     * 第一个有批次失败的页的序号，没有失败则为-1
+     */
+    private long failedSeq = -1;
+
+    /**
+     * @param checkpointSaver 保存检查点的方法
+     */
+    PageCheckpointTracker(Consumer<PageCursor> checkpointSaver) {
+        this.checkpointSaver = checkpointSaver;
+    }
+
+    /**
+     * 登记一页，必须在提交这一页的批次之前调用
+     *
+     * @param cursor  这一页的游标
+     * @param batches 这一页的批次数量
+     * @return 这一页的序号，批次完成时使用此序号确认
+     */
+    synchronized long register(PageCursor cursor, int batches) {
+        long seq = nextSeq++;
+        if (failedSeq < 0) {
+            pages.put(seq, new PageState(cursor, batches));
+        }
+        return seq;
+    }
+
+    /**
+     * 确认一个批次的处理结果
+     *
+     * @param seq       批次所在页的序号
+     * @param succeeded 是否处理成功
+     */
+    synchronized void ack(long seq, boolean succeeded) {
+        PageState page = pages.get(seq);
+        if (page == null) {
+            return;
+        }
+        page.remaining--;
+        if (!succeeded) {
+            // 检查点不会越过这一页，这一页及其之后的页都不再需要跟踪
+            failedSeq = seq;
+            pages.tailMap(seq, true).clear();
+        }
+        PageCursor checkpoint = null;
+        Iterator<Map.Entry<Long, PageState>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            PageState head = it.next().getValue();
+            if (head.remaining > 0) {
+                break;
+            }
+            checkpoint = head.cursor;
+            it.remove();
+        }
+        if (checkpoint != null) {
+            // 在锁内保存，保证检查点按顺序写入
+            checkpointSaver.accept(checkpoint);
+        }
+    }
+
+    /**
+     * @return 还在跟踪的页数
+     */
+    synchronized int getTrackedPages() {
+        return pages.size();
+    }
+
+    private static class PageState {
+        private final PageCursor cursor;
+        private int remaining;
+
+        private PageState(PageCursor cursor, int remaining) {
+            this.cursor = cursor;
+            this.remaining = remaining;
+        }
+    }
+}
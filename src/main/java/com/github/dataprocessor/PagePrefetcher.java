@@ -0,0 +1,118 @@
+package com.github.dataprocessor;
+
+import com.github.dataprocessor.provider.Page;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+/**
+ * 分页预取器，在独立的获取线程中提前获取后面的分页，使来源查询与批次处理可以重叠进行
+ * <p>
+ * 预取的分页存放在有界的缓冲队列中，队列满时获取线程阻塞，因此预取占用的内存是有上限的
+ *
+ * @param <T> 被处理的对象类
+ */
+class PagePrefetcher<T> {
+    private static final Logger logger = LoggerFactory.getLogger(PagePrefetcher.class);
+    /**
+     * 获取失败的标记，因为阻塞队列不能存放null值
+     */
+    private static final Object FAILED = new Object();
+    private final ExecutorService executor;
+    private final BlockingQueue<Object> buffer;
+    private final UnaryOperator<Page<T>> fetcher;
+    private final Page<T> startPage;
+    private volatile boolean stopped;
+    private Future<?> future;
+
+    /**
+     * @param executor  执行获取任务的线程池
+     * @param depth     预取深度，即最多提前获取的页数
+     * @param fetcher   根据上一页获取下一页的方法，获取失败时返回null
+     * @param startPage 第一次获取时使用的上一页，从头开始获取则为null
+     */
+    PagePrefetcher(ExecutorService executor, int depth, UnaryOperator<Page<T>> fetcher, Page<T> startPage) {
+        this.executor = executor;
+        this.buffer = new ArrayBlockingQueue<>(depth);
+        this.fetcher = fetcher;
+        this.startPage = startPage;
+    }
+
+    /**
+     * 开始在获取线程中预取分页
+     */
+    void start() {
+        future = executor.submit(this::fetchLoop);
+    }
+
+    /**
+     * 按顺序取出下一页，若还没有获取到则阻塞等待
+     *
+     * @return 下一页，获取失败时返回null
+     * @throws InterruptedException 等待时被中断
+     */
+    @SuppressWarnings("unchecked")
+    Page<T> take() throws InterruptedException {
+        Object page = buffer.take();
+        return page == FAILED ? null : (Page<T>) page;
+    }
+
+    /**
+     * 停止预取并丢弃已预取的分页，分片处理结束（包括提前失败退出）时必须调用
+     */
+    void stop() {
+        stopped = true;
+        if (future != null) {
+            future.cancel(true);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 放入获取失败的标记，获取时被中断（中断状态已恢复）也要放入，否则消费方会一直等待
+     */
+    private void putFailed() throws InterruptedException {
+        if (stopped) {
+            return;
+        }
+        boolean interrupted = Thread.interrupted();
+        try {
+            buffer.put(FAILED);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void fetchLoop() {
+        Page<T> lastPage = startPage;
+        try {
+            while (!stopped) {
+                Page<T> page = fetcher.apply(lastPage);
+                if (page == null) {
+                    putFailed();
+                    return;
+                }
+                buffer.put(page);
+                List<T> data = page.getData();
+                // 与消费方的结束条件保持一致：没有数据或者没有下一页则结束
+                if (data == null || data.isEmpty() || !page.isHasNext()) {
+                    return;
+                }
+                lastPage = page;
+            }
+        } catch (InterruptedException e) {
+            if (!stopped) {
+                logger.error("预取分页时被中断", e);
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+}
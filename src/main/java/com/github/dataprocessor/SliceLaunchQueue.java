@@ -0,0 +1,89 @@
+package com.github.dataprocessor;
+
+import com.github.dataprocessor.slice.Slice;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 待启动的分片队列，按需从分片来源中取出下一个分片，不需要事先生成全部分片
+ * <p>
+ * 动态拆分出来的子分片放到队首，优先于分片来源中的分片被空闲的启动线程领取。
+ * 分片来源已遍历完、没有子分片而且没有正在处理的分片时，本轮启动结束
+ *
+ * @param <S> 分片的类型
+ */
+class SliceLaunchQueue<S> {
+    private final Iterator<Slice<S>> source;
+    private final Deque<Slice<S>> splitSlices = new ArrayDeque<>();
+    /**
+     * 已取出但还没有处理结束的分片数
+     */
+    private int running;
+    private boolean exhausted;
+
+    /**
+     * @param source 分片来源的迭代器
+     */
+    SliceLaunchQueue(Iterator<Slice<S>> source) {
+        this.source = source;
+    }
+
+    /**
+     * 取出下一个需要启动的分片，暂时没有但还有正在处理的分片（可能会拆分出子分片）时阻塞等待
+     *
+     * @return 下一个分片，全部处理结束时返回null
+     * @throws InterruptedException 等待时被中断
+     */
+    synchronized Slice<S> next() throws InterruptedException {
+        while (true) {
+            if (!splitSlices.isEmpty()) {
+                running++;
+                return splitSlices.pollFirst();
+            }
+            while (source.hasNext()) {
+                Slice<S> slice = source.next();
+                if (slice != null) {
+                    running++;
+                    return slice;
+                }
+            }
+            exhausted = true;
+            if (running == 0) {
+                return null;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * 加入动态拆分出来的子分片，必须在原分片调用 {@link #finished()} 之前调用
+     *
+     * @param slices 子分片
+     */
+    synchronized void addSplitSlices(List<Slice<S>> slices) {
+        for (int i = slices.size() - 1; i >= 0; i--) {
+            splitSlices.addFirst(slices.get(i));
+        }
+        if (!slices.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 分片处理结束
+     */
+    synchronized void finished() {
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * @return 是否还有待启动的分片
+     */
+    synchronized boolean hasPending() {
+        return !splitSlices.isEmpty() || !exhausted;
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.dataprocessor;
+
+import com.github.dataprocessor.slice.Slice;
+import com.github.dataprocessor.slice.SliceCostEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * 分片的启动顺序，使用最长处理时间优先（LPT）的规则：按预估成本从大到小启动分片
+ * <p>
+ * 同时模拟把分片依次分配给当前负载最小的启动线程，得出预估的总耗时（makespan），
+ * 以便与实际的总耗时比较，判断成本估算是否准确
+ *
+ * @param <S> 分片的类型
+ */
+class SliceSchedule<S> {
+    private static final Logger logger = LoggerFactory.getLogger(SliceSchedule.class);
+    private final List<Slice<S>> slices;
+    private final long totalCost;
+    private final long predictedMakespan;
+
+    private SliceSchedule(List<Slice<S>> slices, long totalCost, long predictedMakespan) {
+        this.slices = slices;
+        this.totalCost = totalCost;
+        this.predictedMakespan = predictedMakespan;
+    }
+
+    /**
+     * 按预估成本从大到小排列分片
+     *
+     * @param slices    需要启动的分片
+     * @param estimator 成本估算器
+     * @param workers   同时处理的分片数
+     * @param <S>       分片的类型
+     * @return 分片的启动顺序
+     */
+    static <S> SliceSchedule<S> longestFirst(Collection<Slice<S>> slices, SliceCostEstimator<S> estimator, int workers) {
+        PriorityQueue<SliceCost<S>> byCost = new PriorityQueue<>(Math.max(1, slices.size()),
+                Comparator.comparingLong((SliceCost<S> c) -> c.cost).reversed());
+        for (Slice<S> slice : slices) {
+            byCost.add(new SliceCost<>(slice, estimate(estimator, slice), null));
+        }
+        // 每个启动线程的负载，总是分配给负载最小的线程
+        PriorityQueue<Long> loads = new PriorityQueue<>();
+        for (int i = 0; i < workers; i++) {
+            loads.add(0L);
+        }
+        List<Slice<S>> ordered = new ArrayList<>(slices.size());
+        long total = 0;
+        long makespan = 0;
+        while (!byCost.isEmpty()) {
+            SliceCost<S> cost = byCost.poll();
+            ordered.add(cost.slice);
+            total += cost.cost;
+            long load = loads.poll() + cost.cost;
+            makespan = Math.max(makespan, load);
+            loads.add(load);
+        }
+        return new SliceSchedule<>(ordered, total, makespan);
+    }
+
+    /**
+     * 按预估成本把分片均衡地分配给多个分区（节点），取出其中一个分区的分片
+     * <p>
+     * 同样使用最长处理时间优先的规则，成本相同的分片按键排序、负载相同的分区取序号小的，
+     * 因此各节点对同样的分片独立计算得到的分配结果完全相同，不需要互相协调。
+     * 前提是估算器在各节点给出相同的成本，估算失败时不能按0处理，否则各节点的分配结果不同
+     *
+     * @param slices     全部分片
+     * @param estimator  成本估算器
+     * @param keyOf      分片的键，用于确定成本相同的分片的顺序
+     * @param shardIndex 分区序号
+     * @param shardCount 分区数
+     * @param <S>        分片的类型
+     * @return 分配给该分区的分片，按预估成本从大到小排列
+     * @throws IllegalStateException 估算分片成本失败或者成本为负数时抛出
+     */
+    static <S> List<Slice<S>> shardByCost(Collection<Slice<S>> slices, SliceCostEstimator<S> estimator,
+                                          Function<Slice<S>, String> keyOf, int shardIndex, int shardCount) {
+        List<SliceCost<S>> costs = new ArrayList<>(slices.size());
+        for (Slice<S> slice : slices) {
+            costs.add(new SliceCost<>(slice, estimateForShard(estimator, slice), keyOf.apply(slice)));
+        }
+        costs.sort(Comparator.comparingLong((SliceCost<S> c) -> c.cost).reversed().thenComparing(c -> c.key));
+        long[] loads = new long[shardCount];
+        List<Slice<S>> assigned = new ArrayList<>();
+        for (SliceCost<S> cost : costs) {
+            int min = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (loads[i] < loads[min]) {
+                    min = i;
+                }
+            }
+            loads[min] += cost.cost;
+            if (min == shardIndex) {
+                assigned.add(cost.slice);
+            }
+        }
+        return assigned;
+    }
+
+    private static <S> long estimate(SliceCostEstimator<S> estimator, Slice<S> slice) {
+        try {
+            return Math.max(0, estimator.estimateCost(slice));
+        } catch (Exception e) {
+            logger.warn("估算分片成本失败，按0处理: " + slice, e);
+            return 0;
+        }
+    }
+
+    private static <S> long estimateForShard(SliceCostEstimator<S> estimator, Slice<S> slice) {
+        long cost;
+        try {
+            cost = estimator.estimateCost(slice);
+        } catch (Exception e) {
+            throw new IllegalStateException("估算分片成本失败，无法按成本分区: " + slice, e);
+        }
+        if (cost < 0) {
+            throw new IllegalStateException("分片成本不能为负数, slice:" + slice + ", cost:" + cost);
+        }
+        return cost;
+    }
+
+    List<Slice<S>> getSlices() {
+        return slices;
+    }
+
+    long getTotalCost() {
+        return totalCost;
+    }
+
+    /**
+     * @return 预估的总耗时，与成本的单位相同
+     */
+    long getPredictedMakespan() {
+        return predictedMakespan;
+    }
+
+    /**
+     * 预估的总耗时与理想值（总成本平均分给每个启动线程）的比值，越接近1说明负载越均衡
+     *
+     * @param workers 同时处理的分片数
+     * @return 比值，总成本为0时返回1
+     */
+    double predictedImbalance(int workers) {
+        return imbalance(predictedMakespan, totalCost, Math.min(workers, slices.size()));
+    }
+
+    /**
+     * 总耗时与理想值（总工作量平均分给每个线程）的比值
+     *
+     * @param makespan 总耗时
+     * @param work     总工作量
+     * @param workers  线程数
+     * @return 比值，总工作量为0时返回1
+     */
+    static double imbalance(long makespan, long work, int workers) {
+        if (work <= 0 || workers <= 0) {
+            return 1;
+        }
+        return makespan / (work / (double) workers);
+    }
+
+    private static class SliceCost<S> {
+        private final Slice<S> slice;
+        private final long cost;
+        private final String key;
+
+        private SliceCost(Slice<S> slice, long cost, String key) {
+            this.slice = slice;
+            this.cost = cost;
+            this.key = key;
+        }
+    }
+}
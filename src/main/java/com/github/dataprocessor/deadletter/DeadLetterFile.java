@@ -0,0 +1,125 @@
+package com.github.dataprocessor.deadletter;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 死信文件，记录经过故障隔离之后仍然无法处理的数据，每条数据一行 JSON，包含所在的分片、序列化后的数据和异常信息
+ * <p>
+ * 死信数据通常很少，每次写入之后立即刷新，追加写入，不会覆盖上次的记录
+ *
+ * @param <T> 被处理的对象类
+ */
+public class DeadLetterFile<T> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterFile.class);
+    private final File file;
+    private final DeadLetterSerializer<T> serializer;
+    private Writer writer;
+    private long count;
+
+    /**
+     * 使用 JSON 序列化数据
+     *
+     * @param path 死信文件路径
+     */
+    public DeadLetterFile(String path) {
+        this(path, DeadLetterSerializer.json());
+    }
+
+    /**
+     * @param path       死信文件路径
+     * @param serializer 数据的序列化器
+     */
+    public DeadLetterFile(String path, DeadLetterSerializer<T> serializer) {
+        if (path == null || serializer == null) {
+            throw new IllegalArgumentException("死信文件路径和序列化器不能为空");
+        }
+        this.file = new File(path);
+        this.serializer = serializer;
+    }
+
+    /**
+     * 写入无法处理的数据
+     *
+     * @param slice   数据所在的分片
+     * @param records 无法处理的数据
+     * @param error   最后一次处理时的异常，可以为null
+     */
+    public synchronized void write(String slice, List<T> records, Throwable error) {
+        try {
+            if (writer == null) {
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.exists()) {
+                    throw new IOException("创建死信文件目录失败: " + parent);
+                }
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            }
+            String errorMessage = error == null ? null : error.toString();
+            for (T record : records) {
+                JSONObject line = new JSONObject(true);
+                line.put("slice", slice);
+                line.put("record", serializer.serialize(record));
+                line.put("error", errorMessage);
+                writer.write(line.toJSONString());
+                writer.write(System.lineSeparator());
+            }
+            writer.flush();
+            count += records.size();
+            logger.warn("分片 {} 有 {} 条无法处理的数据写入死信文件: {}", slice, records.size(), file);
+        } catch (IOException e) {
+            throw new IllegalStateException("写入死信文件失败: " + file, e);
+        }
+    }
+
+    /**
+     * 读取死信文件中序列化后的数据，用于排查或者修复后重新处理
+     *
+     * @return 序列化后的数据，没有则返回空列表
+     * @throws IOException 读取失败时抛出
+     */
+    public synchronized List<String> readRecords() throws IOException {
+        List<String> records = new ArrayList<>();
+        if (!file.exists()) {
+            return records;
+        }
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                records.add(JSON.parseObject(line).getString("record"));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return 本次打开之后写入的数据条数
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.dataprocessor.deadletter;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * 死信数据的序列化器，把无法处理的数据转换成字符串写入死信文件
+ *
+ * @param <T> 被处理的对象类
+ */
+@FunctionalInterface
+public interface DeadLetterSerializer<T> {
+
+    /**
+     * 序列化一条数据
+     *
+     * @param record 无法处理的数据
+     * @return 序列化后的字符串
+     */
+    String serialize(T record);
+
+    /**
+     * @param <T> 被处理的对象类
+     * @return 序列化为 JSON 的序列化器
+     */
+    static <T> DeadLetterSerializer<T> json() {
+        return JSON::toJSONString;
+    }
+}
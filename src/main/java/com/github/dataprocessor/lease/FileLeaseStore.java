@@ -0,0 +1,174 @@
+package com.github.dataprocessor.lease;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * 基于共享目录的租约存储，每个租约一个文件，读写租约时持有目录中锁文件的文件锁
+ * <p>
+ * 适用于多个节点挂载同一个共享目录（需要支持文件锁，如 NFSv4）的场景，所有操作在同一把锁下串行执行，
+ * 因此只适合分片的处理时间远大于领取分片耗时的任务
+ */
+public class FileLeaseStore implements LeaseStore {
+    private static final Logger logger = LoggerFactory.getLogger(FileLeaseStore.class);
+    private static final String LOCK_FILE = "lease.lock";
+    private static final String LEASE_SUFFIX = ".lease";
+    private final File dir;
+    private final File lockFile;
+
+    /**
+     * @param dir 共享目录，同一个任务的所有节点使用同一个目录
+     */
+    public FileLeaseStore(String dir) {
+        this.dir = new File(dir);
+        if (!this.dir.exists() && !this.dir.mkdirs() && !this.dir.exists()) {
+            throw new IllegalStateException("创建租约目录失败: " + dir);
+        }
+        this.lockFile = new File(this.dir, LOCK_FILE);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, String owner, long ttlMillis) {
+        return withLock(() -> {
+            long now = System.currentTimeMillis();
+            Lease lease = read(key);
+            if (lease != null && !lease.isClaimableBy(owner, now)) {
+                return false;
+            }
+            write(new Lease(key, owner, now + ttlMillis, false));
+            return true;
+        });
+    }
+
+    @Override
+    public boolean renew(String key, String owner, long ttlMillis) {
+        return withLock(() -> {
+            Lease lease = read(key);
+            if (lease == null || lease.isCompleted() || !lease.getOwner().equals(owner)) {
+                return false;
+            }
+            write(new Lease(key, owner, System.currentTimeMillis() + ttlMillis, false));
+            return true;
+        });
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        withLock(() -> {
+            Lease lease = read(key);
+            if (lease != null && !lease.isCompleted() && lease.getOwner().equals(owner)) {
+                delete(leaseFile(key));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean complete(String key, String owner) {
+        return withLock(() -> {
+            Lease lease = read(key);
+            if (lease != null && !lease.isCompleted() && !lease.getOwner().equals(owner)) {
+                return false;
+            }
+            write(new Lease(key, owner, System.currentTimeMillis(), true));
+            return true;
+        });
+    }
+
+    @Override
+    public Lease getLease(String key) {
+        return withLock(() -> read(key));
+    }
+
+    @Override
+    public void clear() {
+        withLock(() -> {
+            File[] files = dir.listFiles((d, name) -> name.endsWith(LEASE_SUFFIX));
+            if (files != null) {
+                for (File file : files) {
+                    delete(file);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 持有文件锁执行，同一个进程中的多个线程先在本对象上同步，因为文件锁是进程级别的
+     */
+    private synchronized <R> R withLock(Supplier<R> action) {
+        try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+             FileChannel channel = raf.getChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                return action.get();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("获取租约目录的文件锁失败: " + lockFile, e);
+        }
+    }
+
+    private Lease read(String key) {
+        File file = leaseFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            // 键、持有者、过期时间、是否完成各一行
+            return new Lease(lines.get(0), lines.get(1), Long.parseLong(lines.get(2)), Boolean.parseBoolean(lines.get(3)));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("租约文件已损坏，视为没有租约: " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 先写临时文件再替换，写入时中断不会留下不完整的租约文件
+     */
+    private void write(Lease lease) {
+        Path target = leaseFile(lease.getKey()).toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        List<String> lines = Arrays.asList(lease.getKey(), lease.getOwner(),
+                String.valueOf(lease.getExpiresAt()), String.valueOf(lease.isCompleted()));
+        try {
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("写入租约文件失败: " + target, e);
+        }
+    }
+
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            throw new IllegalStateException("删除租约文件失败: " + file);
+        }
+    }
+
+    /**
+     * 序列化后的分片可能包含不能用于文件名的字符，文件名使用键的 UUID
+     */
+    private File leaseFile(String key) {
+        return new File(dir, UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + LEASE_SUFFIX);
+    }
+
+    public File getDir() {
+        return dir;
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.dataprocessor.lease;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.regex.Pattern;
+
+/**
+ * 基于数据库的租约存储，每个租约一行，(job, slice) 为主键
+ * <p>
+ * 领取时先使用带条件的 UPDATE 抢占已过期或者自己持有的租约，更新不到再 INSERT，
+ * 插入时主键冲突说明其他节点抢先领取了，两条语句都由数据库保证原子性，不需要额外的锁
+ */
+public class JdbcLeaseStore implements LeaseStore {
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_]*");
+    /**
+     * 违反完整性约束（如主键冲突）的 SQLState 类别
+     */
+    private static final String INTEGRITY_VIOLATION = "23";
+    private final DataSource dataSource;
+    private final String job;
+    private final String table;
+
+    /**
+     * 使用默认的表名前缀 dp_
+     *
+     * @param dataSource 数据源
+     * @param job        任务名称
+     */
+    public JdbcLeaseStore(DataSource dataSource, String job) {
+        this(dataSource, job, "dp_");
+    }
+
+    /**
+     * @param dataSource  数据源
+     * @param job         任务名称
+     * @param tablePrefix 表名前缀，只能包含字母、数字和下划线
+     */
+    public JdbcLeaseStore(DataSource dataSource, String job, String tablePrefix) {
+        if (dataSource == null || job == null || job.isEmpty()) {
+            throw new IllegalArgumentException("数据源和任务名称不能为空");
+        }
+        if (tablePrefix == null || !NAME_PATTERN.matcher(tablePrefix).matches()) {
+            throw new IllegalArgumentException("表名前缀只能包含字母、数字和下划线: " + tablePrefix);
+        }
+        this.dataSource = dataSource;
+        this.job = job;
+        this.table = tablePrefix + "slice_lease";
+    }
+
+    /**
+     * 创建租约表，已存在则跳过
+     */
+    public void createTable() {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + table + " (job VARCHAR(128) NOT NULL, slice VARCHAR(512) NOT NULL, "
+                    + "owner VARCHAR(128) NOT NULL, expires_at BIGINT NOT NULL, completed INT NOT NULL, PRIMARY KEY (job, slice))");
+        } catch (SQLException e) {
+            throw new IllegalStateException("创建租约表发生异常", e);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String key, String owner, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        String update = "UPDATE " + table + " SET owner = ?, expires_at = ? WHERE job = ? AND slice = ? AND completed = 0 "
+                + "AND (owner = ? OR expires_at <= ?)";
+        String insert = "INSERT INTO " + table + " (owner, expires_at, job, slice, completed) VALUES (?, ?, ?, ?, 0)";
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(update)) {
+                setLease(statement, owner, now + ttlMillis, key);
+                statement.setString(5, owner);
+                statement.setLong(6, now);
+                if (statement.executeUpdate() > 0) {
+                    return true;
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(insert)) {
+                setLease(statement, owner, now + ttlMillis, key);
+                return statement.executeUpdate() > 0;
+            } catch (SQLException e) {
+                if (e.getSQLState() != null && e.getSQLState().startsWith(INTEGRITY_VIOLATION)) {
+                    // 其他节点持有租约、已完成或者抢先插入
+                    return false;
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("领取租约发生异常: " + key, e);
+        }
+    }
+
+    @Override
+    public boolean renew(String key, String owner, long ttlMillis) {
+        String sql = "UPDATE " + table + " SET owner = ?, expires_at = ? WHERE job = ? AND slice = ? AND completed = 0 AND owner = ?";
+        return update(sql, owner, System.currentTimeMillis() + ttlMillis, key, "续约") > 0;
+    }
+
+    @Override
+    public void release(String key, String owner) {
+        String sql = "DELETE FROM " + table + " WHERE job = ? AND slice = ? AND completed = 0 AND owner = ?";
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, job);
+            statement.setString(2, key);
+            statement.setString(3, owner);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("释放租约发生异常: " + key, e);
+        }
+    }
+
+    @Override
+    public boolean complete(String key, String owner) {
+        long now = System.currentTimeMillis();
+        String sql = "UPDATE " + table + " SET owner = ?, expires_at = ?, completed = 1 WHERE job = ? AND slice = ? "
+                + "AND (completed = 1 OR owner = ?)";
+        if (update(sql, owner, now, key, "完成租约") > 0) {
+            return true;
+        }
+        // 没有租约时直接插入已完成的记录，插入失败说明其他节点领取了
+        String insert = "INSERT INTO " + table + " (owner, expires_at, job, slice, completed) VALUES (?, ?, ?, ?, 1)";
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(insert)) {
+            setLease(statement, owner, now, key);
+            return statement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            if (e.getSQLState() != null && e.getSQLState().startsWith(INTEGRITY_VIOLATION)) {
+                return false;
+            }
+            throw new IllegalStateException("完成租约发生异常: " + key, e);
+        }
+    }
+
+    @Override
+    public Lease getLease(String key) {
+        String sql = "SELECT owner, expires_at, completed FROM " + table + " WHERE job = ? AND slice = ?";
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, job);
+            statement.setString(2, key);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? new Lease(key, rs.getString(1), rs.getLong(2), rs.getInt(3) == 1) : null;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("查询租约发生异常: " + key, e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE job = ?")) {
+            statement.setString(1, job);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("清除租约发生异常", e);
+        }
+    }
+
+    /**
+     * 执行前四个参数为 owner, expires_at, job, slice，第五个参数为 owner 的语句
+     */
+    private int update(String sql, String owner, long expiresAt, String key, String action) {
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            setLease(statement, owner, expiresAt, key);
+            statement.setString(5, owner);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException(action + "发生异常: " + key, e);
+        }
+    }
+
+    private void setLease(PreparedStatement statement, String owner, long expiresAt, String key) throws SQLException {
+        statement.setString(1, owner);
+        statement.setLong(2, expiresAt);
+        statement.setString(3, job);
+        statement.setString(4, key);
+    }
+
+    public String getJob() {
+        return job;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.dataprocessor.lease;
+
+/**
+ * 分片的租约，持有未过期租约的节点负责处理该分片
+ */
+public final class Lease {
+    private final String key;
+    private final String owner;
+    private final long expiresAt;
+    private final boolean completed;
+
+    /**
+     * @param key       租约的键，即序列化后的分片
+     * @param owner     持有租约的节点
+     * @param expiresAt 过期时间，毫秒时间戳
+     * @param completed 分片是否已处理完成
+     */
+    public Lease(String key, String owner, long expiresAt, boolean completed) {
+        this.key = key;
+        this.owner = owner;
+        this.expiresAt = expiresAt;
+        this.completed = completed;
+    }
+
+    /**
+     * @param now 当前时间，毫秒时间戳
+     * @return 是否已过期，已完成的租约不会过期
+     */
+    public boolean isExpired(long now) {
+        return !completed && expiresAt <= now;
+    }
+
+    /**
+     * @param owner 节点
+     * @param now   当前时间，毫秒时间戳
+     * @return 给定的节点是否可以领取该分片，即分片没有完成而且租约由该节点持有或者已过期
+     */
+    public boolean isClaimableBy(String owner, long now) {
+        return !completed && (this.owner.equals(owner) || expiresAt <= now);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return "Lease{" +
+                "key='" + key + '\'' +
+                ", owner='" + owner + '\'' +
+                ", expiresAt=" + expiresAt +
+                ", completed=" + completed +
+                '}';
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.dataprocessor.lease;
+
+/**
+ * 租约存储，多个节点通过共享的租约存储协调由谁处理哪个分片
+ * <p>
+ * 实现必须保证领取、续约和完成是原子的：同一时刻一个分片最多只有一个节点持有未过期的租约，
+ * 已完成的分片不能再被领取。过期时间使用各节点的本地时钟，节点之间的时钟偏差需要远小于租约时长
+ */
+public interface LeaseStore {
+    /**
+     * 领取租约，没有租约、租约已过期或者租约本来就由该节点持有时领取成功
+     *
+     * @param key       租约的键
+     * @param owner     领取的节点
+     * @param ttlMillis 租约时长，毫秒
+     * @return 是否领取成功，分片已完成或者租约由其他节点持有时返回false
+     */
+    boolean tryAcquire(String key, String owner, long ttlMillis);
+
+    /**
+     * 续约，只有租约仍由该节点持有时才能成功
+     *
+     * @param key       租约的键
+     * @param owner     持有租约的节点
+     * @param ttlMillis 从现在开始的租约时长，毫秒
+     * @return 是否续约成功，租约已过期并被其他节点领取时返回false
+     */
+    boolean renew(String key, String owner, long ttlMillis);
+
+    /**
+     * 释放租约，使其他节点可以立即领取，如分片处理失败时
+     *
+     * @param key   租约的键
+     * @param owner 持有租约的节点
+     */
+    void release(String key, String owner);
+
+    /**
+     * 标记分片已完成，之后任何节点都不能再领取
+     *
+     * @param key   租约的键
+     * @param owner 持有租约的节点
+     * @return 是否标记成功，租约已被其他节点领取时返回false
+     */
+    boolean complete(String key, String owner);
+
+    /**
+     * @param key 租约的键
+     * @return 租约，没有则返回null
+     */
+    Lease getLease(String key);
+
+    /**
+     * 清除全部租约，重新开始整个任务之前由一个节点调用
+     */
+    void clear();
+}
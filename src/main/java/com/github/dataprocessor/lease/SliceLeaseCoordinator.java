@@ -0,0 +1,222 @@
+package com.github.dataprocessor.lease;
+
+import com.github.dataprocessor.slice.Slice;
+import com.github.dataprocessor.slice.SliceParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多节点分片协调器，多个节点处理同一个任务时，通过共享的 {@link LeaseStore} 领取分片
+ * <p>
+ * 每个节点都遍历全部分片，只处理领取到租约的分片，处理成功后标记完成，失败则释放租约。
+ * 持有的租约由后台线程定期续约，节点崩溃后其租约过期，其他节点在遍历完分片之后会等待并重新领取这些分片。
+ * <p>
+ * 租约丢失（如长时间停顿导致续约不及时）时分片可能被两个节点同时处理，因此批次任务需要是幂等的，与失败重试的要求相同。
+ * 各节点的 SliceRecorder 只记录本节点的处理情况，全局的完成情况以租约存储为准，重新开始整个任务之前需要调用 {@link #clear()}
+ *
+ * @param <S> 分片类型
+ */
+public class SliceLeaseCoordinator<S> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SliceLeaseCoordinator.class);
+    public static final long DEFAULT_TTL_MILLIS = 30_000;
+    private final LeaseStore store;
+    private final SliceParser<S> sliceParser;
+    private final String owner;
+    private final long ttlMillis;
+    /**
+     * 本节点持有的租约，key 为序列化后的分片
+     */
+    private final Map<String, Slice<S>> heldLeases = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService heartbeat;
+
+    /**
+     * 使用默认的节点标识和租约时长
+     *
+     * @param store       共享的租约存储
+     * @param sliceParser 分片解析器，用于生成租约的键
+     */
+    public SliceLeaseCoordinator(LeaseStore store, SliceParser<S> sliceParser) {
+        this(store, sliceParser, defaultOwner(), DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param store       共享的租约存储
+     * @param sliceParser 分片解析器，用于生成租约的键
+     * @param owner       节点标识，各节点必须不同
+     * @param ttlMillis   租约时长，节点崩溃后其他节点最多等待这么长时间才能重新领取，每隔三分之一的时长续约一次
+     */
+    public SliceLeaseCoordinator(LeaseStore store, SliceParser<S> sliceParser, String owner, long ttlMillis) {
+        if (store == null || sliceParser == null || owner == null || owner.isEmpty()) {
+            throw new IllegalArgumentException("租约存储、分片解析器和节点标识不能为空");
+        }
+        if (ttlMillis < 3) {
+            throw new IllegalArgumentException("租约时长不能小于3毫秒");
+        }
+        this.store = store;
+        this.sliceParser = sliceParser;
+        this.owner = owner;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 领取分片，领取成功后开始定期续约
+     *
+     * @param slice 分片
+     * @return 是否领取成功，分片已完成或者由其他节点处理时返回false
+     */
+    public boolean tryClaim(Slice<S> slice) {
+        String key = sliceParser.serialize(slice);
+        if (!store.tryAcquire(key, owner, ttlMillis)) {
+            return false;
+        }
+        heldLeases.put(key, slice);
+        startHeartbeat();
+        return true;
+    }
+
+    /**
+     * 分片处理结束，成功则标记完成，失败则释放租约使其他节点可以领取
+     *
+     * @param slice     分片
+     * @param succeeded 是否处理成功
+     */
+    public void finish(Slice<S> slice, boolean succeeded) {
+        String key = sliceParser.serialize(slice);
+        heldLeases.remove(key);
+        if (!succeeded) {
+            store.release(key, owner);
+        } else if (!store.complete(key, owner)) {
+            logger.warn("分片 {} 处理完成时租约已被其他节点领取，该分片可能被重复处理", slice);
+        }
+    }
+
+    /**
+     * 等待由其他节点持有的分片变为可领取：已完成的分片从集合中移除，可领取（租约已过期或已释放）的分片也从集合中移除并返回
+     * <p>
+     * 只要还有没有完成的分片而且暂时都不可领取，就每隔三分之一的租约时长检查一次
+     *
+     * @param waiting 其他节点持有的分片
+     * @return 可以领取的分片，为空时表示集合中的分片已全部完成
+     * @throws InterruptedException 等待时被中断
+     */
+    public List<Slice<S>> awaitClaimable(Collection<Slice<S>> waiting) throws InterruptedException {
+        List<Slice<S>> claimable = new ArrayList<>();
+        while (!waiting.isEmpty()) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Slice<S>> it = waiting.iterator(); it.hasNext(); ) {
+                Slice<S> slice = it.next();
+                Lease lease = store.getLease(sliceParser.serialize(slice));
+                if (lease != null && lease.isCompleted()) {
+                    it.remove();
+                } else if (lease == null || lease.isClaimableBy(owner, now)) {
+                    it.remove();
+                    claimable.add(slice);
+                }
+            }
+            if (!claimable.isEmpty()) {
+                logger.info("有 {} 个其他节点的分片租约已过期或已释放，重新领取", claimable.size());
+                return claimable;
+            }
+            if (!waiting.isEmpty()) {
+                logger.debug("等待其他节点处理 {} 个分片", waiting.size());
+                TimeUnit.MILLISECONDS.sleep(ttlMillis / 3);
+            }
+        }
+        return claimable;
+    }
+
+    /**
+     * @param slice 分片
+     * @return 分片是否已由某个节点处理完成
+     */
+    public boolean isCompleted(Slice<S> slice) {
+        Lease lease = store.getLease(sliceParser.serialize(slice));
+        return lease != null && lease.isCompleted();
+    }
+
+    /**
+     * 清除全部租约，重新开始整个任务之前由一个节点调用
+     */
+    public void clear() {
+        store.clear();
+    }
+
+    /**
+     * 停止续约并释放本节点持有的租约
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = heartbeat;
+            heartbeat = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (String key : heldLeases.keySet()) {
+            store.release(key, owner);
+        }
+        heldLeases.clear();
+    }
+
+    private void startHeartbeat() {
+        if (heartbeat != null) {
+            return;
+        }
+        synchronized (this) {
+            if (heartbeat == null) {
+                heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "slice-lease-heartbeat");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                long interval = ttlMillis / 3;
+                heartbeat.scheduleWithFixedDelay(this::renewAll, interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void renewAll() {
+        for (Map.Entry<String, Slice<S>> entry : heldLeases.entrySet()) {
+            try {
+                if (!store.renew(entry.getKey(), owner, ttlMillis) && heldLeases.remove(entry.getKey()) != null) {
+                    logger.error("分片 {} 的租约已丢失，可能已被其他节点领取", entry.getValue());
+                }
+            } catch (Exception e) {
+                // 续约失败时保留租约，下次继续续约，在过期之前恢复即可
+                logger.error("分片续约发生异常: " + entry.getValue(), e);
+            }
+        }
+    }
+
+    private static String defaultOwner() {
+        // 形如 pid@hostname，再加上随机数区分同一个进程中的多个协调器
+        return ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public LeaseStore getStore() {
+        return store;
+    }
+}
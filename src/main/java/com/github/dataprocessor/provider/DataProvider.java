@@ -1,7 +1,9 @@
 package com.github.dataprocessor.provider;
 
 import com.github.dataprocessor.slice.Slice;
+import com.github.dataprocessor.slice.SliceSource;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -22,6 +24,17 @@ public interface DataProvider<T, S> {
      */
     Set<Slice<S>> generateSlices();
 
+    /**
+     * 获取分片来源，处理器边遍历边启动分片，不需要事先生成全部分片
+     * <p>
+     * 默认使用 {@link #generateSlices()} 生成的分片集合
+     *
+     * @return 分片来源
+     */
+    default SliceSource<S> sliceSource() {
+        return SliceSource.of(generateSlices());
+    }
+
     /**
      * 从数据源获取需要被处理的资源
      *
@@ -39,4 +52,29 @@ public interface DataProvider<T, S> {
      * @return 实际处理逻辑的任务，注意：Callable调用后抛出异常，则认为本批次处理失败
      */
     Callable<?> createTask(List<T> resources);
+
+    /**
+     * 将分片拆分成多个子分片，子分片合起来必须与原分片完全相同，用于动态拆分正在处理的分片
+     * <p>
+     * 默认不拆分
+     *
+     * @param slice 需要拆分的分片
+     * @return 子分片，不能拆分时返回空列表
+     */
+    default List<Slice<S>> split(Slice<S> slice) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 获取分片中在给定的页之后还没有读取的部分，用于动态拆分正在处理的分片
+     * <p>
+     * 只有按分片的键的顺序分页读取（如按id升序的键集分页）时才能确定，默认返回null，即不拆分正在处理的分片
+     *
+     * @param slice    正在处理的分片
+     * @param lastPage 已经读取的最后一页
+     * @return 还没有读取的部分，无法确定时返回null
+     */
+    default Slice<S> remainingSlice(Slice<S> slice, Page<T> lastPage) {
+        return null;
+    }
 }
@@ -1,13 +1,18 @@
 package com.github.dataprocessor.provider;
 
+import com.github.dataprocessor.slice.RangeSliceSource;
 import com.github.dataprocessor.slice.Slice;
+import com.github.dataprocessor.slice.SliceSource;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -128,6 +133,43 @@ public abstract class DateSliceDataProvider<T> implements DataProvider<T, Date>
         return end + spanMs;
     }
 
+    /**
+     * 按固定间隔切分时使用 {@link RangeSliceSource}，遍历时才生成分片，记录器也只需要保存范围和间隔
+     * <p>
+     * 如果子类重写了 generateSlices 或 nextEnd，则使用 generateSlices 生成的分片集合
+     *
+     * @return 分片来源
+     */
+    @Override
+    public SliceSource<Date> sliceSource() {
+        if (ProviderUtil.overrides(getClass(), DateSliceDataProvider.class, "generateSlices")
+                || ProviderUtil.overrides(getClass(), DateSliceDataProvider.class, "nextEnd", long.class, long.class)) {
+            return SliceSource.of(generateSlices());
+        }
+        if (min == null || max == null || !min.before(max) || spanMs <= 0) {
+            // 参数不合法时由 generateSlices 抛出异常
+            return SliceSource.of(generateSlices());
+        }
+        return RangeSliceSource.ofDate(min, max, spanMs);
+    }
+
+    /**
+     * 从中间把分片拆分成两个子分片，分片的长度小于2毫秒时不拆分
+     *
+     * @param slice 需要拆分的分片
+     * @return 两个子分片，不能拆分时返回空列表
+     */
+    @Override
+    public List<Slice<Date>> split(Slice<Date> slice) {
+        long begin = slice.getBegin().getTime();
+        long end = slice.getEnd().getTime();
+        if (end - begin < 2) {
+            return Collections.emptyList();
+        }
+        Date mid = new Date(begin + (end - begin) / 2);
+        return Arrays.asList(new Slice<>(slice.getBegin(), mid), new Slice<>(mid, slice.getEnd()));
+    }
+
     /**
      * 日期类转为LocalDateTime，有些子类可能会需要用到
      *
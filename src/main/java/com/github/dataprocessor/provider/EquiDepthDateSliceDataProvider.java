@@ -0,0 +1,111 @@
+package com.github.dataprocessor.provider;
+
+import com.github.dataprocessor.slice.Slice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 根据时间的分布生成数据量大致相等的时间分片（等深划分），适用于数据集中在某些时间段的情况
+ * <p>
+ * 时间的分布通过 {@link #sampleKeys(Date, Date)} 获取，直方图的键为时间的毫秒数，
+ * 默认使用构造时或者通过 setter 给定的直方图，也可以重写此方法执行抽样查询。没有分布数据时按固定间隔生成分片
+ *
+ * @param <T> 数据类型
+ */
+public abstract class EquiDepthDateSliceDataProvider<T> extends DateSliceDataProvider<T> {
+    private static final Logger logger = LoggerFactory.getLogger(EquiDepthDateSliceDataProvider.class);
+    private int sliceCount;
+    private KeyHistogram histogram;
+
+    /**
+     * 指定开始时间、结束时间和分片数量，通过重写 {@link #sampleKeys(Date, Date)} 提供时间的分布
+     *
+     * @param min        最小值（开始时间）
+     * @param max        最大值（结束时间）
+     * @param sliceCount 分片数量
+     */
+    protected EquiDepthDateSliceDataProvider(Date min, Date max, int sliceCount) {
+        this(min, max, sliceCount, null, false);
+    }
+
+    /**
+     * 指定开始时间、结束时间、分片数量、时间的分布和是否有序
+     *
+     * @param min        最小值（开始时间）
+     * @param max        最大值（结束时间）
+     * @param sliceCount 分片数量
+     * @param histogram  时间的分布，键为毫秒数，可以为null
+     * @param ordered    是否支持按顺序遍历分片
+     */
+    protected EquiDepthDateSliceDataProvider(Date min, Date max, int sliceCount, KeyHistogram histogram, boolean ordered) {
+        super(min, max, fallbackSpan(min, max, sliceCount), ordered);
+        this.sliceCount = sliceCount;
+        this.histogram = histogram;
+    }
+
+    /**
+     * 获取 [min, max) 范围内时间的分布
+     * <p>
+     * 默认返回给定的直方图，子类可以重写为执行抽样查询，再使用 {@link KeyHistogram#fromSamples(long[])} 生成
+     *
+     * @param min 最小值（开始时间）
+     * @param max 最大值（结束时间）
+     * @return 时间的分布，键为毫秒数，没有则返回null
+     * @throws Exception 抽样失败时抛出，此时按固定间隔生成分片
+     */
+    protected KeyHistogram sampleKeys(Date min, Date max) throws Exception {
+        return histogram;
+    }
+
+    @Override
+    public Set<Slice<Date>> generateSlices() {
+        KeyHistogram keys;
+        try {
+            keys = sampleKeys(getMin(), getMax());
+        } catch (Exception e) {
+            logger.warn("获取时间的分布失败，按固定间隔生成分片", e);
+            keys = null;
+        }
+        if (keys == null || keys.getTotal() <= 0) {
+            logger.info("没有时间的分布数据，按固定间隔生成分片");
+            return super.generateSlices();
+        }
+        long[] bounds = keys.equiDepthBoundaries(getMin().getTime(), getMax().getTime(), sliceCount);
+        Set<Slice<Date>> slices = isOrdered() ? new LinkedHashSet<>() : new HashSet<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            slices.add(new Slice<>(new Date(bounds[i]), new Date(bounds[i + 1])));
+        }
+        logger.info("根据 {} 生成了 {} 个等深时间分片", keys, slices.size());
+        return slices;
+    }
+
+    private static long fallbackSpan(Date min, Date max, int sliceCount) {
+        if (sliceCount <= 0) {
+            throw new IllegalArgumentException("分片数量必须大于0, sliceCount:" + sliceCount);
+        }
+        long range = max.getTime() - min.getTime();
+        return Math.max(1, (range + sliceCount - 1) / sliceCount);
+    }
+
+    public int getSliceCount() {
+        return sliceCount;
+    }
+
+    public void setSliceCount(int sliceCount) {
+        setSpanMs(fallbackSpan(getMin(), getMax(), sliceCount));
+        this.sliceCount = sliceCount;
+    }
+
+    public KeyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(KeyHistogram histogram) {
+        this.histogram = histogram;
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.dataprocessor.provider;
+
+import com.github.dataprocessor.slice.Slice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 根据键的分布生成数据量大致相等的分片（等深划分），适用于按 id 分片而数据分布不均匀的情况
+ * <p>
+ * 键的分布通过 {@link #sampleKeys(long, long)} 获取，默认使用构造时或者通过 setter 给定的直方图（如上次处理保存下来的），
+ * 也可以重写此方法执行抽样查询。没有分布数据时按固定间隔生成分片
+ *
+ * @param <T> 数据类型
+ */
+public abstract class EquiDepthLongSliceDataProvider<T> extends LongSliceDataProvider<T> {
+    private static final Logger logger = LoggerFactory.getLogger(EquiDepthLongSliceDataProvider.class);
+    private int sliceCount;
+    private KeyHistogram histogram;
+
+    /**
+     * 指定最大值、最小值和分片数量，通过重写 {@link #sampleKeys(long, long)} 提供键的分布
+     *
+     * @param min        最小值
+     * @param max        最大值
+     * @param sliceCount 分片数量
+     */
+    protected EquiDepthLongSliceDataProvider(long min, long max, int sliceCount) {
+        this(min, max, sliceCount, null, false);
+    }
+
+    /**
+     * 指定最大值、最小值、分片数量、键的分布和是否有序
+     *
+     * @param min        最小值
+     * @param max        最大值
+     * @param sliceCount 分片数量
+     * @param histogram  键的分布，可以为null
+     * @param ordered    是否使用有序集
+     */
+    protected EquiDepthLongSliceDataProvider(long min, long max, int sliceCount, KeyHistogram histogram, boolean ordered) {
+        super(min, max, fallbackSpan(min, max, sliceCount), ordered);
+        this.sliceCount = sliceCount;
+        this.histogram = histogram;
+    }
+
+    /**
+     * 获取 [min, max) 范围内键的分布
+     * <p>
+     * 默认返回给定的直方图，子类可以重写为执行抽样查询，如随机抽取一部分 id 后使用 {@link KeyHistogram#fromSamples(long[])}
+     *
+     * @param min 最小值
+     * @param max 最大值
+     * @return 键的分布，没有则返回null
+     * @throws Exception 抽样失败时抛出，此时按固定间隔生成分片
+     */
+    protected KeyHistogram sampleKeys(long min, long max) throws Exception {
+        return histogram;
+    }
+
+    @Override
+    public Set<Slice<Long>> generateSlices() {
+        KeyHistogram keys;
+        try {
+            keys = sampleKeys(getMin(), getMax());
+        } catch (Exception e) {
+            logger.warn("获取键的分布失败，按固定间隔生成分片", e);
+            keys = null;
+        }
+        if (keys == null || keys.getTotal() <= 0) {
+            logger.info("没有键的分布数据，按固定间隔生成分片");
+            return super.generateSlices();
+        }
+        long[] bounds = keys.equiDepthBoundaries(getMin(), getMax(), sliceCount);
+        Set<Slice<Long>> slices = isOrdered() ? new LinkedHashSet<>() : new HashSet<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            slices.add(new Slice<>(bounds[i], bounds[i + 1]));
+        }
+        logger.info("根据 {} 生成了 {} 个等深分片", keys, slices.size());
+        return slices;
+    }
+
+    private static long fallbackSpan(long min, long max, int sliceCount) {
+        if (sliceCount <= 0) {
+            throw new IllegalArgumentException("分片数量必须大于0, sliceCount:" + sliceCount);
+        }
+        return Math.max(1, (max - min + sliceCount - 1) / sliceCount);
+    }
+
+    public int getSliceCount() {
+        return sliceCount;
+    }
+
+    public void setSliceCount(int sliceCount) {
+        setSpan(fallbackSpan(getMin(), getMax(), sliceCount));
+        this.sliceCount = sliceCount;
+    }
+
+    public KeyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(KeyHistogram histogram) {
+        this.histogram = histogram;
+    }
+}
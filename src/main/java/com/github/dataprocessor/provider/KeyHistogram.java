@@ -0,0 +1,242 @@
+package com.github.dataprocessor.provider;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.github.dataprocessor.slice.Slice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分片键的分布直方图，用于生成数据量大致相等的分片（等深划分）
+ * <p>
+ * 直方图由若干个 [lower, upper) 的桶组成，每个桶记录其中的数据量，桶内的数据视为均匀分布。
+ * 可以通过抽样得到的键生成，也可以通过上次处理时各分片的实际数据量生成
+ */
+public class KeyHistogram {
+    private final long[] lowers;
+    private final long[] uppers;
+    private final long[] counts;
+
+    private KeyHistogram(List<Bucket> buckets) {
+        buckets.sort(Comparator.comparingLong(b -> b.lower));
+        int size = buckets.size();
+        lowers = new long[size];
+        uppers = new long[size];
+        counts = new long[size];
+        for (int i = 0; i < size; i++) {
+            Bucket bucket = buckets.get(i);
+            lowers[i] = bucket.lower;
+            uppers[i] = bucket.upper;
+            counts[i] = bucket.count;
+        }
+    }
+
+    /**
+     * 根据抽样得到的键生成直方图，每个抽样的键计数1
+     *
+     * @param samples 抽样得到的键，不要求有序
+     * @return 直方图
+     */
+    public static KeyHistogram fromSamples(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        List<Bucket> buckets = new ArrayList<>();
+        for (long key : sorted) {
+            Bucket last = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+            if (last != null && last.lower == key) {
+                last.count++;
+            } else {
+                buckets.add(new Bucket(key, key + 1, 1));
+            }
+        }
+        return new KeyHistogram(buckets);
+    }
+
+    /**
+     * 根据上次处理时各分片的实际数据量生成直方图，如 {@code DataProcessorTemplate.getSliceCosts()}
+     *
+     * @param sliceCosts 分片与其数据量
+     * @return 直方图
+     */
+    public static KeyHistogram fromSliceCosts(Map<Slice<Long>, Long> sliceCosts) {
+        List<Bucket> buckets = new ArrayList<>(sliceCosts.size());
+        for (Map.Entry<Slice<Long>, Long> entry : sliceCosts.entrySet()) {
+            addBucket(buckets, entry.getKey().getBegin(), entry.getKey().getEnd(), entry.getValue());
+        }
+        return new KeyHistogram(buckets);
+    }
+
+    /**
+     * 根据上次处理时各时间分片的实际数据量生成直方图，键为时间的毫秒数
+     *
+     * @param sliceCosts 分片与其数据量
+     * @return 直方图
+     */
+    public static KeyHistogram fromDateSliceCosts(Map<Slice<Date>, Long> sliceCosts) {
+        List<Bucket> buckets = new ArrayList<>(sliceCosts.size());
+        for (Map.Entry<Slice<Date>, Long> entry : sliceCosts.entrySet()) {
+            Slice<Date> slice = entry.getKey();
+            addBucket(buckets, slice.getBegin().getTime(), slice.getEnd().getTime(), entry.getValue());
+        }
+        return new KeyHistogram(buckets);
+    }
+
+    /**
+     * @return 空的直方图
+     */
+    public static KeyHistogram empty() {
+        return new KeyHistogram(new ArrayList<>());
+    }
+
+    private static void addBucket(List<Bucket> buckets, long lower, long upper, Long count) {
+        if (upper > lower && count != null) {
+            buckets.add(new Bucket(lower, upper, count));
+        }
+    }
+
+    /**
+     * 反序列化 {@link #serialize()} 的结果，以便使用上次保存的直方图
+     *
+     * @param json 序列化后的字符串
+     * @return 直方图
+     */
+    public static KeyHistogram parse(String json) {
+        JSONObject obj = JSON.parseObject(json);
+        long[] lowers = obj.getObject("lowers", long[].class);
+        long[] uppers = obj.getObject("uppers", long[].class);
+        long[] counts = obj.getObject("counts", long[].class);
+        if (lowers == null || uppers == null || counts == null
+                || lowers.length != uppers.length || lowers.length != counts.length) {
+            throw new IllegalArgumentException("直方图格式不正确: " + json);
+        }
+        List<Bucket> buckets = new ArrayList<>(lowers.length);
+        for (int i = 0; i < lowers.length; i++) {
+            buckets.add(new Bucket(lowers[i], uppers[i], counts[i]));
+        }
+        return new KeyHistogram(buckets);
+    }
+
+    /**
+     * @return 序列化后的字符串
+     */
+    public String serialize() {
+        JSONObject obj = new JSONObject();
+        obj.put("lowers", lowers);
+        obj.put("uppers", uppers);
+        obj.put("counts", counts);
+        return obj.toJSONString();
+    }
+
+    /**
+     * @return 直方图中的总数据量
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 计算等深划分的边界，使 [min, max) 被划分成数据量大致相等的区间
+     * <p>
+     * 同一个键的数据不能再拆分，因此数据过于集中时得到的区间数可能少于 parts
+     *
+     * @param min   最小值
+     * @param max   最大值
+     * @param parts 区间数
+     * @return 严格递增的边界，第一个为min，最后一个为max；直方图在范围内没有数据时只返回min和max
+     */
+    public long[] equiDepthBoundaries(long min, long max, int parts) {
+        if (min >= max) {
+            throw new IllegalArgumentException("最小值必须小于最大值, min:" + min + ", max:" + max);
+        }
+        if (parts <= 0) {
+            throw new IllegalArgumentException("区间数必须大于0, parts:" + parts);
+        }
+        // 只统计 [min, max) 范围内的部分
+        double total = 0;
+        double[] clipped = new double[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            clipped[i] = clip(i, min, max);
+            total += clipped[i];
+        }
+        List<Long> bounds = new ArrayList<>(parts + 1);
+        bounds.add(min);
+        if (total > 0) {
+            double target = total / parts;
+            double acc = 0;
+            int next = 1;
+            for (int i = 0; i < counts.length && next < parts; i++) {
+                double count = clipped[i];
+                if (count <= 0) {
+                    continue;
+                }
+                long lower = Math.max(lowers[i], min);
+                long upper = Math.min(uppers[i], max);
+                while (next < parts && acc + count >= target * next) {
+                    // 桶内均匀分布，按比例插值
+                    double fraction = (target * next - acc) / count;
+                    long pos = lower + (long) ((upper - lower) * fraction);
+                    if (pos > bounds.get(bounds.size() - 1) && pos < max) {
+                        bounds.add(pos);
+                    }
+                    next++;
+                }
+                acc += count;
+            }
+        }
+        bounds.add(max);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 桶在 [min, max) 范围内的数据量
+     */
+    private double clip(int i, long min, long max) {
+        long lower = Math.max(lowers[i], min);
+        long upper = Math.min(uppers[i], max);
+        if (upper <= lower || counts[i] <= 0) {
+            return 0;
+        }
+        return counts[i] * ((double) (upper - lower) / (uppers[i] - lowers[i]));
+    }
+
+    /**
+     * @return 桶的数量
+     */
+    public int size() {
+        return counts.length;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyHistogram{buckets=" + counts.length + ", total=" + getTotal() + "}";
+    }
+
+    private static class Bucket {
+        private final long lower;
+        private final long upper;
+        private long count;
+
+        private Bucket(long lower, long upper, long count) {
+            if (upper <= lower) {
+                throw new IllegalArgumentException("桶的上界必须大于下界, lower:" + lower + ", upper:" + upper);
+            }
+            this.lower = lower;
+            this.upper = upper;
+            this.count = count;
+        }
+    }
+
+}
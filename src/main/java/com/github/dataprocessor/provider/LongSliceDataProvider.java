@@ -1,9 +1,14 @@
 package com.github.dataprocessor.provider;
 
+import com.github.dataprocessor.slice.RangeSliceSource;
 import com.github.dataprocessor.slice.Slice;
+import com.github.dataprocessor.slice.SliceSource;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -73,6 +78,44 @@ public abstract class LongSliceDataProvider<T> implements DataProvider<T, Long>
         return slices;
     }
 
+    /**
+     * 按固定间隔切分时使用 {@link RangeSliceSource}，遍历时才生成分片，记录器也只需要保存范围和间隔
+     * <p>
+     * 如果子类重写了 generateSlices 或 nextEnd，则使用 generateSlices 生成的分片集合
+     *
+     * @return 分片来源
+     */
+    @Override
+    public SliceSource<Long> sliceSource() {
+        if (ProviderUtil.overrides(getClass(), LongSliceDataProvider.class, "generateSlices")
+                || ProviderUtil.overrides(getClass(), LongSliceDataProvider.class, "nextEnd", long.class, long.class)) {
+            return SliceSource.of(generateSlices());
+        }
+        if (min >= max) {
+            // 通过 setter 设置的范围为空时与 generateSlices 的结果保持一致
+            return SliceSource.of(generateSlices());
+        }
+        return RangeSliceSource.ofLong(min, max, span);
+    }
+
+    /**
+     * 从中间把分片拆分成两个子分片，分片的长度小于2时不拆分
+     *
+     * @param slice 需要拆分的分片
+     * @return 两个子分片，不能拆分时返回空列表
+     */
+    @Override
+    public List<Slice<Long>> split(Slice<Long> slice) {
+        long begin = slice.getBegin();
+        long end = slice.getEnd();
+        if (end - begin < 2) {
+            return Collections.emptyList();
+        }
+        // 防止溢出
+        long mid = begin + (end - begin) / 2;
+        return Arrays.asList(new Slice<>(begin, mid), new Slice<>(mid, end));
+    }
+
     public long getMin() {
         return min;
     }
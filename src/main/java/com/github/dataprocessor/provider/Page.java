@@ -1,5 +1,8 @@
 package com.github.dataprocessor.provider;
 
+import com.github.dataprocessor.slice.PageCursor;
+
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -14,6 +17,13 @@ public class Page<T> {
     private int pageSize;
     private boolean hasNext;
     private List<T> data;
+    /**
+     * 翻页所需的续传标记，如键集分页中本页最后一条数据的键，非必填
+     * <p>
+     * 开启断点续传检查点或者只重新处理失败批次时，框架只保存分页信息不保存数据，
+     * 如果获取下一页需要依赖本页的数据，则需要把所需的值设置到这个属性中
+     */
+    private String continuationToken;
 
     /**
      * @param hasNext 是否还有下一页，这个属性是必须的，如果true则会继续，否则认为分片任务结束
@@ -48,6 +58,28 @@ public class Page<T> {
         this.data = data;
     }
 
+    /**
+     * 根据分页游标还原出不带数据的分页，用于重新获取游标的下一页
+     * <p>
+     * 注意：还原出的分页 data 为空列表，如果 getResources 需要依赖上一页的数据来获取下一页，请使用 continuationToken
+     *
+     * @param cursor 分页游标
+     * @param <T>    数据类型
+     * @return 不带数据的分页
+     */
+    public static <T> Page<T> fromCursor(PageCursor cursor) {
+        Page<T> page = new Page<>(true, Collections.emptyList(), cursor.getPageSize(), cursor.getCurrentPage());
+        page.setContinuationToken(cursor.getContinuationToken());
+        return page;
+    }
+
+    /**
+     * @return 当前页的分页游标，不包含数据
+     */
+    public PageCursor toCursor() {
+        return new PageCursor(currentPage, pageSize, continuationToken);
+    }
+
     public int getCurrentPage() {
         return currentPage;
     }
@@ -72,6 +104,14 @@ public class Page<T> {
         this.hasNext = hasNext;
     }
 
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
     public List<T> getData() {
         return data;
     }
@@ -0,0 +1,31 @@
+package com.github.dataprocessor.provider;
+
+/**
+ * 数据提供者的工具类
+ */
+public final class ProviderUtil {
+    private ProviderUtil() {
+        throw new UnsupportedOperationException("this util cannot be instantiated");
+    }
+
+    /**
+     * 判断子类是否重写了基类的方法
+     *
+     * @param clazz          子类
+     * @param base           基类
+     * @param name           方法名
+     * @param parameterTypes 方法的参数类型
+     * @return 从子类到基类（不含）之间是否有类声明了这个方法
+     */
+    public static boolean overrides(Class<?> clazz, Class<?> base, String name, Class<?>... parameterTypes) {
+        for (Class<?> c = clazz; c != null && c != base; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // 继续检查父类
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.dataprocessor.provider;
+
+/**
+ * 数据的权重估算器，用于估算一条数据占用的内存字节数，配合在途内存预算使用
+ * <p>
+ * 每条数据在提交批次之前都会调用一次，实现需要足够快，能大致反映数据的大小即可，不需要精确
+ *
+ * @param <T> 被处理的对象类
+ */
+@FunctionalInterface
+public interface Weigher<T> {
+
+    /**
+     * 估算一条数据占用的字节数
+     *
+     * @param record 数据
+     * @return 估算的字节数，不能为负数
+     */
+    long weigh(T record);
+}
@@ -0,0 +1,74 @@
+package com.github.dataprocessor.slice;
+
+import java.util.Objects;
+
+/**
+ * 批次范围，定位分片中的一个批次：使用上一页的游标重新获取批次所在的页，再取该页中 [fromIndex, toIndex) 的数据
+ */
+public class BatchRange {
+    /**
+     * 批次所在页的上一页，为null表示批次在分片的第一页
+     */
+    private PageCursor lastPage;
+    /**
+     * 批次在所在页中的开始下标（包含）
+     */
+    private int fromIndex;
+    /**
+     * 批次在所在页中的结束下标（不包含）
+     */
+    private int toIndex;
+
+    public BatchRange() {
+    }
+
+    public BatchRange(PageCursor lastPage, int fromIndex, int toIndex) {
+        this.lastPage = lastPage;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+    }
+
+    public PageCursor getLastPage() {
+        return lastPage;
+    }
+
+    public void setLastPage(PageCursor lastPage) {
+        this.lastPage = lastPage;
+    }
+
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    public void setFromIndex(int fromIndex) {
+        this.fromIndex = fromIndex;
+    }
+
+    public int getToIndex() {
+        return toIndex;
+    }
+
+    public void setToIndex(int toIndex) {
+        this.toIndex = toIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BatchRange that = (BatchRange) o;
+        return fromIndex == that.fromIndex &&
+                toIndex == that.toIndex &&
+                Objects.equals(lastPage, that.lastPage);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lastPage, fromIndex, toIndex);
+    }
+
+    @Override
+    public String toString() {
+        return lastPage + "[" + fromIndex + "-" + toIndex + ")";
+    }
+}
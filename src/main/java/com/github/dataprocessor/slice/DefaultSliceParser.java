@@ -5,16 +5,22 @@ import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 
 import java.lang.reflect.Type;
-import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * 分片解析器的默认实现，使用JSON序列化
+ * 分片解析器的默认实现
  * <p>
- * 因为JSON序列化无法保存实际的类型，因此在序列化的时候，前面把分片的类型先记录下来
+ * Long、Date、Instant 和 String 类型的分片使用紧凑的文本格式：~类型标识:开始值,结束值，集合则为 ~类型标识:开始值,结束值;开始值,结束值...
+ * 类型标识对应 {@link SliceCodec}，解析时直接按下标读取，不需要加载类型和解析JSON。可以通过 {@link #registerCodec(SliceCodec)} 注册其他类型的编解码器
+ * <p>
+ * 其他类型使用JSON序列化，因为JSON序列化无法保存实际的类型，因此在序列化的时候，前面把分片的类型先记录下来
  * <p>
  * 虽然SerializerFeature.WriteClassName也能做到，但是需要添加一些额外的配置，而且如果是非常规类型，如LocalDateTime则不支持
+ * <p>
+ * 两种格式都可以解析，因此可以读取旧版本保存的记录
  *
  * @param <S> 分片的类型
  * @author huangxuyang
@@ -22,37 +28,87 @@ import java.util.Set;
  */
 public class DefaultSliceParser<S> implements SliceParser<S> {
     private static final String TYPE_SEPARATOR = "__";
+    private static final char COMPACT_PREFIX = '~';
+    private static final char TYPE_END = ':';
+    private static final char BOUND_SEPARATOR = ',';
+    private static final char SLICE_SEPARATOR = ';';
+    /**
+     * 类名到类型的缓存，避免每一行都调用 Class.forName
+     */
+    private static final Map<String, Class<?>> CLASS_CACHE = new ConcurrentHashMap<>();
+    private final SliceCodec<?>[] codecsById = new SliceCodec<?>[128];
+    private final Map<Class<?>, SliceCodec<?>> codecsByType = new ConcurrentHashMap<>();
+
+    public DefaultSliceParser() {
+        registerCodec(SliceCodecs.LONG);
+        registerCodec(SliceCodecs.DATE);
+        registerCodec(SliceCodecs.INSTANT);
+        registerCodec(SliceCodecs.STRING);
+    }
+
+    /**
+     * 注册分片边界值的编解码器，已有相同类型或类型标识的编解码器时替换，需要在使用之前注册
+     *
+     * @param codec 编解码器
+     */
+    public void registerCodec(SliceCodec<?> codec) {
+        char id = codec.getTypeId();
+        if (id >= codecsById.length || !Character.isLetterOrDigit(id)) {
+            throw new IllegalArgumentException("类型标识必须是ASCII字母或数字: " + id);
+        }
+        SliceCodec<?> old = codecsById[id];
+        if (old != null) {
+            codecsByType.remove(old.getType());
+        }
+        SliceCodec<?> oldOfType = codecsByType.put(codec.getType(), codec);
+        if (oldOfType != null) {
+            codecsById[oldOfType.getTypeId()] = null;
+        }
+        codecsById[id] = codec;
+    }
 
     @Override
     public Slice<S> parse(String sliceString) {
-        String[] strings = splitString(sliceString);
-        try {
-            Class<?> clazz = Class.forName(strings[0]);
-            // 防止内容中出现与 TYPE_SEPARATOR 相同的内容
-            return getSlice(String.join(TYPE_SEPARATOR, Arrays.asList(strings).subList(1, strings.length)), clazz);
-        } catch (ClassNotFoundException e) {
-            throw new IllegalStateException("反序列化失败，类型错误" + strings[0], e);
+        if (isCompact(sliceString)) {
+            SliceCodec<S> codec = getCodec(sliceString);
+            return decodeSlice(codec, sliceString, 3, sliceString.length());
         }
+        int index = typeIndex(sliceString);
+        Class<?> clazz = loadClass(sliceString.substring(0, index));
+        return getSlice(JSON.parseObject(sliceString.substring(index + TYPE_SEPARATOR.length())), clazz);
     }
 
     @Override
     public Set<Slice<S>> parseSlices(String sliceString) {
-        String[] strings = splitString(sliceString);
-        try {
-            Set<Slice<S>> slices = new HashSet<>();
-            Class<?> clazz = Class.forName(strings[0]);
-            JSONArray arr = JSON.parseArray(String.join(TYPE_SEPARATOR, Arrays.asList(strings).subList(1, strings.length)));
-            for (Object o : arr) {
-                slices.add(getSlice(JSON.toJSONString(o), clazz));
+        Set<Slice<S>> slices = new HashSet<>();
+        if (isCompact(sliceString)) {
+            SliceCodec<S> codec = getCodec(sliceString);
+            int begin = 3;
+            int length = sliceString.length();
+            while (begin < length) {
+                int end = indexOf(sliceString, SLICE_SEPARATOR, begin, length);
+                slices.add(decodeSlice(codec, sliceString, begin, end));
+                begin = end + 1;
             }
             return slices;
-        } catch (ClassNotFoundException e) {
-            throw new IllegalStateException("反序列化失败，类型错误" + strings[0], e);
         }
+        int index = typeIndex(sliceString);
+        Class<?> clazz = loadClass(sliceString.substring(0, index));
+        JSONArray arr = JSON.parseArray(sliceString.substring(index + TYPE_SEPARATOR.length()));
+        for (int i = 0; i < arr.size(); i++) {
+            slices.add(getSlice(arr.getJSONObject(i), clazz));
+        }
+        return slices;
     }
 
     @Override
     public String serialize(Slice<S> slice) {
+        SliceCodec<S> codec = findCodec(slice);
+        if (codec != null) {
+            StringBuilder sb = compactHeader(codec);
+            encodeSlice(codec, slice, sb);
+            return sb.toString();
+        }
         String typeName = getType(slice);
         return typeName + TYPE_SEPARATOR + JSON.toJSONStringWithDateFormat(slice, "yyyy-MM-dd'T'HH:mm:ss.SSS");
     }
@@ -63,20 +119,116 @@ public class DefaultSliceParser<S> implements SliceParser<S> {
         if (slices == null || slices.size() <= 0) {
             throw new IllegalArgumentException("slices切片集不能为空");
         }
-        String typeName = getType(slices.iterator().next());
+        Slice<S> first = slices.iterator().next();
+        SliceCodec<S> codec = findCodec(first);
+        if (codec != null && isAllOfType(slices, codec.getType())) {
+            StringBuilder sb = compactHeader(codec);
+            boolean firstSlice = true;
+            for (Slice<S> slice : slices) {
+                if (!firstSlice) {
+                    sb.append(SLICE_SEPARATOR);
+                }
+                firstSlice = false;
+                encodeSlice(codec, slice, sb);
+            }
+            return sb.toString();
+        }
+        String typeName = getType(first);
         return typeName + TYPE_SEPARATOR + JSON.toJSONStringWithDateFormat(slices, "yyyy-MM-dd'T'HH:mm:ss.SSS");
     }
 
-    private String[] splitString(String sliceString) {
-        String[] strings = sliceString.split(TYPE_SEPARATOR);
-        if (strings.length < 2) {
+    private static boolean isCompact(String sliceString) {
+        return sliceString.length() >= 3 && sliceString.charAt(0) == COMPACT_PREFIX && sliceString.charAt(2) == TYPE_END;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SliceCodec<S> getCodec(String sliceString) {
+        char id = sliceString.charAt(1);
+        SliceCodec<?> codec = id < codecsById.length ? codecsById[id] : null;
+        if (codec == null) {
+            throw new IllegalStateException("反序列化失败，没有类型标识为 " + id + " 的编解码器: " + sliceString);
+        }
+        return (SliceCodec<S>) codec;
+    }
+
+    /**
+     * @return 开始值和结束值的类型相同且有对应的编解码器时返回编解码器，否则返回null
+     */
+    @SuppressWarnings("unchecked")
+    private SliceCodec<S> findCodec(Slice<S> slice) {
+        if (slice.getBegin() == null || slice.getEnd() == null || slice.getBegin().getClass() != slice.getEnd().getClass()) {
+            return null;
+        }
+        return (SliceCodec<S>) codecsByType.get(slice.getBegin().getClass());
+    }
+
+    private static <S> boolean isAllOfType(Set<Slice<S>> slices, Class<?> type) {
+        for (Slice<S> slice : slices) {
+            if (slice == null || slice.getBegin() == null || slice.getEnd() == null
+                    || slice.getBegin().getClass() != type || slice.getEnd().getClass() != type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static StringBuilder compactHeader(SliceCodec<?> codec) {
+        return new StringBuilder(32).append(COMPACT_PREFIX).append(codec.getTypeId()).append(TYPE_END);
+    }
+
+    private static <S> void encodeSlice(SliceCodec<S> codec, Slice<S> slice, StringBuilder sb) {
+        codec.encode(slice.getBegin(), sb);
+        sb.append(BOUND_SEPARATOR);
+        codec.encode(slice.getEnd(), sb);
+    }
+
+    private static <S> Slice<S> decodeSlice(SliceCodec<S> codec, String str, int begin, int end) {
+        int separator = indexOf(str, BOUND_SEPARATOR, begin, end);
+        if (separator >= end) {
+            throw new IllegalStateException("反序列化失败, 缺少结束值:" + str.substring(begin, end));
+        }
+        return new Slice<>(codec.decode(str, begin, separator), codec.decode(str, separator + 1, end));
+    }
+
+    /**
+     * 查找没有被转义的分隔符，找不到则返回 end
+     */
+    private static int indexOf(String str, char separator, int begin, int end) {
+        for (int i = begin; i < end; i++) {
+            char c = str.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == separator) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int typeIndex(String sliceString) {
+        // 类名中不会出现 TYPE_SEPARATOR，因此第一个分隔符就是类名的结束位置
+        int index = sliceString.indexOf(TYPE_SEPARATOR);
+        if (index <= 0) {
             throw new IllegalStateException("反序列化失败, 字符串中需要包含切片类型:" + sliceString);
         }
-        return strings;
+        return index;
+    }
+
+    private static Class<?> loadClass(String className) {
+        Class<?> clazz = CLASS_CACHE.get(className);
+        if (clazz != null) {
+            return clazz;
+        }
+        try {
+            clazz = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("反序列化失败，类型错误" + className, e);
+        }
+        CLASS_CACHE.put(className, clazz);
+        return clazz;
     }
 
-    private Slice<S> getSlice(String sliceString, Type clazz) {
-        JSONObject json = JSON.parseObject(sliceString);
+    private Slice<S> getSlice(JSONObject json, Type clazz) {
         S begin = json.getObject("begin", clazz);
         S end = json.getObject("end", clazz);
         return new Slice<>(begin, end);
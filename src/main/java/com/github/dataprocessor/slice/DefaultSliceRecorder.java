@@ -1,15 +1,29 @@
 package com.github.dataprocessor.slice;
 
+import com.alibaba.fastjson.JSON;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * 默认的分片记录器，使用文件存储
+ * <p>
+ * 已完成和失败的分片追加到增量日志中，增量日志的记录数超过 {@link #setCompactThreshold(int) 阈值} 后，
+ * 在后台线程中合并到快照文件：快照只保留每个分片当前的状态，已经完成的分片不再保留失败记录。
+ * 合并时只在重命名增量日志的瞬间持有写入锁，因此不会阻塞保存分片状态；读取时依次读取快照、正在合并的日志和增量日志
  *
  * @param <S> 分片类型
  * @author huangxuyang
@@ -20,10 +34,45 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
     private final String fileAllSlices;
     private final String fileCompletedSlice;
     private final String fileErrorSlice;
+    private final String fileFailedBatches;
+    private final String fileCheckpoints;
+    private final String fileSplitSlices;
+    private final String fileSliceSource;
+    private final String fileSnapshot;
+    /**
+     * 快照中已完成和失败的分片的行前缀
+     */
+    private static final String COMPLETED_PREFIX = "C";
+    private static final String ERROR_PREFIX = "E";
+    /**
+     * 正在合并到快照中的增量日志的后缀
+     */
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    /**
+     * 默认的合并阈值，即自上次合并之后追加的记录数
+     */
+    public static final int DEFAULT_COMPACT_THRESHOLD = 10_000;
+    /**
+     * 读取和合并快照时持有的锁，保证读取到的快照和正在合并的日志是一致的
+     */
+    private final Object compactionLock = new Object();
+    private final AtomicLong appendedSinceCompaction = new AtomicLong();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private volatile int compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+    private volatile ExecutorService compactionExecutor;
+    /**
+     * 分片来源记录中，排除的分片和额外的分片的行前缀
+     */
+    private static final String EXCLUDED_PREFIX = "-";
+    private static final String EXTRA_PREFIX = "+";
+    /**
+     * 失败批次和检查点记录中，记录内容与分片之间的分隔符，JSON序列化后的内容中不会出现制表符
+     */
+    private static final char SLICE_SEPARATOR = '\t';
     private SliceParser<S> sliceParser;
     private final String baseDir;
-    private final int MAX_HISTORY = 10;
-    private final String HISTORY_FILE_PREFIX = "hist_";
+    private static final int MAX_HISTORY = 10;
+    private static final String HISTORY_FILE_PREFIX = "hist_";
 
     public DefaultSliceRecorder(SliceParser<S> sliceParser) {
         this(sliceParser, "");
@@ -48,6 +97,27 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
         this.fileAllSlices = infoDir + "allSlices.txt";
         this.fileCompletedSlice = infoDir + "completedSlices.txt";
         this.fileErrorSlice = infoDir + "errorSlice.txt";
+        this.fileFailedBatches = infoDir + "failedBatches.txt";
+        this.fileCheckpoints = infoDir + "checkpoints.txt";
+        this.fileSplitSlices = infoDir + "splitSlices.txt";
+        this.fileSliceSource = infoDir + "sliceSource.txt";
+        this.fileSnapshot = infoDir + "snapshot.txt";
+    }
+
+    /**
+     * 设置合并阈值，自上次合并之后追加的已完成和失败的分片数超过阈值时在后台合并到快照
+     *
+     * @param compactThreshold 合并阈值，0则不自动合并
+     */
+    public void setCompactThreshold(int compactThreshold) {
+        if (compactThreshold < 0) {
+            throw new IllegalArgumentException("合并阈值不能小于0");
+        }
+        this.compactThreshold = compactThreshold;
+    }
+
+    public int getCompactThreshold() {
+        return compactThreshold;
     }
 
 
@@ -56,6 +126,7 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
         synchronized (fileErrorSlice) {
             append(slice, fileErrorSlice);
         }
+        compactIfNecessary();
     }
 
     @Override
@@ -63,6 +134,49 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
         synchronized (fileCompletedSlice) {
             append(slice, fileCompletedSlice);
         }
+        compactIfNecessary();
+    }
+
+    @Override
+    public void saveFailedBatches(Slice<S> slice, List<BatchRange> failedBatches) {
+        synchronized (fileFailedBatches) {
+            appendWithSlice(slice, JSON.toJSONString(failedBatches), fileFailedBatches);
+        }
+    }
+
+    @Override
+    public Map<Slice<S>, List<BatchRange>> getFailedBatches() {
+        synchronized (fileFailedBatches) {
+            return readBySlice(fileFailedBatches, json -> JSON.parseArray(json, BatchRange.class));
+        }
+    }
+
+    @Override
+    public void saveCheckpoint(Slice<S> slice, PageCursor cursor) {
+        synchronized (fileCheckpoints) {
+            appendWithSlice(slice, JSON.toJSONString(cursor), fileCheckpoints);
+        }
+    }
+
+    @Override
+    public Map<Slice<S>, PageCursor> getCheckpoints() {
+        synchronized (fileCheckpoints) {
+            return readBySlice(fileCheckpoints, json -> JSON.parseObject(json, PageCursor.class));
+        }
+    }
+
+    @Override
+    public void saveSplitSlice(Slice<S> slice, List<Slice<S>> splitSlices) {
+        synchronized (fileSplitSlices) {
+            appendWithSlice(slice, sliceParser.serialize(new LinkedHashSet<>(splitSlices)), fileSplitSlices);
+        }
+    }
+
+    @Override
+    public Map<Slice<S>, List<Slice<S>>> getSplitSlices() {
+        synchronized (fileSplitSlices) {
+            return readBySlice(fileSplitSlices, line -> new ArrayList<>(sliceParser.parseSlices(line)));
+        }
     }
 
     @Override
@@ -77,16 +191,100 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
         }
     }
 
+    /**
+     * 按固定间隔切分的分片来源只保存范围和间隔，以及排除的区间和额外的分片，每行一个；其他的分片来源保存全部分片
+     */
+    @Override
+    public void saveSliceSource(SliceSource<S> source) {
+        if (!(source instanceof RangeSliceSource)) {
+            SliceRecorder.super.saveSliceSource(source);
+            return;
+        }
+        synchronized (fileAllSlices) {
+            ensureDirExists(fileSliceSource);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(fileSliceSource)))) {
+                writeSliceSource((RangeSliceSource<S>) source, sliceParser, writer);
+            } catch (IOException e) {
+                throw new RuntimeException("保存分片来源记录发生异常", e);
+            }
+        }
+    }
+
+    @Override
+    public SliceSource<S> getSliceSource() {
+        synchronized (fileAllSlices) {
+            File file = new File(fileSliceSource);
+            if (!file.exists()) {
+                return SliceSource.of(getAllSlices());
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                return readSliceSource(reader, sliceParser);
+            } catch (IOException e) {
+                throw new RuntimeException("读取分片来源记录发生异常", e);
+            }
+        }
+    }
+
+    /**
+     * 写入分片来源：第一行为范围和间隔的描述，之后每行一个排除的区间或额外的分片
+     */
+    static <S> void writeSliceSource(RangeSliceSource<S> source, SliceParser<S> sliceParser, Writer writer) throws IOException {
+        writer.write(source.toDescriptor());
+        writer.write(System.lineSeparator());
+        for (Slice<S> slice : source.getExcluded()) {
+            writer.append(EXCLUDED_PREFIX).append(sliceParser.serialize(slice)).append(System.lineSeparator());
+        }
+        for (Slice<S> slice : source.getExtra()) {
+            writer.append(EXTRA_PREFIX).append(sliceParser.serialize(slice)).append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * 读取 {@link #writeSliceSource(RangeSliceSource, SliceParser, Writer)} 写入的分片来源
+     */
+    static <S> SliceSource<S> readSliceSource(BufferedReader reader, SliceParser<S> sliceParser) throws IOException {
+        String descriptor = reader.readLine();
+        if (descriptor == null || descriptor.isEmpty()) {
+            return SliceSource.of(Collections.emptySet());
+        }
+        List<Slice<S>> excluded = new ArrayList<>();
+        List<Slice<S>> extra = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(EXCLUDED_PREFIX)) {
+                excluded.add(sliceParser.parse(line.substring(EXCLUDED_PREFIX.length())));
+            } else if (line.startsWith(EXTRA_PREFIX)) {
+                extra.add(sliceParser.parse(line.substring(EXTRA_PREFIX.length())));
+            }
+        }
+        RangeSliceSource<S> range = RangeSliceSource.fromDescriptor(descriptor);
+        return range.withExceptions(excluded, extra);
+    }
+
     @Override
     public Set<Slice<S>> getErrorSlices() {
-        synchronized (fileErrorSlice) {
-            return readSlices(fileErrorSlice);
+        Set<Slice<S>> slices = new LinkedHashSet<>();
+        synchronized (compactionLock) {
+            readSnapshot(ERROR_PREFIX, slices);
+            readSlices(fileErrorSlice + COMPACTING_SUFFIX, slices);
+            synchronized (fileErrorSlice) {
+                readSlices(fileErrorSlice, slices);
+            }
         }
+        return slices;
     }
 
     @Override
     public Set<Slice<S>> getAllSlices() {
         synchronized (fileAllSlices) {
+            if (new File(fileSliceSource).exists()) {
+                // 只保存了范围和间隔，遍历生成全部分片
+                Set<Slice<S>> slices = new LinkedHashSet<>();
+                for (Slice<S> slice : getSliceSource()) {
+                    slices.add(slice);
+                }
+                return slices;
+            }
             File file = new File(fileAllSlices);
             if (!file.exists()) {
                 return Collections.emptySet();
@@ -106,8 +304,125 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
 
     @Override
     public Set<Slice<S>> getCompletedSlices() {
-        synchronized (fileCompletedSlice) {
-            return readSlices(fileCompletedSlice);
+        Set<Slice<S>> slices = new HashSet<>();
+        synchronized (compactionLock) {
+            readSnapshot(COMPLETED_PREFIX, slices);
+            readSlices(fileCompletedSlice + COMPACTING_SUFFIX, slices);
+            synchronized (fileCompletedSlice) {
+                readSlices(fileCompletedSlice, slices);
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * 把增量日志合并到快照中，快照中只保留已完成的分片和还没有完成的失败分片
+     * <p>
+     * 只在重命名增量日志时短暂持有写入锁，合并期间可以继续保存分片状态
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            appendedSinceCompaction.set(0);
+            String compactingCompleted = fileCompletedSlice + COMPACTING_SUFFIX;
+            String compactingError = fileErrorSlice + COMPACTING_SUFFIX;
+            // 上次合并被中断时留下的日志直接合并，本次不再重命名
+            synchronized (fileCompletedSlice) {
+                rotate(fileCompletedSlice, compactingCompleted);
+            }
+            synchronized (fileErrorSlice) {
+                rotate(fileErrorSlice, compactingError);
+            }
+            if (!new File(compactingCompleted).exists() && !new File(compactingError).exists()) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            Set<Slice<S>> completed = new LinkedHashSet<>();
+            Set<Slice<S>> errors = new LinkedHashSet<>();
+            readSnapshot(COMPLETED_PREFIX, completed);
+            readSnapshot(ERROR_PREFIX, errors);
+            readSlices(compactingCompleted, completed);
+            readSlices(compactingError, errors);
+            errors.removeAll(completed);
+            File tmp = new File(fileSnapshot + ".tmp");
+            ensureDirExists(fileSnapshot);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmp))) {
+                for (Slice<S> slice : completed) {
+                    writer.append(COMPLETED_PREFIX).append(sliceParser.serialize(slice)).append(System.lineSeparator());
+                }
+                for (Slice<S> slice : errors) {
+                    writer.append(ERROR_PREFIX).append(sliceParser.serialize(slice)).append(System.lineSeparator());
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("保存分片快照发生异常", e);
+            }
+            try {
+                Files.move(tmp.toPath(), new File(fileSnapshot).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException("保存分片快照发生异常", e);
+            }
+            // 快照替换成功之后才能删除，中途中断时重复读取到的记录不影响结果
+            new File(compactingCompleted).delete();
+            new File(compactingError).delete();
+            logger.info("分片记录合并完成，已完成: {}, 失败: {}, 耗时: {}", completed.size(), errors.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private void compactIfNecessary() {
+        int threshold = compactThreshold;
+        if (threshold <= 0 || appendedSinceCompaction.incrementAndGet() < threshold
+                || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        getCompactionExecutor().execute(() -> {
+            try {
+                compact();
+            } catch (Exception e) {
+                logger.error("分片记录合并发生异常", e);
+            } finally {
+                compactionScheduled.set(false);
+            }
+        });
+    }
+
+    private ExecutorService getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            synchronized (compactionLock) {
+                if (compactionExecutor == null) {
+                    // 空闲时不保留线程
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "slice-recorder-compaction");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    compactionExecutor = executor;
+                }
+            }
+        }
+        return compactionExecutor;
+    }
+
+    private static void rotate(String fileName, String compactingName) {
+        File file = new File(fileName);
+        File compacting = new File(compactingName);
+        if (file.exists() && !compacting.exists() && !file.renameTo(compacting)) {
+            throw new IllegalStateException("重命名增量日志失败: " + file.getAbsolutePath());
+        }
+    }
+
+    private void readSnapshot(String prefix, Set<Slice<S>> slices) {
+        File file = new File(fileSnapshot);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    slices.add(sliceParser.parse(line.substring(prefix.length())));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("读取分片快照发生异常", e);
         }
     }
 
@@ -115,29 +430,60 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
     public void clearRecord() {
         logger.info("清理分片历史记录");
         synchronized (DefaultSliceParser.class) {
-            String historyFolder = baseDir + "processHistory";
-            String folder = historyFolder + File.separator + HISTORY_FILE_PREFIX + new SimpleDateFormat("yyyy-MM-dd-HH_mm_ss").format(new Date());
-            File folderFile = new File(folder);
-            folderFile.mkdirs();
-            // 只要有一个成功就保留目标文件夹
-            boolean rs = moveTo(fileAllSlices, folder);
-            rs = moveTo(fileCompletedSlice, folder) || rs;
-            rs = moveTo(fileErrorSlice, folder) || rs;
-            // 一个转移成功都没有，则把文件夹也删掉
-            if (!rs) {
-                logger.info("没有分片历史记录需要清理");
-                folderFile.deleteOnExit();
+            // 等待正在进行的合并结束
+            synchronized (compactionLock) {
+                clearRecordFiles();
             }
-            clearHistory(historyFolder);
         }
     }
 
+    private void clearRecordFiles() {
+        String historyFolder = historyFolder(baseDir);
+        String folder = newHistoryFolder(historyFolder);
+        File folderFile = new File(folder);
+        folderFile.mkdirs();
+        // 只要有一个成功就保留目标文件夹
+        boolean rs = moveTo(fileAllSlices, folder);
+        rs = moveTo(fileCompletedSlice, folder) || rs;
+        rs = moveTo(fileErrorSlice, folder) || rs;
+        rs = moveTo(fileFailedBatches, folder) || rs;
+        rs = moveTo(fileCheckpoints, folder) || rs;
+        rs = moveTo(fileSplitSlices, folder) || rs;
+        rs = moveTo(fileSliceSource, folder) || rs;
+        rs = moveTo(fileSnapshot, folder) || rs;
+        rs = moveTo(fileCompletedSlice + COMPACTING_SUFFIX, folder) || rs;
+        rs = moveTo(fileErrorSlice + COMPACTING_SUFFIX, folder) || rs;
+        appendedSinceCompaction.set(0);
+        // 一个转移成功都没有，则把文件夹也删掉
+        if (!rs) {
+            logger.info("没有分片历史记录需要清理");
+            folderFile.deleteOnExit();
+        }
+        clearHistory(historyFolder);
+    }
+
+    /**
+     * @param baseDir 记录文件存放的位置
+     * @return 历史记录保存的路径
+     */
+    static String historyFolder(String baseDir) {
+        return baseDir + "processHistory";
+    }
+
+    /**
+     * @param historyFolder 历史保存的路径
+     * @return 本次清理使用的历史记录目录
+     */
+    static String newHistoryFolder(String historyFolder) {
+        return historyFolder + File.separator + HISTORY_FILE_PREFIX + new SimpleDateFormat("yyyy-MM-dd-HH_mm_ss").format(new Date());
+    }
+
     /**
      * 清理多余的历史 只保存 {@link #MAX_HISTORY} 个历史记录
      *
      * @param historyFolder 历史保存的路径
      */
-    private void clearHistory(String historyFolder) {
+    static void clearHistory(String historyFolder) {
         File historyFiles = new File(historyFolder);
         if (!historyFiles.exists() || !historyFiles.isDirectory()) {
             return;
@@ -159,7 +505,7 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
         }
     }
 
-    private void deleteDir(File path) {
+    private static void deleteDir(File path) {
         if (!path.exists()) {
             return;
         }
@@ -183,23 +529,20 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
         return false;
     }
 
-    private Set<Slice<S>> readSlices(String fileName) {
+    private void readSlices(String fileName, Set<Slice<S>> slices) {
         File file = new File(fileName);
         if (!file.exists()) {
-            return Collections.emptySet();
+            return;
         }
         try (BufferedReader reader = new BufferedReader(new FileReader(new File(fileName)))) {
-            Set<Slice<S>> slices = new HashSet<>();
             // 按行读取，生行一个分片
-            String line = reader.readLine();
-            while (line != null) {
+            String line;
+            while ((line = reader.readLine()) != null) {
                 if (!line.isEmpty()) {
                     Slice<S> slice = sliceParser.parse(line);
                     slices.add(slice);
-                    line = reader.readLine();
                 }
             }
-            return slices;
         } catch (IOException e) {
             throw new RuntimeException("保存所有分片记录发生异常");
         }
@@ -212,6 +555,44 @@ public class DefaultSliceRecorder<S> implements SliceRecorder<S> {
         }
     }
 
+    /**
+     * 追加一行 "内容 + 分隔符 + 分片" 的记录
+     */
+    private void appendWithSlice(Slice<S> slice, String content, String fileName) {
+        ensureDirExists(fileName);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(fileName), true))) {
+            writer.append(content).append(SLICE_SEPARATOR)
+                    .append(sliceParser.serialize(slice)).append(System.lineSeparator());
+        } catch (IOException e) {
+            throw new RuntimeException("保存记录发生异常: " + fileName, e);
+        }
+    }
+
+    /**
+     * 读取 "内容 + 分隔符 + 分片" 的记录，同一个分片以最后一次记录的为准
+     */
+    private <V> Map<Slice<S>, V> readBySlice(String fileName, Function<String, V> contentParser) {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            return Collections.emptyMap();
+        }
+        Map<Slice<S>, V> records = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int index = line.indexOf(SLICE_SEPARATOR);
+                if (index < 0) {
+                    continue;
+                }
+                Slice<S> slice = sliceParser.parse(line.substring(index + 1));
+                records.put(slice, contentParser.apply(line.substring(0, index)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("读取记录发生异常: " + fileName, e);
+        }
+        return records;
+    }
+
     private void append(Slice<S> slice, String fileName) {
         ensureDirExists(fileName);
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(fileName), true))) {
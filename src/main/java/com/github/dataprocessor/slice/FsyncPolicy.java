@@ -0,0 +1,90 @@
+package com.github.dataprocessor.slice;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 预写日志的刷盘策略，决定追加记录后什么时候调用 fsync 把数据写入磁盘
+ * <p>
+ * 记录追加后已经写入操作系统，进程崩溃不会丢失；没有刷盘的记录只会在操作系统崩溃或断电时丢失
+ */
+public final class FsyncPolicy {
+    private final int everyRecords;
+    private final long everyNanos;
+
+    private FsyncPolicy(int everyRecords, long everyNanos) {
+        this.everyRecords = everyRecords;
+        this.everyNanos = everyNanos;
+    }
+
+    /**
+     * 每条记录都刷盘后才返回，同时追加的记录合并为一次刷盘
+     *
+     * @return 刷盘策略
+     */
+    public static FsyncPolicy always() {
+        return new FsyncPolicy(1, 0);
+    }
+
+    /**
+     * 每追加 n 条记录刷盘一次
+     *
+     * @param n 记录数
+     * @return 刷盘策略
+     */
+    public static FsyncPolicy everyRecords(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("记录数必须大于0");
+        }
+        return new FsyncPolicy(n, 0);
+    }
+
+    /**
+     * 距离上次刷盘超过给定的毫秒数后，下一次追加记录时刷盘
+     *
+     * @param millis 毫秒数
+     * @return 刷盘策略
+     */
+    public static FsyncPolicy everyMillis(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("毫秒数必须大于0");
+        }
+        return new FsyncPolicy(0, TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * 不主动刷盘，由操作系统决定，只在切换日志段和清理记录时刷盘
+     *
+     * @return 刷盘策略
+     */
+    public static FsyncPolicy never() {
+        return new FsyncPolicy(0, 0);
+    }
+
+    /**
+     * @return 是否每条记录都需要等待刷盘
+     */
+    boolean isAlways() {
+        return everyRecords == 1;
+    }
+
+    /**
+     * @param unsyncedRecords    没有刷盘的记录数
+     * @param sinceLastSyncNanos 距离上次刷盘的纳秒数
+     * @return 是否需要刷盘
+     */
+    boolean shouldSync(long unsyncedRecords, long sinceLastSyncNanos) {
+        if (unsyncedRecords <= 0) {
+            return false;
+        }
+        return (everyRecords > 0 && unsyncedRecords >= everyRecords)
+                || (everyNanos > 0 && sinceLastSyncNanos >= everyNanos);
+    }
+
+    @Override
+    public String toString() {
+        if (isAlways()) {
+            return "FsyncPolicy{always}";
+        }
+        return "FsyncPolicy{everyRecords=" + everyRecords + ", everyMillis=" + TimeUnit.NANOSECONDS.toMillis(everyNanos) + "}";
+    }
+}
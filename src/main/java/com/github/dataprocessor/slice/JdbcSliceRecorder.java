@@ -0,0 +1,651 @@
+package com.github.dataprocessor.slice;
+
+import com.alibaba.fastjson.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 使用 JDBC 保存分片记录的记录器，多个进程可以共享同一个数据库中的处理进度
+ * <p>
+ * 分片状态保存在分片状态表中，每个分片一行，(job, slice) 为主键，(job, status) 上有索引；
+ * 失败批次、检查点、拆分记录和全部分片保存在记录表中，同一个分片以最后一次保存的为准
+ * <p>
+ * 保存分片状态和记录时先放入内存缓冲，由后台线程每隔一段时间（或者缓冲的记录数达到批量大小时）批量写入数据库。
+ * 进程崩溃时最多丢失一个刷新间隔内的记录，这些分片在断点续传时会被重新处理。读取之前会先把缓冲写入数据库
+ * <p>
+ * 失败的分片只查询状态为失败的行，已完成的分片不会被改为失败，因此不需要再在内存中排除已完成的分片；
+ * 进度统计 {@link #countByStatus()} 直接在数据库中计算，不需要读取全部分片
+ * <p>
+ * 表需要事先创建，或者调用 {@link #createTables()} 创建；清理记录时直接删除本任务的记录
+ *
+ * @param <S> 分片类型
+ */
+public class JdbcSliceRecorder<S> implements SliceRecorder<S>, Flushable, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcSliceRecorder.class);
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_]*");
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    private static final String SOURCE = "SOURCE";
+    private static final String FAILED_BATCHES = "FAILED_BATCHES";
+    private static final String CHECKPOINT = "CHECKPOINT";
+    private static final String SPLIT = "SPLIT";
+    private static final String RANGE_SOURCE = "range";
+    private static final String LIST_SOURCE = "list";
+    private final DataSource dataSource;
+    private final SliceParser<S> sliceParser;
+    private final String job;
+    private final String statusTable;
+    private final String recordTable;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+    /**
+     * 还没有写入数据库的分片状态和记录，key 为序列化后的分片
+     */
+    private final Map<String, SliceStatus> pendingStatuses = new ConcurrentHashMap<>();
+    private final Map<RecordKey, String> pendingRecords = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile ScheduledExecutorService flusher;
+
+    /**
+     * 分片的状态
+     */
+    public enum SliceStatus {
+        /**
+         * 还没有处理完成
+         */
+        PENDING(0),
+        COMPLETED(1),
+        ERROR(2);
+
+        private final int code;
+
+        SliceStatus(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        static SliceStatus of(int code) {
+            for (SliceStatus status : values()) {
+                if (status.code == code) {
+                    return status;
+                }
+            }
+            throw new IllegalArgumentException("未知的分片状态: " + code);
+        }
+    }
+
+    /**
+     * 使用默认的表名前缀 dp_、刷新间隔和批量大小
+     *
+     * @param dataSource  数据源
+     * @param sliceParser 分片解析器
+     * @param job         任务名称，同一个任务的多个进程共享记录
+     */
+    public JdbcSliceRecorder(DataSource dataSource, SliceParser<S> sliceParser, String job) {
+        this(dataSource, sliceParser, job, "dp_", DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param dataSource          数据源
+     * @param sliceParser         分片解析器
+     * @param job                 任务名称，同一个任务的多个进程共享记录
+     * @param tablePrefix         表名前缀，只能包含字母、数字和下划线
+     * @param flushIntervalMillis 缓冲写入数据库的间隔毫秒数
+     * @param batchSize           批量大小，缓冲的记录数达到批量大小时立即写入
+     */
+    public JdbcSliceRecorder(DataSource dataSource, SliceParser<S> sliceParser, String job, String tablePrefix,
+                             long flushIntervalMillis, int batchSize) {
+        if (dataSource == null || sliceParser == null || job == null || job.isEmpty()) {
+            throw new IllegalArgumentException("数据源、分片解析器和任务名称不能为空");
+        }
+        if (tablePrefix == null || !NAME_PATTERN.matcher(tablePrefix).matches()) {
+            throw new IllegalArgumentException("表名前缀只能包含字母、数字和下划线: " + tablePrefix);
+        }
+        if (flushIntervalMillis <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("刷新间隔和批量大小必须大于0");
+        }
+        this.dataSource = dataSource;
+        this.sliceParser = sliceParser;
+        this.job = job;
+        this.statusTable = tablePrefix + "slice_status";
+        this.recordTable = tablePrefix + "slice_record";
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 创建分片状态表和记录表，已存在则跳过，记录内容使用 CLOB 类型
+     */
+    public void createTables() {
+        createTables("CLOB");
+    }
+
+    /**
+     * 创建分片状态表和记录表，已存在则跳过
+     *
+     * @param contentType 记录内容列的类型，不同数据库的大文本类型不同，如 MySQL 的 LONGTEXT、PostgreSQL 的 TEXT
+     */
+    public void createTables(String contentType) {
+        if (contentType == null || !NAME_PATTERN.matcher(contentType).matches() || contentType.isEmpty()) {
+            throw new IllegalArgumentException("记录内容列的类型只能包含字母、数字和下划线: " + contentType);
+        }
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + statusTable + " (job VARCHAR(128) NOT NULL, slice VARCHAR(512) NOT NULL, "
+                    + "status INT NOT NULL, updated_at BIGINT NOT NULL, PRIMARY KEY (job, slice))");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + recordTable + " (job VARCHAR(128) NOT NULL, kind VARCHAR(16) NOT NULL, "
+                    + "slice VARCHAR(512) NOT NULL, content " + contentType + ", PRIMARY KEY (job, kind, slice))");
+            try {
+                statement.execute("CREATE INDEX " + statusTable + "_status ON " + statusTable + " (job, status)");
+            } catch (SQLException e) {
+                // 部分数据库不支持 CREATE INDEX IF NOT EXISTS，索引已存在时忽略
+                logger.debug("创建索引失败，可能已存在: {}", e.getMessage());
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("创建分片记录表发生异常", e);
+        }
+    }
+
+    @Override
+    public void saveErrorSlice(Slice<S> slice) {
+        // 同一个分片已完成的状态优先
+        pendingStatuses.merge(sliceParser.serialize(slice), SliceStatus.ERROR,
+                (old, status) -> old == SliceStatus.COMPLETED ? old : status);
+        afterBuffered();
+    }
+
+    @Override
+    public void saveCompletedSlice(Slice<S> slice) {
+        pendingStatuses.put(sliceParser.serialize(slice), SliceStatus.COMPLETED);
+        afterBuffered();
+    }
+
+    @Override
+    public void saveAllSlices(Set<Slice<S>> slices) {
+        saveSource(LIST_SOURCE + System.lineSeparator() + sliceParser.serialize(slices), slices);
+    }
+
+    /**
+     * 按固定间隔切分的分片来源只保存范围和间隔，以及排除的区间和额外的分片，不为每个分片插入一行
+     */
+    @Override
+    public void saveSliceSource(SliceSource<S> source) {
+        if (!(source instanceof RangeSliceSource)) {
+            SliceRecorder.super.saveSliceSource(source);
+            return;
+        }
+        StringWriter writer = new StringWriter();
+        writer.write(RANGE_SOURCE);
+        writer.write(System.lineSeparator());
+        try {
+            DefaultSliceRecorder.writeSliceSource((RangeSliceSource<S>) source, sliceParser, writer);
+        } catch (IOException e) {
+            throw new RuntimeException("保存分片来源记录发生异常", e);
+        }
+        saveSource(writer.toString(), Collections.emptySet());
+    }
+
+    @Override
+    public SliceSource<S> getSliceSource() {
+        String content = readRecords(SOURCE, Function.identity()).get("");
+        if (content == null) {
+            return SliceSource.of(Collections.emptySet());
+        }
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String type = reader.readLine();
+            if (RANGE_SOURCE.equals(type)) {
+                return DefaultSliceRecorder.readSliceSource(reader, sliceParser);
+            }
+            String line = reader.readLine();
+            return SliceSource.of(line == null ? Collections.emptySet() : sliceParser.parseSlices(line));
+        } catch (IOException e) {
+            throw new RuntimeException("读取分片来源记录发生异常", e);
+        }
+    }
+
+    @Override
+    public Set<Slice<S>> getAllSlices() {
+        Set<Slice<S>> slices = new LinkedHashSet<>();
+        for (Slice<S> slice : getSliceSource()) {
+            slices.add(slice);
+        }
+        return slices;
+    }
+
+    @Override
+    public Set<Slice<S>> getCompletedSlices() {
+        return querySlices(SliceStatus.COMPLETED, new HashSet<>());
+    }
+
+    /**
+     * 已完成的分片不会被改为失败，因此返回的都是还没有完成的失败分片
+     */
+    @Override
+    public Set<Slice<S>> getErrorSlices() {
+        return querySlices(SliceStatus.ERROR, new LinkedHashSet<>());
+    }
+
+    @Override
+    public void saveFailedBatches(Slice<S> slice, List<BatchRange> failedBatches) {
+        saveRecord(FAILED_BATCHES, slice, JSON.toJSONString(failedBatches));
+    }
+
+    @Override
+    public Map<Slice<S>, List<BatchRange>> getFailedBatches() {
+        return parseKeys(readRecords(FAILED_BATCHES, json -> JSON.parseArray(json, BatchRange.class)));
+    }
+
+    @Override
+    public void saveCheckpoint(Slice<S> slice, PageCursor cursor) {
+        saveRecord(CHECKPOINT, slice, JSON.toJSONString(cursor));
+    }
+
+    @Override
+    public Map<Slice<S>, PageCursor> getCheckpoints() {
+        return parseKeys(readRecords(CHECKPOINT, json -> JSON.parseObject(json, PageCursor.class)));
+    }
+
+    @Override
+    public void saveSplitSlice(Slice<S> slice, List<Slice<S>> splitSlices) {
+        saveRecord(SPLIT, slice, sliceParser.serialize(new LinkedHashSet<>(splitSlices)));
+    }
+
+    @Override
+    public Map<Slice<S>, List<Slice<S>>> getSplitSlices() {
+        return parseKeys(readRecords(SPLIT, line -> new ArrayList<>(sliceParser.parseSlices(line))));
+    }
+
+    /**
+     * 删除本任务的全部记录，还没有写入的缓冲也一起丢弃
+     */
+    @Override
+    public void clearRecord() {
+        logger.info("清理任务 {} 的分片记录", job);
+        synchronized (flushLock) {
+            pendingStatuses.clear();
+            pendingRecords.clear();
+            try (Connection connection = dataSource.getConnection()) {
+                inTransaction(connection, () -> {
+                    executeUpdate(connection, "DELETE FROM " + statusTable + " WHERE job = ?", job);
+                    executeUpdate(connection, "DELETE FROM " + recordTable + " WHERE job = ?", job);
+                });
+            } catch (SQLException e) {
+                throw new RuntimeException("清理分片记录发生异常", e);
+            }
+        }
+    }
+
+    /**
+     * 在数据库中统计各状态的分片数，不需要读取分片
+     * <p>
+     * 只保存了范围和间隔的分片来源不会为每个分片插入一行，此时没有处理的分片不会统计在 PENDING 中
+     *
+     * @return 各状态的分片数
+     */
+    public Map<SliceStatus, Long> countByStatus() {
+        flush();
+        Map<SliceStatus, Long> counts = new EnumMap<>(SliceStatus.class);
+        String sql = "SELECT status, COUNT(*) FROM " + statusTable + " WHERE job = ? GROUP BY status";
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, job);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(SliceStatus.of(rs.getInt(1)), rs.getLong(2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("统计分片状态发生异常", e);
+        }
+        return counts;
+    }
+
+    /**
+     * 查询单个分片的状态
+     *
+     * @param slice 分片
+     * @return 分片的状态，没有记录则返回null
+     */
+    public SliceStatus getStatus(Slice<S> slice) {
+        flush();
+        String sql = "SELECT status FROM " + statusTable + " WHERE job = ? AND slice = ?";
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, job);
+            statement.setString(2, sliceParser.serialize(slice));
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? SliceStatus.of(rs.getInt(1)) : null;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("查询分片状态发生异常", e);
+        }
+    }
+
+    /**
+     * 把缓冲的分片状态和记录批量写入数据库，写入失败时放回缓冲等待下次写入
+     */
+    @Override
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, SliceStatus> statuses = drain(pendingStatuses);
+            Map<RecordKey, String> records = drain(pendingRecords);
+            if (statuses.isEmpty() && records.isEmpty()) {
+                return;
+            }
+            try (Connection connection = dataSource.getConnection()) {
+                inTransaction(connection, () -> {
+                    upsertStatuses(connection, statuses);
+                    upsertRecords(connection, records);
+                });
+            } catch (SQLException | RuntimeException e) {
+                // 放回缓冲，期间保存的更新的记录优先
+                statuses.forEach((slice, status) -> pendingStatuses.merge(slice, status,
+                        (newer, old) -> old == SliceStatus.COMPLETED ? old : newer));
+                records.forEach(pendingRecords::putIfAbsent);
+                throw new RuntimeException("保存分片记录到数据库发生异常", e);
+            }
+        }
+    }
+
+    /**
+     * 写入缓冲并停止后台刷新线程，之后再保存记录会重新启动
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor = flusher;
+        if (executor != null) {
+            synchronized (this) {
+                flusher = null;
+            }
+            executor.shutdown();
+        }
+        flush();
+    }
+
+    public String getJob() {
+        return job;
+    }
+
+    private void saveSource(String content, Set<Slice<S>> pendingSlices) {
+        synchronized (flushLock) {
+            Map<String, SliceStatus> statuses = new LinkedHashMap<>();
+            for (Slice<S> slice : pendingSlices) {
+                statuses.put(sliceParser.serialize(slice), SliceStatus.PENDING);
+            }
+            try (Connection connection = dataSource.getConnection()) {
+                inTransaction(connection, () -> {
+                    upsertRecords(connection, Collections.singletonMap(new RecordKey(SOURCE, ""), content));
+                    upsertStatuses(connection, statuses);
+                });
+            } catch (SQLException e) {
+                throw new RuntimeException("保存所有分片记录发生异常", e);
+            }
+        }
+    }
+
+    private void saveRecord(String kind, Slice<S> slice, String content) {
+        pendingRecords.put(new RecordKey(kind, sliceParser.serialize(slice)), content);
+        afterBuffered();
+    }
+
+    /**
+     * 启动后台刷新线程，缓冲的记录数达到批量大小时立即写入
+     */
+    private void afterBuffered() {
+        ScheduledExecutorService executor = flusher;
+        if (executor == null) {
+            synchronized (this) {
+                if (flusher == null) {
+                    flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "jdbc-slice-recorder-" + job);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+                executor = flusher;
+            }
+        }
+        if (pendingStatuses.size() + pendingRecords.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("定时保存分片记录发生异常，稍后重试", e);
+        }
+    }
+
+    private static <K, V> Map<K, V> drain(Map<K, V> pending) {
+        Map<K, V> drained = new LinkedHashMap<>();
+        for (Map.Entry<K, V> entry : pending.entrySet()) {
+            // 只移除取出时的值，取出之后被覆盖的留到下次写入
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                drained.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * 先批量更新，更新不到的再批量插入。已完成的分片不会被改为其他状态
+     */
+    private void upsertStatuses(Connection connection, Map<String, SliceStatus> statuses) throws SQLException {
+        if (statuses.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String update = "UPDATE " + statusTable + " SET status = CASE WHEN status = " + SliceStatus.COMPLETED.code
+                + " THEN status ELSE ? END, updated_at = ? WHERE job = ? AND slice = ?";
+        String insert = "INSERT INTO " + statusTable + " (job, slice, status, updated_at) VALUES (?, ?, ?, ?)";
+        List<Map.Entry<String, SliceStatus>> missing = updateBatches(connection, update, new ArrayList<>(statuses.entrySet()),
+                (statement, entry) -> {
+                    statement.setInt(1, entry.getValue().code);
+                    statement.setLong(2, now);
+                    statement.setString(3, job);
+                    statement.setString(4, entry.getKey());
+                });
+        if (missing.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(insert)) {
+            int n = 0;
+            for (Map.Entry<String, SliceStatus> entry : missing) {
+                statement.setString(1, job);
+                statement.setString(2, entry.getKey());
+                statement.setInt(3, entry.getValue().code);
+                statement.setLong(4, now);
+                statement.addBatch();
+                if (++n % batchSize == 0) {
+                    statement.executeBatch();
+                }
+            }
+            if (n % batchSize != 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+
+    private void upsertRecords(Connection connection, Map<RecordKey, String> records) throws SQLException {
+        if (records.isEmpty()) {
+            return;
+        }
+        String update = "UPDATE " + recordTable + " SET content = ? WHERE job = ? AND kind = ? AND slice = ?";
+        String insert = "INSERT INTO " + recordTable + " (content, job, kind, slice) VALUES (?, ?, ?, ?)";
+        List<Map.Entry<RecordKey, String>> missing = updateBatches(connection, update, new ArrayList<>(records.entrySet()), this::setRecord);
+        if (missing.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(insert)) {
+            for (Map.Entry<RecordKey, String> entry : missing) {
+                setRecord(statement, entry);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * 批量执行更新语句
+     * <p>
+     * 部分驱动（如 Oracle，或者开启了 rewriteBatchedStatements 的 MySQL）批量执行时不返回每一行的更新数，
+     * 而是返回 {@link Statement#SUCCESS_NO_INFO}，这些行改为逐行更新以确定是否存在
+     *
+     * @return 没有更新到的，即需要插入的行
+     */
+    private <E> List<E> updateBatches(Connection connection, String update, List<E> entries, ParameterSetter<E> setter) throws SQLException {
+        List<E> missing = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(update)) {
+            for (int from = 0; from < entries.size(); from += batchSize) {
+                List<E> batch = entries.subList(from, Math.min(entries.size(), from + batchSize));
+                for (E entry : batch) {
+                    setter.set(statement, entry);
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                for (int i = 0; i < batch.size(); i++) {
+                    int count = i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO;
+                    if (count == Statement.SUCCESS_NO_INFO) {
+                        // 更新语句是幂等的，再执行一次不影响结果
+                        setter.set(statement, batch.get(i));
+                        count = statement.executeUpdate();
+                    }
+                    if (count <= 0) {
+                        missing.add(batch.get(i));
+                    }
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * 设置语句参数的方法
+     */
+    @FunctionalInterface
+    private interface ParameterSetter<E> {
+        void set(PreparedStatement statement, E entry) throws SQLException;
+    }
+
+    private void setRecord(PreparedStatement statement, Map.Entry<RecordKey, String> entry) throws SQLException {
+        statement.setString(1, entry.getValue());
+        statement.setString(2, job);
+        statement.setString(3, entry.getKey().kind);
+        statement.setString(4, entry.getKey().slice);
+    }
+
+    private Set<Slice<S>> querySlices(SliceStatus status, Set<Slice<S>> slices) {
+        flush();
+        String sql = "SELECT slice FROM " + statusTable + " WHERE job = ? AND status = ? ORDER BY updated_at";
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, job);
+            statement.setInt(2, status.code);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    slices.add(sliceParser.parse(rs.getString(1)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("查询分片状态发生异常", e);
+        }
+        return slices;
+    }
+
+    /**
+     * @return 序列化后的分片与解析后的记录内容
+     */
+    private <V> Map<String, V> readRecords(String kind, Function<String, V> contentParser) {
+        flush();
+        Map<String, V> records = new HashMap<>();
+        String sql = "SELECT slice, content FROM " + recordTable + " WHERE job = ? AND kind = ?";
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, job);
+            statement.setString(2, kind);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    records.put(rs.getString(1), contentParser.apply(rs.getString(2)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("读取分片记录发生异常", e);
+        }
+        return records;
+    }
+
+    private <V> Map<Slice<S>, V> parseKeys(Map<String, V> records) {
+        Map<Slice<S>, V> result = new HashMap<>(records.size() * 2);
+        records.forEach((slice, value) -> result.put(sliceParser.parse(slice), value));
+        return result;
+    }
+
+    private static void executeUpdate(Connection connection, String sql, String job) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, job);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void inTransaction(Connection connection, SqlAction action) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            action.run();
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlAction {
+        void run() throws SQLException;
+    }
+
+    /**
+     * 记录表的键，不包括任务名称
+     */
+    private static final class RecordKey {
+        private final String kind;
+        private final String slice;
+
+        RecordKey(String kind, String slice) {
+            this.kind = kind;
+            this.slice = slice;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RecordKey that = (RecordKey) o;
+            return kind.equals(that.kind) && slice.equals(that.slice);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind.hashCode() + slice.hashCode();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.dataprocessor.slice;
+
+/**
+ * 使用基本类型的 Long 分片 [begin, end)，比 Slice&lt;Long&gt; 少两个装箱对象，用于大量分片的记录和比较
+ */
+public final class LongRange implements Comparable<LongRange> {
+    private final long begin;
+    private final long end;
+
+    public LongRange(long begin, long end) {
+        if (begin > end) {
+            throw new IllegalArgumentException("开始值不能大于结束值, begin:" + begin + ", end:" + end);
+        }
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * @param slice Long 分片，开始值和结束值都不能为null
+     * @return 对应的范围
+     */
+    public static LongRange of(Slice<Long> slice) {
+        return new LongRange(slice.getBegin(), slice.getEnd());
+    }
+
+    /**
+     * @return 对应的 Long 分片
+     */
+    public Slice<Long> toSlice() {
+        return new Slice<>(begin, end);
+    }
+
+    public long getBegin() {
+        return begin;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long length() {
+        return end - begin;
+    }
+
+    public boolean isEmpty() {
+        return begin == end;
+    }
+
+    /**
+     * @param value 值
+     * @return 值是否在范围内
+     */
+    public boolean contains(long value) {
+        return value >= begin && value < end;
+    }
+
+    @Override
+    public int compareTo(LongRange o) {
+        int c = Long.compare(begin, o.begin);
+        return c != 0 ? c : Long.compare(end, o.end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LongRange range = (LongRange) o;
+        return begin == range.begin && end == range.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(begin) + Long.hashCode(end);
+    }
+
+    @Override
+    public String toString() {
+        return begin + "-" + end;
+    }
+}
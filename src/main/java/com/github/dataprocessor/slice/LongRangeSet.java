@@ -0,0 +1,365 @@
+package com.github.dataprocessor.slice;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 有序的 long 区间集合，相交或相邻的区间会自动合并
+ * <p>
+ * 区间的开始和结束值保存在两个 long 数组中，没有装箱对象；
+ * 按顺序完成的分片会合并成很少的几个区间，因此记录上百万个已完成的分片也只需要很少的内存，
+ * 判断是否覆盖使用二分查找，求差集只需要顺序扫描一次
+ * <p>
+ * 非线程安全
+ */
+public class LongRangeSet implements Iterable<LongRange> {
+    private static final int DEFAULT_CAPACITY = 8;
+    private long[] begins;
+    private long[] ends;
+    private int size;
+
+    public LongRangeSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongRangeSet(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        begins = new long[capacity];
+        ends = new long[capacity];
+    }
+
+    /**
+     * 复制一个区间集合
+     *
+     * @param other 被复制的区间集合
+     */
+    public LongRangeSet(LongRangeSet other) {
+        begins = Arrays.copyOf(other.begins, Math.max(other.size, 1));
+        ends = Arrays.copyOf(other.ends, Math.max(other.size, 1));
+        size = other.size;
+    }
+
+    /**
+     * 由 Long 分片生成区间集合
+     *
+     * @param slices 分片
+     * @param <S>    分片的类型
+     * @return 区间集合，若有分片不是 Long 类型或者开始值、结束值为null，则返回null
+     */
+    public static <S> LongRangeSet tryOf(Collection<Slice<S>> slices) {
+        LongRangeSet set = new LongRangeSet();
+        for (Slice<S> slice : slices) {
+            if (slice == null || !(slice.getBegin() instanceof Long) || !(slice.getEnd() instanceof Long)) {
+                return null;
+            }
+            set.add((Long) slice.getBegin(), (Long) slice.getEnd());
+        }
+        return set;
+    }
+
+    /**
+     * 加入区间 [begin, end)，与已有区间相交或相邻时合并
+     *
+     * @param begin 开始值（包含）
+     * @param end   结束值（不包含）
+     */
+    public void add(long begin, long end) {
+        if (begin >= end) {
+            return;
+        }
+        // 第一个结束值不小于 begin 的区间到最后一个开始值不大于 end 的区间都需要合并
+        int from = firstEndAtLeast(begin);
+        int to = firstBeginAfter(end);
+        if (from < to) {
+            begin = Math.min(begin, begins[from]);
+            end = Math.max(end, ends[to - 1]);
+        }
+        replace(from, to, begin, end);
+    }
+
+    public void add(LongRange range) {
+        add(range.getBegin(), range.getEnd());
+    }
+
+    /**
+     * 加入另一个集合的全部区间
+     *
+     * @param other 区间集合
+     */
+    public void addAll(LongRangeSet other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.begins[i], other.ends[i]);
+        }
+    }
+
+    /**
+     * 移除区间 [begin, end)，与之相交的区间只保留不相交的部分
+     *
+     * @param begin 开始值（包含）
+     * @param end   结束值（不包含）
+     */
+    public void remove(long begin, long end) {
+        if (begin >= end) {
+            return;
+        }
+        int from = firstEndAfter(begin);
+        int to = firstBeginAtLeast(end);
+        if (from >= to) {
+            return;
+        }
+        long leftBegin = begins[from];
+        long rightEnd = ends[to - 1];
+        int count = (leftBegin < begin ? 1 : 0) + (rightEnd > end ? 1 : 0);
+        resize(from, to, count);
+        int i = from;
+        if (leftBegin < begin) {
+            begins[i] = leftBegin;
+            ends[i++] = begin;
+        }
+        if (rightEnd > end) {
+            begins[i] = end;
+            ends[i] = rightEnd;
+        }
+    }
+
+    /**
+     * @param begin 开始值（包含）
+     * @param end   结束值（不包含）
+     * @return [begin, end) 是否完全被集合中的区间覆盖，空区间总是被覆盖
+     */
+    public boolean covers(long begin, long end) {
+        if (begin >= end) {
+            return true;
+        }
+        int i = firstBeginAfter(begin) - 1;
+        return i >= 0 && ends[i] >= end;
+    }
+
+    /**
+     * @param begin 开始值（包含）
+     * @param end   结束值（不包含）
+     * @return [begin, end) 是否与集合中的区间相交
+     */
+    public boolean intersects(long begin, long end) {
+        if (begin >= end) {
+            return false;
+        }
+        int i = firstEndAfter(begin);
+        return i < size && begins[i] < end;
+    }
+
+    /**
+     * @param value 值
+     * @return 值是否在集合中的某个区间内
+     */
+    public boolean contains(long value) {
+        int i = firstBeginAfter(value) - 1;
+        return i >= 0 && ends[i] > value;
+    }
+
+    /**
+     * 求差集，即本集合中不被另一个集合覆盖的部分，两个集合都只需要顺序扫描一次
+     *
+     * @param other 另一个区间集合
+     * @return 新的区间集合
+     */
+    public LongRangeSet difference(LongRangeSet other) {
+        LongRangeSet result = new LongRangeSet(size);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            long begin = begins[i];
+            long end = ends[i];
+            while (j < other.size && other.ends[j] <= begin) {
+                j++;
+            }
+            for (int k = j; begin < end && k < other.size && other.begins[k] < end; k++) {
+                if (other.begins[k] > begin) {
+                    result.append(begin, other.begins[k]);
+                }
+                begin = Math.max(begin, other.ends[k]);
+            }
+            if (begin < end) {
+                result.append(begin, end);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 合并后的区间个数
+     */
+    public int rangeCount() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return 所有区间的长度之和
+     */
+    public long totalLength() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += ends[i] - begins[i];
+        }
+        return total;
+    }
+
+    /**
+     * @param index 区间的下标
+     * @return 第 index 个区间
+     */
+    public LongRange get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return new LongRange(begins[index], ends[index]);
+    }
+
+    @Override
+    public Iterator<LongRange> iterator() {
+        return new Iterator<LongRange>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public LongRange next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LongRangeSet that = (LongRangeSet) o;
+        if (size != that.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (begins[i] != that.begins[i] || ends[i] != that.ends[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = size;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + Long.hashCode(begins[i]);
+            result = 31 * result + Long.hashCode(ends[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(begins[i]).append('-').append(ends[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * 在末尾追加区间，调用方保证区间的开始值不小于最后一个区间的结束值
+     */
+    private void append(long begin, long end) {
+        if (size > 0 && ends[size - 1] >= begin) {
+            ends[size - 1] = Math.max(ends[size - 1], end);
+            return;
+        }
+        replace(size, size, begin, end);
+    }
+
+    /**
+     * 用一个区间替换下标 [from, to) 的区间
+     */
+    private void replace(int from, int to, long begin, long end) {
+        resize(from, to, 1);
+        begins[from] = begin;
+        ends[from] = end;
+    }
+
+    /**
+     * 把下标 [from, to) 的区间调整为 count 个位置，后面的区间相应地移动
+     */
+    private void resize(int from, int to, int count) {
+        int newSize = size - (to - from) + count;
+        if (newSize > begins.length) {
+            int capacity = Math.max(newSize, begins.length * 2);
+            begins = Arrays.copyOf(begins, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        if (to != from + count) {
+            System.arraycopy(begins, to, begins, from + count, size - to);
+            System.arraycopy(ends, to, ends, from + count, size - to);
+        }
+        size = newSize;
+    }
+
+    /**
+     * @return 第一个结束值不小于 value 的区间下标
+     */
+    private int firstEndAtLeast(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 第一个结束值大于 value 的区间下标
+     */
+    private int firstEndAfter(long value) {
+        return value == Long.MAX_VALUE ? size : firstEndAtLeast(value + 1);
+    }
+
+    /**
+     * @return 第一个开始值大于 value 的区间下标
+     */
+    private int firstBeginAfter(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (begins[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 第一个开始值不小于 value 的区间下标
+     */
+    private int firstBeginAtLeast(long value) {
+        return value == Long.MIN_VALUE ? 0 : firstBeginAfter(value - 1);
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.dataprocessor.slice;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 映射到文件的定长位图，设置和读取某一位都是 O(1) 的，修改直接写入映射的内存，由操作系统写回文件
+ * <p>
+ * 文件开头的8个字节记录位数，打开时校验
+ */
+final class MappedBitmap implements Closeable {
+    private static final int HEADER_BYTES = 8;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long bits;
+
+    private MappedBitmap(FileChannel channel, MappedByteBuffer buffer, long bits) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.bits = bits;
+    }
+
+    /**
+     * 创建全部为0的位图，已存在的文件会被覆盖
+     *
+     * @param file 位图文件
+     * @param bits 位数
+     * @return 位图
+     * @throws IOException 创建文件失败
+     */
+    static MappedBitmap create(File file, long bits) throws IOException {
+        long size = fileSize(bits);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putLong(0, bits);
+            return new MappedBitmap(channel, buffer, bits);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开已存在的位图，位数与文件中记录的不一致时抛出异常
+     *
+     * @param file 位图文件
+     * @param bits 位数
+     * @return 位图
+     * @throws IOException 打开文件失败
+     */
+    static MappedBitmap open(File file, long bits) throws IOException {
+        long size = fileSize(bits);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() != size) {
+                throw new IllegalStateException("位图文件大小不正确: " + file.getAbsolutePath() + ", 期望: " + size + ", 实际: " + channel.size());
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getLong(0) != bits) {
+                throw new IllegalStateException("位图文件的位数不正确: " + file.getAbsolutePath() + ", 期望: " + bits + ", 实际: " + buffer.getLong(0));
+            }
+            return new MappedBitmap(channel, buffer, bits);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static long fileSize(long bits) {
+        long size = HEADER_BYTES + (bits + 7) / 8;
+        if (bits < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("位数超出范围: " + bits);
+        }
+        return size;
+    }
+
+    synchronized void set(long index) {
+        int position = position(index);
+        buffer.put(position, (byte) (buffer.get(position) | (1 << (index & 7))));
+    }
+
+    synchronized boolean get(long index) {
+        if (index < 0 || index >= bits) {
+            return false;
+        }
+        return (buffer.get(position(index)) & (1 << (index & 7))) != 0;
+    }
+
+    /**
+     * @param from 开始的位置（包含）
+     * @return 从 from 开始第一个为1的位置，没有则返回-1
+     */
+    synchronized long nextSetBit(long from) {
+        long index = Math.max(from, 0);
+        while (index < bits) {
+            int b = buffer.get(position(index)) & 0xFF;
+            // 跳过当前字节中 index 之前的位
+            b &= 0xFF << (index & 7);
+            if (b != 0) {
+                long found = (index & ~7L) + Integer.numberOfTrailingZeros(b);
+                return found < bits ? found : -1;
+            }
+            index = (index & ~7L) + 8;
+        }
+        return -1;
+    }
+
+    /**
+     * @return 为1的位数
+     */
+    synchronized long cardinality() {
+        long count = 0;
+        int end = HEADER_BYTES + (int) ((bits + 7) / 8);
+        for (int i = HEADER_BYTES; i < end; i++) {
+            count += Integer.bitCount(buffer.get(i) & 0xFF);
+        }
+        return count;
+    }
+
+    long size() {
+        return bits;
+    }
+
+    /**
+     * 把修改写回文件
+     */
+    synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private int position(long index) {
+        if (index < 0 || index >= bits) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + bits);
+        }
+        return HEADER_BYTES + (int) (index >>> 3);
+    }
+}
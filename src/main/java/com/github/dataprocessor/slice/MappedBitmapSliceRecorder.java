@@ -0,0 +1,486 @@
+package com.github.dataprocessor.slice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * 使用内存映射位图记录分片状态的记录器，适用于分片数量非常多的情况
+ * <p>
+ * 保存全部分片时为每个分片分配一个连续的序号，已完成和失败的状态分别记录在两个映射到文件的位图中，
+ * 保存分片状态只需要设置一位，读取已完成的分片时返回由位图支持的集合视图，不需要从文本中重建 HashSet。
+ * 按固定间隔切分的 {@link RangeSliceSource} 直接由范围和间隔计算序号，不需要为每个分片保存映射关系
+ * <p>
+ * 不在全部分片中的分片（如动态拆分出来的子分片），以及失败批次、检查点和拆分记录，仍然使用 {@link DefaultSliceRecorder} 记录
+ *
+ * @param <S> 分片类型
+ */
+public class MappedBitmapSliceRecorder<S> implements SliceRecorder<S>, Flushable, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MappedBitmapSliceRecorder.class);
+    private static final String BITMAP_DIR = "processBitmap";
+    private static final String RANGE_SOURCE = "range";
+    private static final String LIST_SOURCE = "list";
+    private final SliceParser<S> sliceParser;
+    private final String baseDir;
+    private final File bitmapDir;
+    private final File sourceFile;
+    private final File completedFile;
+    private final File errorFile;
+    private final DefaultSliceRecorder<S> delegate;
+    private final Object lock = new Object();
+    private boolean loaded;
+    private SliceIndex<S> index;
+    private MappedBitmap completed;
+    private MappedBitmap error;
+
+    public MappedBitmapSliceRecorder(SliceParser<S> sliceParser) {
+        this(sliceParser, "");
+    }
+
+    /**
+     * @param sliceParser 分片解析器
+     * @param dir         记录文件存放的位置
+     */
+    public MappedBitmapSliceRecorder(SliceParser<S> sliceParser, String dir) {
+        if (dir == null || dir.trim().isEmpty()) {
+            dir = "";
+        }
+        if (!dir.trim().isEmpty() && !dir.endsWith(File.separator)) {
+            dir += File.separator;
+        }
+        this.sliceParser = sliceParser;
+        this.baseDir = dir;
+        this.bitmapDir = new File(dir + BITMAP_DIR);
+        this.sourceFile = new File(bitmapDir, "slices.txt");
+        this.completedFile = new File(bitmapDir, "completed.bitmap");
+        this.errorFile = new File(bitmapDir, "error.bitmap");
+        this.delegate = new DefaultSliceRecorder<>(sliceParser, dir);
+    }
+
+    @Override
+    public void saveErrorSlice(Slice<S> slice) {
+        if (!mark(slice, false)) {
+            delegate.saveErrorSlice(slice);
+        }
+    }
+
+    @Override
+    public void saveCompletedSlice(Slice<S> slice) {
+        if (!mark(slice, true)) {
+            delegate.saveCompletedSlice(slice);
+        }
+    }
+
+    @Override
+    public void saveAllSlices(Set<Slice<S>> slices) {
+        saveSliceSource(SliceSource.of(slices));
+    }
+
+    /**
+     * 保存分片并为每个分片分配序号，同时创建全部为0的状态位图
+     */
+    @Override
+    public void saveSliceSource(SliceSource<S> source) {
+        synchronized (lock) {
+            closeBitmaps();
+            SliceIndex<S> newIndex = source instanceof RangeSliceSource
+                    ? new RangeIndex<>((RangeSliceSource<S>) source) : new ListIndex<>(source);
+            if (!bitmapDir.exists() && !bitmapDir.mkdirs()) {
+                throw new IllegalStateException("创建位图记录目录失败: " + bitmapDir.getAbsolutePath());
+            }
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(sourceFile.toPath(), StandardCharsets.UTF_8)) {
+                    newIndex.write(writer, sliceParser);
+                }
+                completed = MappedBitmap.create(completedFile, newIndex.size());
+                error = MappedBitmap.create(errorFile, newIndex.size());
+            } catch (IOException e) {
+                closeBitmaps();
+                throw new RuntimeException("保存所有分片记录发生异常", e);
+            }
+            index = newIndex;
+            loaded = true;
+        }
+    }
+
+    @Override
+    public SliceSource<S> getSliceSource() {
+        synchronized (lock) {
+            ensureLoaded();
+            return index == null ? delegate.getSliceSource() : index.source();
+        }
+    }
+
+    @Override
+    public Set<Slice<S>> getAllSlices() {
+        Set<Slice<S>> slices = new LinkedHashSet<>();
+        for (Slice<S> slice : getSliceSource()) {
+            slices.add(slice);
+        }
+        return slices;
+    }
+
+    /**
+     * @return 由位图支持的已完成分片的只读视图，之后完成的分片也会反映在视图中
+     */
+    @Override
+    public Set<Slice<S>> getCompletedSlices() {
+        synchronized (lock) {
+            ensureLoaded();
+            if (index == null) {
+                return delegate.getCompletedSlices();
+            }
+            return new BitmapSliceSet<>(index, completed, delegate.getCompletedSlices());
+        }
+    }
+
+    @Override
+    public Set<Slice<S>> getErrorSlices() {
+        synchronized (lock) {
+            ensureLoaded();
+            if (index == null) {
+                return delegate.getErrorSlices();
+            }
+            // 调用方会修改失败的分片，而且失败的分片通常很少，因此返回副本
+            return new LinkedHashSet<>(new BitmapSliceSet<>(index, error, delegate.getErrorSlices()));
+        }
+    }
+
+    @Override
+    public void saveFailedBatches(Slice<S> slice, List<BatchRange> failedBatches) {
+        delegate.saveFailedBatches(slice, failedBatches);
+    }
+
+    @Override
+    public Map<Slice<S>, List<BatchRange>> getFailedBatches() {
+        return delegate.getFailedBatches();
+    }
+
+    @Override
+    public void saveCheckpoint(Slice<S> slice, PageCursor cursor) {
+        delegate.saveCheckpoint(slice, cursor);
+    }
+
+    @Override
+    public Map<Slice<S>, PageCursor> getCheckpoints() {
+        return delegate.getCheckpoints();
+    }
+
+    @Override
+    public void saveSplitSlice(Slice<S> slice, List<Slice<S>> splitSlices) {
+        delegate.saveSplitSlice(slice, splitSlices);
+    }
+
+    @Override
+    public Map<Slice<S>, List<Slice<S>>> getSplitSlices() {
+        return delegate.getSplitSlices();
+    }
+
+    @Override
+    public void clearRecord() {
+        delegate.clearRecord();
+        synchronized (DefaultSliceParser.class) {
+            synchronized (lock) {
+                closeBitmaps();
+                index = null;
+                loaded = false;
+                if (!bitmapDir.exists()) {
+                    return;
+                }
+                String historyFolder = DefaultSliceRecorder.historyFolder(baseDir);
+                File folder = new File(DefaultSliceRecorder.newHistoryFolder(historyFolder));
+                folder.mkdirs();
+                logger.info("将位图记录 {} 移动到 {}", bitmapDir.getAbsoluteFile(), folder);
+                if (!bitmapDir.renameTo(new File(folder, BITMAP_DIR))) {
+                    // 不能移动时只能删除，否则下次断点续传会读到本次之前的记录
+                    logger.warn("位图记录移动失败，直接删除: {}", bitmapDir.getAbsoluteFile());
+                    for (File file : new File[]{sourceFile, completedFile, errorFile}) {
+                        if (file.exists() && !file.delete()) {
+                            throw new IllegalStateException("删除位图记录失败: " + file.getAbsolutePath());
+                        }
+                    }
+                }
+                DefaultSliceRecorder.clearHistory(historyFolder);
+            }
+        }
+    }
+
+    /**
+     * 把位图的修改写回文件
+     */
+    @Override
+    public void flush() {
+        synchronized (lock) {
+            if (completed != null) {
+                completed.force();
+            }
+            if (error != null) {
+                error.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closeBitmaps();
+            loaded = false;
+        }
+    }
+
+    /**
+     * 在位图中标记分片的状态
+     *
+     * @return 分片是否在全部分片中，不在则需要另外记录
+     */
+    private boolean mark(Slice<S> slice, boolean success) {
+        MappedBitmap bitmap;
+        long ordinal;
+        synchronized (lock) {
+            ensureLoaded();
+            if (index == null) {
+                return false;
+            }
+            ordinal = index.ordinalOf(slice);
+            bitmap = success ? completed : error;
+        }
+        if (ordinal < 0) {
+            return false;
+        }
+        bitmap.set(ordinal);
+        return true;
+    }
+
+    /**
+     * 读取上次保存的分片和位图，必须持有锁
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!sourceFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(sourceFile.toPath(), StandardCharsets.UTF_8)) {
+            String type = reader.readLine();
+            SliceIndex<S> newIndex;
+            if (RANGE_SOURCE.equals(type)) {
+                newIndex = new RangeIndex<>((RangeSliceSource<S>) DefaultSliceRecorder.readSliceSource(reader, sliceParser));
+            } else {
+                List<Slice<S>> slices = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        slices.add(sliceParser.parse(line));
+                    }
+                }
+                newIndex = new ListIndex<>(slices);
+            }
+            completed = openOrCreate(completedFile, newIndex.size());
+            error = openOrCreate(errorFile, newIndex.size());
+            index = newIndex;
+        } catch (IOException e) {
+            closeBitmaps();
+            throw new RuntimeException("读取位图记录发生异常", e);
+        }
+    }
+
+    private static MappedBitmap openOrCreate(File file, long bits) throws IOException {
+        return file.exists() ? MappedBitmap.open(file, bits) : MappedBitmap.create(file, bits);
+    }
+
+    private void closeBitmaps() {
+        for (MappedBitmap bitmap : new MappedBitmap[]{completed, error}) {
+            if (bitmap != null) {
+                try {
+                    bitmap.close();
+                } catch (IOException e) {
+                    logger.warn("关闭位图文件发生异常", e);
+                }
+            }
+        }
+        completed = null;
+        error = null;
+    }
+
+    /**
+     * 分片与序号之间的映射
+     */
+    private interface SliceIndex<S> {
+        /**
+         * @return 分片的序号，不在全部分片中则返回-1
+         */
+        long ordinalOf(Slice<S> slice);
+
+        Slice<S> sliceAt(long ordinal);
+
+        long size();
+
+        SliceSource<S> source();
+
+        void write(Writer writer, SliceParser<S> sliceParser) throws IOException;
+    }
+
+    /**
+     * 按范围和间隔计算序号，额外的分片排在后面
+     */
+    private static class RangeIndex<S> implements SliceIndex<S> {
+        private final RangeSliceSource<S> source;
+        private final long gridSize;
+        private final List<Slice<S>> extra;
+        private final Map<Slice<S>, Integer> extraOrdinals = new HashMap<>();
+
+        RangeIndex(RangeSliceSource<S> source) {
+            this.source = source;
+            this.gridSize = source.gridSize();
+            this.extra = source.getExtra();
+            for (int i = 0; i < extra.size(); i++) {
+                extraOrdinals.putIfAbsent(extra.get(i), i);
+            }
+        }
+
+        @Override
+        public long ordinalOf(Slice<S> slice) {
+            long ordinal = source.gridIndexOf(slice);
+            if (ordinal >= 0) {
+                return ordinal;
+            }
+            Integer i = extraOrdinals.get(slice);
+            return i == null ? -1 : gridSize + i;
+        }
+
+        @Override
+        public Slice<S> sliceAt(long ordinal) {
+            return ordinal < gridSize ? source.gridSlice(ordinal) : extra.get((int) (ordinal - gridSize));
+        }
+
+        @Override
+        public long size() {
+            return gridSize + extra.size();
+        }
+
+        @Override
+        public SliceSource<S> source() {
+            return source;
+        }
+
+        @Override
+        public void write(Writer writer, SliceParser<S> sliceParser) throws IOException {
+            writer.write(RANGE_SOURCE);
+            writer.write(System.lineSeparator());
+            DefaultSliceRecorder.writeSliceSource(source, sliceParser, writer);
+        }
+    }
+
+    /**
+     * 按遍历的顺序分配序号
+     */
+    private static class ListIndex<S> implements SliceIndex<S> {
+        private final List<Slice<S>> slices = new ArrayList<>();
+        private final Map<Slice<S>, Integer> ordinals = new HashMap<>();
+
+        ListIndex(Iterable<Slice<S>> source) {
+            for (Slice<S> slice : source) {
+                if (slice != null && ordinals.putIfAbsent(slice, slices.size()) == null) {
+                    slices.add(slice);
+                }
+            }
+        }
+
+        @Override
+        public long ordinalOf(Slice<S> slice) {
+            Integer i = ordinals.get(slice);
+            return i == null ? -1 : i;
+        }
+
+        @Override
+        public Slice<S> sliceAt(long ordinal) {
+            return slices.get((int) ordinal);
+        }
+
+        @Override
+        public long size() {
+            return slices.size();
+        }
+
+        @Override
+        public SliceSource<S> source() {
+            return SliceSource.of(slices);
+        }
+
+        @Override
+        public void write(Writer writer, SliceParser<S> sliceParser) throws IOException {
+            writer.write(LIST_SOURCE);
+            writer.write(System.lineSeparator());
+            // 每行一个分片，保证重新读取时序号不变
+            for (Slice<S> slice : slices) {
+                writer.write(sliceParser.serialize(slice));
+                writer.write(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * 由位图支持的分片集合视图，不在全部分片中的分片由另外的集合保存
+     */
+    private static class BitmapSliceSet<S> extends AbstractSet<Slice<S>> {
+        private final SliceIndex<S> index;
+        private final MappedBitmap bitmap;
+        private final Set<Slice<S>> others;
+
+        BitmapSliceSet(SliceIndex<S> index, MappedBitmap bitmap, Set<Slice<S>> others) {
+            this.index = index;
+            this.bitmap = bitmap;
+            this.others = others;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+            if (!(o instanceof Slice)) {
+                return false;
+            }
+            Slice<S> slice = (Slice<S>) o;
+            long ordinal = index.ordinalOf(slice);
+            return ordinal >= 0 ? bitmap.get(ordinal) : others.contains(slice);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, bitmap.cardinality() + others.size());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return bitmap.nextSetBit(0) < 0 && others.isEmpty();
+        }
+
+        @Override
+        public Iterator<Slice<S>> iterator() {
+            return new Iterator<Slice<S>>() {
+                private long next = bitmap.nextSetBit(0);
+                private final Iterator<Slice<S>> othersIterator = others.iterator();
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0 || othersIterator.hasNext();
+                }
+
+                @Override
+                public Slice<S> next() {
+                    if (next < 0) {
+                        return othersIterator.next();
+                    }
+                    Slice<S> slice = index.sliceAt(next);
+                    next = bitmap.nextSetBit(next + 1);
+                    return slice;
+                }
+            };
+        }
+    }
+}
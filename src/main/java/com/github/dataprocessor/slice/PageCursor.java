@@ -0,0 +1,74 @@
+package com.github.dataprocessor.slice;
+
+import java.util.Objects;
+
+/**
+ * 分页游标，记录一页数据的分页信息（不包含数据本身），用于在重新处理时定位到这一页
+ * <p>
+ * 重新获取某一页时，框架会使用游标还原出一个不带数据的上一页传给 getResources
+ * <p>
+ * 如果使用键集分页（如 where id &gt; 上一页最后的id），可以把翻页所需的值放在 continuationToken 中
+ */
+public class PageCursor {
+    private int currentPage;
+    private int pageSize;
+    private String continuationToken;
+
+    public PageCursor() {
+    }
+
+    public PageCursor(int currentPage, int pageSize) {
+        this.currentPage = currentPage;
+        this.pageSize = pageSize;
+    }
+
+    public PageCursor(int currentPage, int pageSize, String continuationToken) {
+        this.currentPage = currentPage;
+        this.pageSize = pageSize;
+        this.continuationToken = continuationToken;
+    }
+
+    public int getCurrentPage() {
+        return currentPage;
+    }
+
+    public void setCurrentPage(int currentPage) {
+        this.currentPage = currentPage;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PageCursor that = (PageCursor) o;
+        return currentPage == that.currentPage &&
+                pageSize == that.pageSize &&
+                Objects.equals(continuationToken, that.continuationToken);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(currentPage, pageSize, continuationToken);
+    }
+
+    @Override
+    public String toString() {
+        return "PageCursor{currentPage=" + currentPage + ", pageSize=" + pageSize + ", continuationToken=" + continuationToken + "}";
+    }
+}
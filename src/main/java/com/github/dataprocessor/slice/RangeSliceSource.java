@@ -0,0 +1,278 @@
+package com.github.dataprocessor.slice;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+/**
+ * 按固定间隔切分 [min, max) 范围的分片来源，遍历时才生成分片
+ * <p>
+ * 只需要保存范围和间隔，再加上断点续传时需要排除的分片和额外的分片，
+ * 因此记录器可以用很小的空间保存上百万个分片。排除的分片使用 {@link LongRangeSet} 保存，连续的分片会合并成一个区间
+ *
+ * @param <S> 分片的类型，支持 Long 和 Date
+ */
+public class RangeSliceSource<S> implements SliceSource<S> {
+    private final KeyType keyType;
+    private final long min;
+    private final long max;
+    private final long span;
+    private final LongRangeSet excluded;
+    private final List<Slice<S>> extra;
+
+    private RangeSliceSource(KeyType keyType, long min, long max, long span, LongRangeSet excluded, List<Slice<S>> extra) {
+        if (min >= max) {
+            throw new IllegalArgumentException("最小值必须小于最大值, min:" + min + ", max:" + max + ", span:" + span);
+        }
+        if (span <= 0) {
+            throw new IllegalArgumentException("间隔必须大于0, min:" + min + ", max:" + max + ", span:" + span);
+        }
+        this.keyType = keyType;
+        this.min = min;
+        this.max = max;
+        this.span = span;
+        this.excluded = excluded;
+        this.extra = extra;
+    }
+
+    /**
+     * @param min  最小值
+     * @param max  最大值
+     * @param span 间隔
+     * @return 按 Long 分片的来源
+     */
+    public static RangeSliceSource<Long> ofLong(long min, long max, long span) {
+        return new RangeSliceSource<>(KeyType.LONG, min, max, span, new LongRangeSet(), Collections.emptyList());
+    }
+
+    /**
+     * @param min    最小值（开始时间）
+     * @param max    最大值（结束时间）
+     * @param spanMs 间隔毫秒数
+     * @return 按时间分片的来源
+     */
+    public static RangeSliceSource<Date> ofDate(Date min, Date max, long spanMs) {
+        return new RangeSliceSource<>(KeyType.DATE, min.getTime(), max.getTime(), spanMs, new LongRangeSet(), Collections.emptyList());
+    }
+
+    /**
+     * 根据 {@link #toDescriptor()} 的结果还原分片来源，不包括排除和额外的分片
+     *
+     * @param descriptor 描述
+     * @param <S>        分片的类型
+     * @return 分片来源
+     */
+    public static <S> RangeSliceSource<S> fromDescriptor(String descriptor) {
+        JSONObject json = JSONObject.parseObject(descriptor);
+        KeyType keyType = KeyType.valueOf(json.getString("keyType"));
+        return new RangeSliceSource<>(keyType, json.getLongValue("min"), json.getLongValue("max"),
+                json.getLongValue("span"), new LongRangeSet(), Collections.emptyList());
+    }
+
+    /**
+     * @return 范围和间隔的描述，不包括排除和额外的分片
+     */
+    public String toDescriptor() {
+        JSONObject json = new JSONObject(true);
+        json.put("keyType", keyType.name());
+        json.put("min", min);
+        json.put("max", max);
+        json.put("span", span);
+        return json.toJSONString();
+    }
+
+    @Override
+    public SliceSource<S> excluding(Set<Slice<S>> excluded, Collection<Slice<S>> extra) {
+        LongRangeSet newExcluded = new LongRangeSet(this.excluded);
+        // 只需要记录属于本范围的分片，其他的分片本来就不会生成
+        for (Slice<S> slice : excluded) {
+            if (contains(slice)) {
+                newExcluded.add(keyType.toLong(slice.getBegin()), keyType.toLong(slice.getEnd()));
+            }
+        }
+        List<Slice<S>> newExtra = new ArrayList<>();
+        for (Slice<S> slice : this.extra) {
+            if (!excluded.contains(slice)) {
+                newExtra.add(slice);
+            }
+        }
+        newExtra.addAll(extra);
+        return new RangeSliceSource<>(keyType, min, max, span, newExcluded, newExtra);
+    }
+
+    /**
+     * 返回新的分片来源，排除和额外的分片使用给定的值，用于记录器还原
+     *
+     * @param excluded 需要排除的区间，即 {@link #getExcluded()} 的结果，每个区间可以包含多个连续的分片
+     * @param extra    额外的分片
+     * @return 新的分片来源
+     */
+    public RangeSliceSource<S> withExceptions(Collection<Slice<S>> excluded, List<Slice<S>> extra) {
+        LongRangeSet ranges = new LongRangeSet();
+        for (Slice<S> range : excluded) {
+            ranges.add(keyType.toLong(range.getBegin()), keyType.toLong(range.getEnd()));
+        }
+        return new RangeSliceSource<>(keyType, min, max, span, ranges, new ArrayList<>(extra));
+    }
+
+    /**
+     * @param slice 分片
+     * @return 分片是否是按本范围和间隔生成的分片之一（不考虑排除的分片）
+     */
+    public boolean contains(Slice<S> slice) {
+        if (slice == null || slice.getBegin() == null || slice.getEnd() == null) {
+            return false;
+        }
+        long begin = keyType.toLong(slice.getBegin());
+        long end = keyType.toLong(slice.getEnd());
+        return begin >= min && begin < max && (begin - min) % span == 0 && end == nextEnd(begin);
+    }
+
+    @Override
+    public long size() {
+        long count = sliceIndex(max);
+        for (LongRange range : excluded) {
+            // 排除的区间都由整数个分片组成，开始值落在区间内的分片数即为区间包含的分片数
+            count -= sliceIndex(range.getEnd()) - sliceIndex(range.getBegin());
+        }
+        return count + extra.size();
+    }
+
+    @Override
+    public Iterator<Slice<S>> iterator() {
+        return new Iterator<Slice<S>>() {
+            private long next = min;
+            private final Iterator<Slice<S>> extraIterator = extra.iterator();
+            private Slice<S> current = advance();
+
+            private Slice<S> advance() {
+                while (next < max) {
+                    long begin = next;
+                    long end = nextEnd(begin);
+                    next = end;
+                    if (!excluded.covers(begin, end)) {
+                        return new Slice<>(keyType.fromLong(begin), keyType.fromLong(end));
+                    }
+                }
+                return extraIterator.hasNext() ? extraIterator.next() : null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            @Override
+            public Slice<S> next() {
+                if (current == null) {
+                    throw new NoSuchElementException();
+                }
+                Slice<S> slice = current;
+                current = advance();
+                return slice;
+            }
+        };
+    }
+
+    /**
+     * @return 按范围和间隔生成的分片个数，不考虑排除和额外的分片
+     */
+    long gridSize() {
+        return sliceIndex(max);
+    }
+
+    /**
+     * @param slice 分片
+     * @return 分片在按范围和间隔生成的分片中的序号，不是其中之一则返回-1
+     */
+    long gridIndexOf(Slice<S> slice) {
+        if (!contains(slice)) {
+            return -1;
+        }
+        return (keyType.toLong(slice.getBegin()) - min) / span;
+    }
+
+    /**
+     * @param index 序号
+     * @return 按范围和间隔生成的第 index 个分片
+     */
+    Slice<S> gridSlice(long index) {
+        long begin = min + index * span;
+        return new Slice<>(keyType.fromLong(begin), keyType.fromLong(nextEnd(begin)));
+    }
+
+    /**
+     * @return 开始值小于 value 的分片个数
+     */
+    private long sliceIndex(long value) {
+        if (value <= min) {
+            return 0;
+        }
+        long offset = Math.min(value, max) - min;
+        return offset / span + (offset % span == 0 ? 0 : 1);
+    }
+
+    private long nextEnd(long begin) {
+        // 防止溢出
+        return max - begin <= span ? max : begin + span;
+    }
+
+    /**
+     * @return 需要排除的区间，连续排除的分片合并为一个区间
+     */
+    public List<Slice<S>> getExcluded() {
+        List<Slice<S>> ranges = new ArrayList<>(excluded.rangeCount());
+        for (LongRange range : excluded) {
+            ranges.add(new Slice<>(keyType.fromLong(range.getBegin()), keyType.fromLong(range.getEnd())));
+        }
+        return ranges;
+    }
+
+    public List<Slice<S>> getExtra() {
+        return Collections.unmodifiableList(extra);
+    }
+
+    @Override
+    public String toString() {
+        return "RangeSliceSource" + toDescriptor() + "{excluded=" + excluded.rangeCount() + ", extra=" + extra.size() + "}";
+    }
+
+    /**
+     * 分片的键的类型，与 long 互相转换
+     */
+    private enum KeyType {
+        LONG(v -> v) {
+            @Override
+            long toLong(Object key) {
+                return (Long) key;
+            }
+        },
+        DATE(Date::new) {
+            @Override
+            long toLong(Object key) {
+                return ((Date) key).getTime();
+            }
+        };
+
+        private final LongFunction<Object> converter;
+
+        KeyType(LongFunction<Object> converter) {
+            this.converter = converter;
+        }
+
+        abstract long toLong(Object key);
+
+        @SuppressWarnings("unchecked")
+        <S> S fromLong(long value) {
+            return (S) converter.apply(value);
+        }
+    }
+}
@@ -49,9 +49,12 @@ public class Slice<S> {
                 Objects.equals(end, slice.end);
     }
 
+    /**
+     * 不使用 Objects.hash，避免每次计算都创建可变参数数组
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(begin, end);
+        return 31 * Objects.hashCode(begin) + Objects.hashCode(end);
     }
 
     @Override
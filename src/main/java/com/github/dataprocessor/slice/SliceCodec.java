@@ -0,0 +1,40 @@
+package com.github.dataprocessor.slice;
+
+/**
+ * 分片边界值的紧凑编解码器，由 {@link DefaultSliceParser} 按类型选用
+ * <p>
+ * 编码结果中不能出现逗号、分号、制表符和换行符，否则需要自行转义
+ *
+ * @param <T> 分片边界值的类型
+ */
+public interface SliceCodec<T> {
+    /**
+     * 类型标识，写在序列化结果的开头，用于反序列化时选择编解码器，不需要再通过类名加载类型
+     *
+     * @return 一个ASCII字母或数字，不同的编解码器不能重复
+     */
+    char getTypeId();
+
+    /**
+     * @return 可以编码的类型，只有分片边界值的类型与之完全相同时才使用此编解码器
+     */
+    Class<T> getType();
+
+    /**
+     * 编码
+     *
+     * @param value 边界值，不为null
+     * @param out   编码结果追加到这里
+     */
+    void encode(T value, StringBuilder out);
+
+    /**
+     * 解码
+     *
+     * @param str   包含编码结果的字符串
+     * @param begin 编码结果的开始下标（包含）
+     * @param end   编码结果的结束下标（不包含）
+     * @return 边界值
+     */
+    T decode(String str, int begin, int end);
+}
@@ -0,0 +1,179 @@
+package com.github.dataprocessor.slice;
+
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * 内置的分片边界值编解码器，Long、Date、Instant 编码为十进制数字，String 转义分隔符
+ */
+final class SliceCodecs {
+    static final SliceCodec<Long> LONG = new SliceCodec<Long>() {
+        @Override
+        public char getTypeId() {
+            return 'L';
+        }
+
+        @Override
+        public Class<Long> getType() {
+            return Long.class;
+        }
+
+        @Override
+        public void encode(Long value, StringBuilder out) {
+            out.append(value.longValue());
+        }
+
+        @Override
+        public Long decode(String str, int begin, int end) {
+            return parseLong(str, begin, end);
+        }
+    };
+
+    /**
+     * 编码为毫秒数，不受时区影响
+     */
+    static final SliceCodec<Date> DATE = new SliceCodec<Date>() {
+        @Override
+        public char getTypeId() {
+            return 'D';
+        }
+
+        @Override
+        public Class<Date> getType() {
+            return Date.class;
+        }
+
+        @Override
+        public void encode(Date value, StringBuilder out) {
+            out.append(value.getTime());
+        }
+
+        @Override
+        public Date decode(String str, int begin, int end) {
+            return new Date(parseLong(str, begin, end));
+        }
+    };
+
+    /**
+     * 编码为 秒数.纳秒数
+     */
+    static final SliceCodec<Instant> INSTANT = new SliceCodec<Instant>() {
+        @Override
+        public char getTypeId() {
+            return 'I';
+        }
+
+        @Override
+        public Class<Instant> getType() {
+            return Instant.class;
+        }
+
+        @Override
+        public void encode(Instant value, StringBuilder out) {
+            out.append(value.getEpochSecond()).append('.').append(value.getNano());
+        }
+
+        @Override
+        public Instant decode(String str, int begin, int end) {
+            int dot = str.indexOf('.', begin);
+            if (dot < 0 || dot >= end) {
+                return Instant.ofEpochSecond(parseLong(str, begin, end));
+            }
+            return Instant.ofEpochSecond(parseLong(str, begin, dot), parseLong(str, dot + 1, end));
+        }
+    };
+
+    static final SliceCodec<String> STRING = new SliceCodec<String>() {
+        @Override
+        public char getTypeId() {
+            return 'S';
+        }
+
+        @Override
+        public Class<String> getType() {
+            return String.class;
+        }
+
+        @Override
+        public void encode(String value, StringBuilder out) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\':
+                    case ',':
+                    case ';':
+                        out.append('\\').append(c);
+                        break;
+                    case '\t':
+                        out.append("\\t");
+                        break;
+                    case '\n':
+                        out.append("\\n");
+                        break;
+                    case '\r':
+                        out.append("\\r");
+                        break;
+                    default:
+                        out.append(c);
+                }
+            }
+        }
+
+        @Override
+        public String decode(String str, int begin, int end) {
+            if (str.indexOf('\\', begin) < 0 || str.indexOf('\\', begin) >= end) {
+                return str.substring(begin, end);
+            }
+            StringBuilder sb = new StringBuilder(end - begin);
+            for (int i = begin; i < end; i++) {
+                char c = str.charAt(i);
+                if (c == '\\' && i + 1 < end) {
+                    c = str.charAt(++i);
+                    if (c == 't') {
+                        c = '\t';
+                    } else if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 'r') {
+                        c = '\r';
+                    }
+                }
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+    };
+
+    private SliceCodecs() {
+        throw new UnsupportedOperationException("静态工具类不允许被实例化");
+    }
+
+    /**
+     * 解析十进制数字，不需要先截取子串
+     */
+    static long parseLong(String str, int begin, int end) {
+        if (begin >= end) {
+            throw new NumberFormatException("数字不能为空: " + str);
+        }
+        boolean negative = str.charAt(begin) == '-';
+        int i = negative ? begin + 1 : begin;
+        if (i >= end) {
+            throw new NumberFormatException("数字格式错误: " + str.substring(begin, end));
+        }
+        // 按负数累加，可以表示 Long.MIN_VALUE
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = str.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("数字格式错误: " + str.substring(begin, end));
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new NumberFormatException("数字超出范围: " + str.substring(begin, end));
+            }
+            return -result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.dataprocessor.slice;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分片成本估算器，用于按成本从大到小的顺序启动分片，避免耗时最长的分片最后才启动而拖长整体的处理时间
+ * <p>
+ * 成本只需要在分片之间可以比较，可以是 COUNT 查询得到的数据量，也可以是上次处理时记录的数据量
+ *
+ * @param <S> 分片的类型
+ */
+@FunctionalInterface
+public interface SliceCostEstimator<S> {
+
+    /**
+     * 估算处理分片的成本
+     *
+     * @param slice 分片
+     * @return 成本，不能为负数
+     */
+    long estimateCost(Slice<S> slice);
+
+    /**
+     * 根据上次处理时各分片的实际成本估算，如 {@code DataProcessorTemplate.getSliceCosts()}
+     *
+     * @param history     分片与其上次的实际成本
+     * @param defaultCost 没有记录的分片的成本
+     * @param <S>         分片的类型
+     * @return 成本估算器
+     */
+    static <S> SliceCostEstimator<S> fromHistory(Map<Slice<S>, Long> history, long defaultCost) {
+        Map<Slice<S>, Long> costs = new HashMap<>(history);
+        return slice -> costs.getOrDefault(slice, defaultCost);
+    }
+}
@@ -1,5 +1,9 @@
 package com.github.dataprocessor.slice;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -32,6 +36,34 @@ public interface SliceRecorder<S> {
      */
     void saveAllSlices(Set<Slice<S>> slices);
 
+    /**
+     * 保存本批次的分片来源
+     * <p>
+     * 默认遍历全部分片后通过 {@link #saveAllSlices(Set)} 保存，实现类可以针对 {@link RangeSliceSource} 只保存范围和间隔
+     *
+     * @param source 分片来源
+     */
+    default void saveSliceSource(SliceSource<S> source) {
+        Set<Slice<S>> slices = new LinkedHashSet<>();
+        for (Slice<S> slice : source) {
+            slices.add(slice);
+        }
+        if (!slices.isEmpty()) {
+            saveAllSlices(slices);
+        }
+    }
+
+    /**
+     * 获取最近保存的分片来源
+     * <p>
+     * 默认使用 {@link #getAllSlices()} 读取的全部分片
+     *
+     * @return 分片来源
+     */
+    default SliceSource<S> getSliceSource() {
+        return SliceSource.of(getAllSlices());
+    }
+
     /**
      * 读取最近一次处理失败的分片
      *
@@ -53,6 +85,66 @@ public interface SliceRecorder<S> {
      */
     Set<Slice<S>> getCompletedSlices();
 
+    /**
+     * 保存分片中处理失败的批次，重新处理时只需要重新处理这些批次
+     * <p>
+     * 同一个分片多次保存时，以最后一次保存的为准。默认不记录，即重新处理时处理整个分片
+     *
+     * @param slice         分片
+     * @param failedBatches 处理失败的批次
+     */
+    default void saveFailedBatches(Slice<S> slice, List<BatchRange> failedBatches) {
+    }
+
+    /**
+     * 读取各分片最近一次保存的处理失败的批次
+     *
+     * @return 分片与其失败的批次，没有记录的分片需要整个重新处理
+     */
+    default Map<Slice<S>, List<BatchRange>> getFailedBatches() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 保存分片的检查点，即该分片中所有批次都已处理成功的最后一页的游标
+     * <p>
+     * 同一个分片多次保存时，以最后一次保存的为准。默认不记录，即断点续传时处理整个分片
+     *
+     * @param slice  分片
+     * @param cursor 所有批次都已处理成功的最后一页的游标
+     */
+    default void saveCheckpoint(Slice<S> slice, PageCursor cursor) {
+    }
+
+    /**
+     * 读取各分片最近一次保存的检查点
+     *
+     * @return 分片与其检查点，没有记录的分片需要从头开始处理
+     */
+    default Map<Slice<S>, PageCursor> getCheckpoints() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 保存动态拆分的记录，即分片在处理过程中把还没有读取的部分拆分成了哪些子分片
+     * <p>
+     * 在保存原分片完成之前调用，断点续传时已完成的分片的未完成子分片需要继续处理。默认不记录
+     *
+     * @param slice       被拆分的分片
+     * @param splitSlices 拆分出来的子分片
+     */
+    default void saveSplitSlice(Slice<S> slice, List<Slice<S>> splitSlices) {
+    }
+
+    /**
+     * 读取动态拆分的记录
+     *
+     * @return 被拆分的分片与其子分片
+     */
+    default Map<Slice<S>, List<Slice<S>>> getSplitSlices() {
+        return Collections.emptyMap();
+    }
+
     /**
      * 清除分片历史记录，在启动处理的时候会调用以清理之前处理的分片记录
      */
@@ -0,0 +1,76 @@
+package com.github.dataprocessor.slice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分片记录器的工具方法
+ */
+public final class SliceRecorders {
+    private static final Logger logger = LoggerFactory.getLogger(SliceRecorders.class);
+
+    private SliceRecorders() {
+        throw new UnsupportedOperationException("静态工具类不允许被实例化");
+    }
+
+    /**
+     * 合并多个分区（节点）各自的分片记录，合并后可以由一个进程对全部分区调用断点续传或者重新处理失败的分片
+     * <p>
+     * 目标记录器原有的记录会被清除，全部分片为各分区全部分片的并集，已完成、失败的分片以及失败批次、检查点和拆分记录都原样合并
+     *
+     * @param target 合并到的记录器
+     * @param shards 各分区的记录器
+     * @param <S>    分片类型
+     */
+    public static <S> void merge(SliceRecorder<S> target, Collection<? extends SliceRecorder<S>> shards) {
+        target.clearRecord();
+        Set<Slice<S>> all = new LinkedHashSet<>();
+        for (SliceRecorder<S> shard : shards) {
+            SliceSource<S> source = shard.getSliceSource();
+            if (source != null) {
+                for (Slice<S> slice : source) {
+                    all.add(slice);
+                }
+            }
+        }
+        target.saveAllSlices(all);
+        long completed = 0;
+        long errors = 0;
+        for (SliceRecorder<S> shard : shards) {
+            // 先合并拆分记录再合并已完成的分片，与处理时的记录顺序一致
+            for (Map.Entry<Slice<S>, List<Slice<S>>> entry : shard.getSplitSlices().entrySet()) {
+                target.saveSplitSlice(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<Slice<S>, PageCursor> entry : shard.getCheckpoints().entrySet()) {
+                target.saveCheckpoint(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<Slice<S>, List<BatchRange>> entry : shard.getFailedBatches().entrySet()) {
+                target.saveFailedBatches(entry.getKey(), entry.getValue());
+            }
+            for (Slice<S> slice : shard.getCompletedSlices()) {
+                target.saveCompletedSlice(slice);
+                completed++;
+            }
+            for (Slice<S> slice : shard.getErrorSlices()) {
+                target.saveErrorSlice(slice);
+                errors++;
+            }
+        }
+        if (target instanceof Flushable) {
+            try {
+                ((Flushable) target).flush();
+            } catch (IOException e) {
+                throw new RuntimeException("保存合并后的分片记录发生异常", e);
+            }
+        }
+        logger.info("合并 {} 个分区的分片记录，全部分片: {}, 已完成: {}, 失败: {}", shards.size(), all.size(), completed, errors);
+    }
+}
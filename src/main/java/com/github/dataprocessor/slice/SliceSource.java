@@ -0,0 +1,79 @@
+package com.github.dataprocessor.slice;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 分片来源，按需逐个生成分片，启动分片时边遍历边启动，不需要事先生成全部分片
+ * <p>
+ * 对于细粒度的分片（如在很大的 id 范围内按很小的间隔分片），使用 {@link RangeSliceSource}
+ * 只需要保存范围和间隔，而不需要在内存中保存上百万个分片
+ *
+ * @param <S> 分片的类型
+ */
+public interface SliceSource<S> extends Iterable<Slice<S>> {
+
+    /**
+     * @return 分片的数量，未知时返回-1
+     */
+    default long size() {
+        return -1;
+    }
+
+    /**
+     * @return 是否没有任何分片
+     */
+    default boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    /**
+     * 排除已完成的分片，并加入额外的分片（如动态拆分出来的未完成子分片），用于断点续传
+     * <p>
+     * 默认生成排除后的分片集合，{@link RangeSliceSource} 则只记录排除和额外的分片
+     *
+     * @param excluded 需要排除的分片
+     * @param extra    额外的分片
+     * @return 新的分片来源
+     */
+    default SliceSource<S> excluding(Set<Slice<S>> excluded, Collection<Slice<S>> extra) {
+        Set<Slice<S>> slices = new LinkedHashSet<>();
+        for (Slice<S> slice : this) {
+            if (!excluded.contains(slice)) {
+                slices.add(slice);
+            }
+        }
+        slices.addAll(extra);
+        return of(slices);
+    }
+
+    /**
+     * 把已经生成好的分片集合包装成分片来源
+     *
+     * @param slices 分片集合，可以为null
+     * @param <S>    分片的类型
+     * @return 分片来源
+     */
+    static <S> SliceSource<S> of(Collection<Slice<S>> slices) {
+        Collection<Slice<S>> collection = slices == null ? Collections.emptySet() : slices;
+        return new SliceSource<S>() {
+            @Override
+            public Iterator<Slice<S>> iterator() {
+                return collection.iterator();
+            }
+
+            @Override
+            public long size() {
+                return collection.size();
+            }
+
+            @Override
+            public String toString() {
+                return "SliceSource{size=" + collection.size() + "}";
+            }
+        };
+    }
+}
@@ -0,0 +1,691 @@
+package com.github.dataprocessor.slice;
+
+import com.alibaba.fastjson.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 基于预写日志的分片记录器
+ * <p>
+ * 所有记录按顺序追加到同一个只追加的日志中，日志按大小切分为多个段文件。写入使用一直打开的文件通道，
+ * 不需要每条记录都打开和关闭文件。记录先追加到内存缓冲区，由一个线程在锁外把同时追加的记录一次写入文件通道，
+ * 追加方法在记录写入文件通道之后才返回；同时追加的记录按 {@link FsyncPolicy} 合并为一次刷盘
+ * <p>
+ * 每条记录的格式为：内容长度(4字节) + CRC32校验值(4字节) + 记录类型(1字节) + 内容(UTF-8)。
+ * 读取时遇到不完整或者校验失败的记录，说明是写入时被中断的尾部，丢弃该记录及其之后的内容，重新打开日志时截断
+ * <p>
+ * 读取时按顺序重放整个日志，同一个分片的检查点、失败批次和拆分记录以最后一条为准
+ *
+ * @param <S> 分片类型
+ */
+public class WalSliceRecorder<S> implements SliceRecorder<S>, Flushable, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WalSliceRecorder.class);
+    /**
+     * 默认的日志段大小
+     */
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final String WAL_DIR = "processWal";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 9;
+    /**
+     * 单条记录内容的最大长度，超过说明长度字段已经损坏
+     */
+    private static final int MAX_RECORD_BYTES = 256 * 1024 * 1024;
+    /**
+     * 记录内容与分片之间的分隔符，与 {@link DefaultSliceRecorder} 一致
+     */
+    private static final char SLICE_SEPARATOR = '\t';
+    private static final byte ALL_SLICES = 1;
+    private static final byte SLICE_SOURCE = 2;
+    private static final byte COMPLETED = 3;
+    private static final byte ERROR = 4;
+    private static final byte FAILED_BATCHES = 5;
+    private static final byte CHECKPOINT = 6;
+    private static final byte SPLIT = 7;
+    private final SliceParser<S> sliceParser;
+    private final String baseDir;
+    private final File walDir;
+    private final FsyncPolicy fsyncPolicy;
+    private final long segmentBytes;
+    private final Object lock = new Object();
+    private FileChannel channel;
+    private int segmentIndex;
+    /**
+     * 已追加但还没有写入文件通道的记录，写入时与 spare 交换，写入期间追加的记录进入另一个缓冲区
+     */
+    private FrameBuffer buffer = new FrameBuffer();
+    private FrameBuffer spare = new FrameBuffer();
+    /**
+     * 已追加、已写入文件通道和已刷盘的记录序号
+     */
+    private long appended;
+    private long written;
+    private long synced;
+    private boolean writing;
+    private boolean syncing;
+    private long lastSyncNanos = System.nanoTime();
+    /**
+     * 写入失败的记录序号区间，开始序号 -> 结束序号，等待这些记录写入的线程需要抛出异常
+     */
+    private final TreeMap<Long, Long> lost = new TreeMap<>();
+
+    public WalSliceRecorder(SliceParser<S> sliceParser) {
+        this(sliceParser, "");
+    }
+
+    /**
+     * 每秒最多刷盘一次
+     *
+     * @param sliceParser 分片解析器
+     * @param dir         日志存放的位置
+     */
+    public WalSliceRecorder(SliceParser<S> sliceParser, String dir) {
+        this(sliceParser, dir, FsyncPolicy.everyMillis(1000), DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param sliceParser  分片解析器
+     * @param dir          日志存放的位置
+     * @param fsyncPolicy  刷盘策略
+     * @param segmentBytes 日志段大小，超过后切换到新的日志段
+     */
+    public WalSliceRecorder(SliceParser<S> sliceParser, String dir, FsyncPolicy fsyncPolicy, long segmentBytes) {
+        if (sliceParser == null || fsyncPolicy == null) {
+            throw new NullPointerException("分片解析器和刷盘策略不能为空");
+        }
+        if (segmentBytes <= 0) {
+            throw new IllegalArgumentException("日志段大小必须大于0");
+        }
+        if (dir == null || dir.trim().isEmpty()) {
+            dir = "";
+        }
+        if (!dir.trim().isEmpty() && !dir.endsWith(File.separator)) {
+            dir += File.separator;
+        }
+        this.sliceParser = sliceParser;
+        this.baseDir = dir;
+        this.walDir = new File(dir + WAL_DIR);
+        this.fsyncPolicy = fsyncPolicy;
+        this.segmentBytes = segmentBytes;
+    }
+
+    @Override
+    public void saveErrorSlice(Slice<S> slice) {
+        append(ERROR, sliceParser.serialize(slice));
+    }
+
+    @Override
+    public void saveCompletedSlice(Slice<S> slice) {
+        append(COMPLETED, sliceParser.serialize(slice));
+    }
+
+    @Override
+    public void saveAllSlices(Set<Slice<S>> slices) {
+        append(ALL_SLICES, sliceParser.serialize(slices));
+    }
+
+    /**
+     * 按固定间隔切分的分片来源只保存范围和间隔，以及排除的区间和额外的分片
+     */
+    @Override
+    public void saveSliceSource(SliceSource<S> source) {
+        if (!(source instanceof RangeSliceSource)) {
+            SliceRecorder.super.saveSliceSource(source);
+            return;
+        }
+        StringWriter writer = new StringWriter();
+        try {
+            DefaultSliceRecorder.writeSliceSource((RangeSliceSource<S>) source, sliceParser, writer);
+        } catch (IOException e) {
+            throw new RuntimeException("保存分片来源记录发生异常", e);
+        }
+        append(SLICE_SOURCE, writer.toString());
+    }
+
+    @Override
+    public void saveFailedBatches(Slice<S> slice, List<BatchRange> failedBatches) {
+        append(FAILED_BATCHES, JSON.toJSONString(failedBatches) + SLICE_SEPARATOR + sliceParser.serialize(slice));
+    }
+
+    @Override
+    public void saveCheckpoint(Slice<S> slice, PageCursor cursor) {
+        append(CHECKPOINT, JSON.toJSONString(cursor) + SLICE_SEPARATOR + sliceParser.serialize(slice));
+    }
+
+    @Override
+    public void saveSplitSlice(Slice<S> slice, List<Slice<S>> splitSlices) {
+        append(SPLIT, sliceParser.serialize(new LinkedHashSet<>(splitSlices)) + SLICE_SEPARATOR + sliceParser.serialize(slice));
+    }
+
+    @Override
+    public Set<Slice<S>> getErrorSlices() {
+        Set<Slice<S>> slices = new LinkedHashSet<>();
+        replay((type, content) -> {
+            if (type == ERROR) {
+                slices.add(sliceParser.parse(content));
+            }
+        });
+        return slices;
+    }
+
+    @Override
+    public Set<Slice<S>> getCompletedSlices() {
+        Set<Slice<S>> slices = new HashSet<>();
+        replay((type, content) -> {
+            if (type == COMPLETED) {
+                slices.add(sliceParser.parse(content));
+            }
+        });
+        return slices;
+    }
+
+    @Override
+    public Set<Slice<S>> getAllSlices() {
+        return materialize(getSliceSource());
+    }
+
+    @Override
+    public SliceSource<S> getSliceSource() {
+        byte[] lastType = new byte[1];
+        String[] lastContent = new String[1];
+        replay((type, content) -> {
+            if (type == ALL_SLICES || type == SLICE_SOURCE) {
+                lastType[0] = type;
+                lastContent[0] = content;
+            }
+        });
+        if (lastContent[0] == null) {
+            return SliceSource.of(Collections.emptySet());
+        }
+        if (lastType[0] == ALL_SLICES) {
+            return SliceSource.of(sliceParser.parseSlices(lastContent[0]));
+        }
+        try {
+            return DefaultSliceRecorder.readSliceSource(new BufferedReader(new StringReader(lastContent[0])), sliceParser);
+        } catch (IOException e) {
+            throw new RuntimeException("读取分片来源记录发生异常", e);
+        }
+    }
+
+    @Override
+    public Map<Slice<S>, List<BatchRange>> getFailedBatches() {
+        Map<Slice<S>, List<BatchRange>> records = new HashMap<>();
+        replay((type, content) -> {
+            if (type == FAILED_BATCHES) {
+                int index = content.lastIndexOf(SLICE_SEPARATOR);
+                records.put(sliceParser.parse(content.substring(index + 1)), JSON.parseArray(content.substring(0, index), BatchRange.class));
+            }
+        });
+        return records;
+    }
+
+    @Override
+    public Map<Slice<S>, PageCursor> getCheckpoints() {
+        Map<Slice<S>, PageCursor> records = new HashMap<>();
+        replay((type, content) -> {
+            if (type == CHECKPOINT) {
+                int index = content.lastIndexOf(SLICE_SEPARATOR);
+                records.put(sliceParser.parse(content.substring(index + 1)), JSON.parseObject(content.substring(0, index), PageCursor.class));
+            }
+        });
+        return records;
+    }
+
+    @Override
+    public Map<Slice<S>, List<Slice<S>>> getSplitSlices() {
+        Map<Slice<S>, List<Slice<S>>> records = new HashMap<>();
+        replay((type, content) -> {
+            if (type == SPLIT) {
+                int index = content.lastIndexOf(SLICE_SEPARATOR);
+                records.put(sliceParser.parse(content.substring(index + 1)), new ArrayList<>(sliceParser.parseSlices(content.substring(0, index))));
+            }
+        });
+        return records;
+    }
+
+    /**
+     * 关闭日志并移动到历史记录中
+     */
+    @Override
+    public void clearRecord() {
+        logger.info("清理分片历史记录");
+        synchronized (DefaultSliceParser.class) {
+            synchronized (lock) {
+                close();
+                if (!walDir.exists()) {
+                    logger.info("没有分片历史记录需要清理");
+                    return;
+                }
+                String historyFolder = DefaultSliceRecorder.historyFolder(baseDir);
+                File folder = new File(DefaultSliceRecorder.newHistoryFolder(historyFolder));
+                folder.mkdirs();
+                File target = new File(folder, WAL_DIR);
+                logger.info("将预写日志 {} 移动到 {}", walDir.getAbsoluteFile(), folder);
+                if (!walDir.renameTo(target)) {
+                    // 不能移动时只能删除，否则下次断点续传会读到本次之前的记录
+                    logger.warn("预写日志移动失败，直接删除: {}", walDir.getAbsoluteFile());
+                    for (File segment : listSegments()) {
+                        if (!segment.delete()) {
+                            throw new IllegalStateException("删除预写日志失败: " + segment.getAbsolutePath());
+                        }
+                    }
+                }
+                DefaultSliceRecorder.clearHistory(historyFolder);
+            }
+        }
+    }
+
+    /**
+     * 把已追加的记录全部写入并刷盘
+     */
+    @Override
+    public void flush() {
+        synchronized (lock) {
+            boolean interrupted = Thread.interrupted();
+            try {
+                while (writing || syncing) {
+                    interrupted |= waitLock();
+                }
+                if (buffer.size() > 0) {
+                    long end = appended;
+                    try {
+                        ensureOpen();
+                        if (channel.position() >= segmentBytes) {
+                            roll();
+                        }
+                        writeFully(channel, buffer);
+                        written = end;
+                    } catch (IOException e) {
+                        writeFailed(end);
+                        throw new RuntimeException("写入预写日志发生异常: " + walDir, e);
+                    } finally {
+                        buffer.reset();
+                        lock.notifyAll();
+                    }
+                }
+                if (channel == null || synced == written) {
+                    return;
+                }
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    throw new RuntimeException("预写日志刷盘发生异常: " + walDir, e);
+                }
+                synced = written;
+                lastSyncNanos = System.nanoTime();
+                lock.notifyAll();
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * 刷盘并关闭日志文件，之后再追加记录会重新打开
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            flush();
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warn("关闭预写日志发生异常", e);
+                }
+                channel = null;
+            }
+        }
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    private void append(byte type, String content) {
+        byte[] frame = encode(type, content);
+        long sequence;
+        synchronized (lock) {
+            buffer.write(frame, 0, frame.length);
+            sequence = ++appended;
+        }
+        // 文件通道在中断时会被关闭，因此先清除中断标记，被中断也要等到记录写入（以及需要时刷盘）之后才返回，最后恢复中断标记
+        boolean interrupted = Thread.interrupted();
+        try {
+            interrupted |= writeThrough(sequence);
+            interrupted |= syncThrough(sequence);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 等待记录写入文件通道，没有其他线程正在写入时由本线程把缓冲区中的记录一次写入
+     *
+     * @param sequence 记录序号
+     * @return 等待期间是否被中断
+     */
+    private boolean writeThrough(long sequence) {
+        boolean interrupted = false;
+        FrameBuffer batch;
+        FileChannel target;
+        long end;
+        synchronized (lock) {
+            while (true) {
+                checkLost(sequence);
+                if (written >= sequence) {
+                    return interrupted;
+                }
+                if (!writing) {
+                    break;
+                }
+                interrupted |= waitLock();
+            }
+            // 本线程负责写入，写入期间追加的记录由下一个线程一起写入
+            writing = true;
+            try {
+                ensureOpen();
+                if (channel.position() >= segmentBytes) {
+                    roll();
+                }
+            } catch (IOException e) {
+                writing = false;
+                writeFailed(appended);
+                buffer.reset();
+                lock.notifyAll();
+                throw new RuntimeException("写入预写日志发生异常: " + walDir, e);
+            }
+            batch = buffer;
+            buffer = spare;
+            spare = null;
+            end = appended;
+            target = channel;
+        }
+        boolean success = false;
+        try {
+            writeFully(target, batch);
+            success = true;
+        } catch (IOException e) {
+            throw new RuntimeException("写入预写日志发生异常: " + walDir, e);
+        } finally {
+            synchronized (lock) {
+                writing = false;
+                if (success) {
+                    written = end;
+                } else {
+                    writeFailed(end);
+                }
+                batch.reset();
+                spare = batch;
+                lock.notifyAll();
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * 按刷盘策略刷盘，没有其他线程正在刷盘时由本线程把已写入的记录一起刷盘
+     *
+     * @param sequence 记录序号，必须已经写入文件通道
+     * @return 等待期间是否被中断
+     */
+    private boolean syncThrough(long sequence) {
+        boolean interrupted = false;
+        FileChannel syncChannel;
+        long end;
+        synchronized (lock) {
+            while (true) {
+                if (synced >= sequence || channel == null
+                        || !fsyncPolicy.shouldSync(written - synced, System.nanoTime() - lastSyncNanos)) {
+                    return interrupted;
+                }
+                if (!syncing) {
+                    break;
+                }
+                // 其他线程正在刷盘，不需要等待刷盘的策略留给下一次
+                if (!fsyncPolicy.isAlways()) {
+                    return interrupted;
+                }
+                interrupted |= waitLock();
+            }
+            // 本线程负责刷盘，刷盘期间写入的记录由下一个线程一起刷盘
+            syncing = true;
+            syncChannel = channel;
+            end = written;
+        }
+        boolean success = false;
+        try {
+            syncChannel.force(false);
+            success = true;
+        } catch (IOException e) {
+            throw new RuntimeException("预写日志刷盘发生异常: " + walDir, e);
+        } finally {
+            synchronized (lock) {
+                syncing = false;
+                if (success) {
+                    synced = Math.max(synced, end);
+                    lastSyncNanos = System.nanoTime();
+                }
+                lock.notifyAll();
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * 记录写入失败时抛出异常，必须持有锁
+     */
+    private void checkLost(long sequence) {
+        Map.Entry<Long, Long> range = lost.floorEntry(sequence);
+        if (range != null && sequence <= range.getValue()) {
+            throw new RuntimeException("写入预写日志发生异常，记录没有写入: " + walDir);
+        }
+    }
+
+    /**
+     * 写入失败时记录丢失的记录序号，并关闭日志文件，下次追加时重新打开并截断写了一部分的尾部，必须持有锁
+     */
+    private void writeFailed(long end) {
+        if (end > written) {
+            lost.put(written + 1, end);
+            written = end;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭预写日志发生异常", e);
+            }
+            channel = null;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, FrameBuffer frames) throws IOException {
+        ByteBuffer data = frames.toByteBuffer();
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private static byte[] encode(byte type, String content) {
+        byte[] payload = content.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(type).put(payload);
+        return frame.array();
+    }
+
+    /**
+     * 打开最后一个日志段用于追加，截断其中不完整的尾部
+     */
+    private void ensureOpen() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        if (!walDir.exists() && !walDir.mkdirs()) {
+            throw new IOException("创建预写日志目录失败: " + walDir.getAbsolutePath());
+        }
+        List<File> segments = listSegments();
+        if (segments.isEmpty()) {
+            segmentIndex = 1;
+            channel = openSegment(segmentIndex);
+            return;
+        }
+        File last = segments.get(segments.size() - 1);
+        segmentIndex = segmentIndex(last);
+        long valid = readSegment(last, (type, content) -> {
+        });
+        channel = openSegment(segmentIndex);
+        if (valid < channel.size()) {
+            logger.warn("预写日志 {} 的尾部不完整，从 {} 截断，丢弃 {} 字节", last.getAbsolutePath(), valid, channel.size() - valid);
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+    }
+
+    /**
+     * 刷盘并关闭当前日志段，切换到新的日志段
+     */
+    private void roll() throws IOException {
+        awaitSync();
+        channel.force(false);
+        channel.close();
+        synced = written;
+        lastSyncNanos = System.nanoTime();
+        channel = openSegment(++segmentIndex);
+    }
+
+    private FileChannel openSegment(int index) throws IOException {
+        File file = new File(walDir, String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 等待其他线程的刷盘结束，必须持有锁
+     */
+    private void awaitSync() {
+        boolean interrupted = false;
+        while (syncing) {
+            interrupted |= waitLock();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 在锁上等待一次，必须持有锁
+     *
+     * @return 是否被中断
+     */
+    private boolean waitLock() {
+        try {
+            lock.wait();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    private List<File> listSegments() {
+        File[] files = walDir.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.sort(Comparator.comparingInt(WalSliceRecorder::segmentIndex));
+        return segments;
+    }
+
+    private static int segmentIndex(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 按顺序重放全部日志段中的有效记录
+     */
+    private void replay(RecordVisitor visitor) {
+        synchronized (lock) {
+            for (File segment : listSegments()) {
+                try {
+                    long valid = readSegment(segment, visitor);
+                    if (valid < segment.length()) {
+                        logger.warn("预写日志 {} 从 {} 开始的 {} 字节不完整或者校验失败，已忽略", segment.getAbsolutePath(), valid, segment.length() - valid);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("读取预写日志发生异常: " + segment.getAbsolutePath(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取日志段中的记录，遇到不完整或者校验失败的记录时停止
+     *
+     * @return 有效记录的结束位置
+     */
+    private static long readSegment(File segment, RecordVisitor visitor) throws IOException {
+        long length = segment.length();
+        long position = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            while (position + HEADER_BYTES <= length) {
+                int size = in.readInt();
+                int checksum = in.readInt();
+                byte type = in.readByte();
+                if (size < 0 || size > MAX_RECORD_BYTES || position + HEADER_BYTES + size > length) {
+                    break;
+                }
+                byte[] payload = new byte[size];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(type);
+                crc.update(payload, 0, size);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                visitor.visit(type, new String(payload, StandardCharsets.UTF_8));
+                position += HEADER_BYTES + size;
+            }
+        }
+        return position;
+    }
+
+    private static <S> Set<Slice<S>> materialize(SliceSource<S> source) {
+        Set<Slice<S>> slices = new LinkedHashSet<>();
+        for (Slice<S> slice : source) {
+            slices.add(slice);
+        }
+        return slices;
+    }
+
+    /**
+     * 可以直接包装内部数组写入文件通道的缓冲区，避免复制
+     */
+    private static class FrameBuffer extends ByteArrayOutputStream {
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(byte type, String content);
+    }
+}
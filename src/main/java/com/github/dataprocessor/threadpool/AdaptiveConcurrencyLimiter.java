@@ -0,0 +1,249 @@
+package com.github.dataprocessor.threadpool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制器，使用加性增、乘性减（AIMD）的方式根据批次的执行耗时调整同时执行的批次数
+ * <p>
+ * 记录批次耗时的最小值作为基准耗时（即目标系统没有压力时的耗时），同时计算最近耗时的平滑平均值：
+ * <ul>
+ * <li>平均耗时没有超过基准耗时的 tolerance 倍时，每成功执行 limit 个批次，并发数加1</li>
+ * <li>平均耗时超过基准耗时的 tolerance 倍或者批次执行失败时，并发数乘以 backoffRatio</li>
+ * </ul>
+ * 为避免同一时刻的多个失败把并发数连续减到最小，两次减少之间至少间隔一个平均耗时
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final double DEFAULT_TOLERANCE = 2.0;
+    private static final double DEFAULT_BACKOFF_RATIO = 0.9;
+    /**
+     * 平均耗时的平滑系数，越大越看重最近的耗时
+     */
+    private static final double SMOOTHING = 0.2;
+    /**
+     * 基准耗时向上漂移的系数，使基准可以缓慢适应目标系统的变化
+     */
+    private static final double BASELINE_DRIFT = 0.001;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final long createdNanos = System.nanoTime();
+    private int limit;
+    private int inFlight;
+    private int successesSinceChange;
+    private double smoothedLatency;
+    private double baselineLatency;
+    private long lastDecreaseNanos;
+    private long completed;
+    private long failed;
+
+    /**
+     * @param minLimit     最小并发数
+     * @param maxLimit     最大并发数
+     * @param initialLimit 初始并发数
+     */
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, int initialLimit) {
+        this(minLimit, maxLimit, initialLimit, DEFAULT_TOLERANCE, DEFAULT_BACKOFF_RATIO);
+    }
+
+    /**
+     * @param minLimit     最小并发数
+     * @param maxLimit     最大并发数
+     * @param initialLimit 初始并发数
+     * @param tolerance    平均耗时超过基准耗时的多少倍时减少并发数，必须大于1
+     * @param backoffRatio 减少并发数时乘以的比例，必须在0和1之间
+     */
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, int initialLimit, double tolerance, double backoffRatio) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("并发数范围不正确, minLimit:" + minLimit + ", maxLimit:" + maxLimit);
+        }
+        if (tolerance <= 1) {
+            throw new IllegalArgumentException("耗时容忍倍数必须大于1, tolerance:" + tolerance);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("减少比例必须在0和1之间, backoffRatio:" + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * 获取一个执行许可，同时执行的批次数达到当前并发数时阻塞
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= limit) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还执行许可并根据本次的执行结果调整并发数
+     *
+     * @param latencyNanos 本次执行的耗时，单位纳秒
+     * @param success      是否执行成功
+     */
+    public void release(long latencyNanos, boolean success) {
+        lock.lock();
+        try {
+            // 只有并发数被用满一半以上时才增加，否则增加并没有意义
+            boolean saturated = inFlight * 2 >= limit;
+            inFlight--;
+            completed++;
+            if (!success) {
+                failed++;
+                decrease();
+            } else {
+                sample(latencyNanos, saturated);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还没有执行的任务（如被取消）的许可，不调整并发数
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sample(long latencyNanos, boolean saturated) {
+        smoothedLatency = smoothedLatency == 0 ? latencyNanos : smoothedLatency * (1 - SMOOTHING) + latencyNanos * SMOOTHING;
+        if (baselineLatency == 0 || latencyNanos < baselineLatency) {
+            baselineLatency = latencyNanos;
+        } else {
+            baselineLatency = baselineLatency * (1 - BASELINE_DRIFT) + latencyNanos * BASELINE_DRIFT;
+        }
+        if (smoothedLatency > baselineLatency * tolerance) {
+            decrease();
+        } else if (saturated && ++successesSinceChange >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+            successesSinceChange = 0;
+        }
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < smoothedLatency) {
+            return;
+        }
+        limit = Math.max(minLimit, (int) (limit * backoffRatio));
+        lastDecreaseNanos = now;
+        successesSinceChange = 0;
+    }
+
+    /**
+     * @return 当前的并发数限制
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 正在执行的批次数
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 最近批次的平均耗时，单位毫秒
+     */
+    public double getLatencyMillis() {
+        lock.lock();
+        try {
+            return smoothedLatency / TimeUnit.MILLISECONDS.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 基准耗时，即观察到的无压力时的耗时，单位毫秒
+     */
+    public double getBaselineLatencyMillis() {
+        lock.lock();
+        try {
+            return baselineLatency / TimeUnit.MILLISECONDS.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 从创建开始平均每秒完成的批次数
+     */
+    public double getThroughput() {
+        long elapsed = System.nanoTime() - createdNanos;
+        lock.lock();
+        try {
+            return elapsed <= 0 ? 0 : completed * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCompleted() {
+        lock.lock();
+        try {
+            return completed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFailed() {
+        lock.lock();
+        try {
+            return failed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveConcurrencyLimiter{limit=" + getLimit() + ", inFlight=" + getInFlight()
+                + ", latencyMillis=" + getLatencyMillis() + ", throughput=" + getThroughput() + "}";
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.dataprocessor.threadpool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分批任务执行引擎
+ * <p>
+ * 整个处理器共享一个有界的线程池，所有分片的批次任务都提交到这个线程池中执行，
+ * 每个分片通过 {@link BatchGroup} 跟踪自己提交的批次是否全部完成，
+ * 因此不再需要为每个分片单独创建和销毁线程池，线程数量也不会随分片数量增长
+ * <p>
+ * 可以设置 {@link AdaptiveConcurrencyLimiter}，根据批次的执行耗时动态调整所有分片同时执行的批次数，
+ * 此时线程池的大小即为并发数的上限
+ * <p>
+ * 可以设置 {@link RetryScheduler}，失败的批次在退避间隔之后重新提交，等待重试期间不占用线程
+ */
+public class BatchExecutor {
+    private final ExecutorService executor;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final RetryScheduler retryScheduler;
+
+    /**
+     * @param executor 所有分片共享的线程池
+     */
+    public BatchExecutor(ExecutorService executor) {
+        this(executor, null);
+    }
+
+    /**
+     * @param executor 所有分片共享的线程池
+     * @param limiter  自适应并发限制器，为null则不限制
+     */
+    public BatchExecutor(ExecutorService executor, AdaptiveConcurrencyLimiter limiter) {
+        this(executor, limiter, null);
+    }
+
+    /**
+     * @param executor       所有分片共享的线程池
+     * @param limiter        自适应并发限制器，为null则不限制
+     * @param retryScheduler 重试调度器，为null则 {@link BatchGroup#submitWithRetry} 不重试
+     */
+    public BatchExecutor(ExecutorService executor, AdaptiveConcurrencyLimiter limiter, RetryScheduler retryScheduler) {
+        if (executor == null) {
+            throw new NullPointerException("线程池不能为空");
+        }
+        this.executor = executor;
+        this.limiter = limiter;
+        this.retryScheduler = retryScheduler;
+    }
+
+    /**
+     * 使用线程池工厂创建共享的线程池
+     *
+     * @param threadPoolFactory 线程池工厂
+     * @param poolSize          线程池大小
+     * @param threadName        线程名称
+     */
+    public BatchExecutor(ThreadPoolFactory threadPoolFactory, int poolSize, String threadName) {
+        this(threadPoolFactory.createThreadPool(poolSize, threadName));
+    }
+
+    /**
+     * 创建一个新的批次任务组，通常每个分片使用一个
+     *
+     * @return 批次任务组
+     */
+    public BatchGroup newGroup() {
+        return newGroup(false);
+    }
+
+    /**
+     * 创建一个新的批次任务组，通常每个分片使用一个
+     *
+     * @param failFast 是否快速失败，若是则第一个任务失败时取消本组还在排队的任务
+     * @return 批次任务组
+     */
+    public BatchGroup newGroup(boolean failFast) {
+        return new BatchGroup(executor, failFast, limiter, retryScheduler);
+    }
+
+    /**
+     * 关闭共享线程池，已提交的任务会继续执行
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 等待共享线程池中的任务全部执行完毕，需要先调用 {@link #shutdown()}
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return 是否在超时之前全部执行完毕
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return 自适应并发限制器，没有设置则返回null
+     */
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @return 重试调度器，没有设置则返回null
+     */
+    public RetryScheduler getRetryScheduler() {
+        return retryScheduler;
+    }
+}
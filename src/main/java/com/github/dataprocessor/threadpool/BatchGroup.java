@@ -0,0 +1,491 @@
+package com.github.dataprocessor.threadpool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 批次任务组，用于跟踪同一个分片提交到共享线程池中的批次任务是否全部完成
+ * <p>
+ * 取代原来每个分片独享线程池时使用的 shutdown()/awaitTermination() 等待方式，
+ * 任务组只等待自己提交的任务，不影响共享线程池中的其他分片
+ * <p>
+ * 每个任务完成时立即按完成的顺序判断结果：抛出异常、返回null或者返回false都视为失败，
+ * 只保留成功和失败的计数，不需要等全部提交完再逐个检查 Future。
+ * 如果开启了快速失败，第一个任务失败时会取消本组中还在排队的任务
+ * <p>
+ * 若设置了 {@link AdaptiveConcurrencyLimiter}，提交任务前需要先获取执行许可，任务完成时归还许可并反馈执行耗时
+ * <p>
+ * 若设置了 {@link RetryScheduler}，通过 {@link #submitWithRetry} 提交的任务失败后在退避间隔之后重新提交到线程池，
+ * 等待期间不占用线程，全部重试结束才算完成；并发限制器的许可在重试期间一直保留。
+ * 不再重试时可以执行降级方法（如拆分批次隔离故障数据），以降级方法的结果作为任务的结果
+ */
+public class BatchGroup {
+    private final ExecutorService executor;
+    private final boolean failFast;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final RetryScheduler retryScheduler;
+    private final Object lock = new Object();
+    /**
+     * 已提交但尚未完成的任务，用于快速失败时取消
+     */
+    private final Set<Future<?>> pendingTasks = ConcurrentHashMap.newKeySet();
+    /**
+     * 已提交但尚未完成的任务数
+     */
+    private int pending;
+    private long succeeded;
+    private long failed;
+    private long cancelled;
+    /**
+     * 第一个失败任务的异常，任务返回null或false时没有异常
+     */
+    private Throwable failure;
+    /**
+     * 失败或被取消的任务的标记，只记录提交时带了标记的任务
+     */
+    private final List<Object> failedTags = new ArrayList<>();
+    /**
+     * 任务完成时的回调，参数为任务的标记和是否成功
+     */
+    private volatile BiConsumer<Object, Boolean> listener;
+
+    BatchGroup(ExecutorService executor, boolean failFast, AdaptiveConcurrencyLimiter limiter, RetryScheduler retryScheduler) {
+        this.executor = executor;
+        this.failFast = failFast;
+        this.limiter = limiter;
+        this.retryScheduler = retryScheduler;
+    }
+
+    /**
+     * 提交一个批次任务到共享线程池
+     * <p>
+     * 若开启了快速失败且本组已经有任务失败，则新提交的任务会被直接取消；
+     * 若设置了并发限制器，同时执行的批次数达到限制时阻塞，阻塞时被中断则任务被取消
+     *
+     * @param callable 批次任务
+     * @param <V>      任务返回值类型
+     * @return 任务提交到线程池后返回的 Future 类
+     */
+    public <V> Future<V> submit(Callable<V> callable) {
+        return submit(callable, null);
+    }
+
+    /**
+     * 提交一个带标记的批次任务到共享线程池，任务失败或者被取消时可以通过 {@link #getFailedTags()} 获取其标记
+     *
+     * @param callable 批次任务
+     * @param tag      任务的标记，如批次的范围，可以为null
+     * @param <V>      任务返回值类型
+     * @return 任务提交到线程池后返回的 Future 类
+     */
+    public <V> Future<V> submit(Callable<V> callable, Object tag) {
+        return submit(new BatchTask<>(callable, tag));
+    }
+
+    /**
+     * 提交一个失败时会重试的批次任务，抛出异常视为失败，不接受null返回值时返回null也视为失败
+     * <p>
+     * 没有设置重试调度器时与 {@link #submit(Callable, Object)} 相同，只执行一次
+     *
+     * @param callable      批次任务
+     * @param tag           任务的标记，可以为null
+     * @param retryNullable 是否接受null返回值
+     * @param <V>           任务返回值类型
+     * @return 任务提交到线程池后返回的 Future 类，全部重试结束后才完成
+     */
+    public <V> Future<V> submitWithRetry(Callable<V> callable, Object tag, boolean retryNullable) {
+        return submitWithRetry(callable, tag, retryNullable, null);
+    }
+
+    /**
+     * 提交一个失败时会重试的批次任务，不再重试时执行降级方法，以降级方法的结果作为任务的结果
+     * <p>
+     * 降级方法在执行最后一次失败的线程中同步执行
+     *
+     * @param callable      批次任务
+     * @param tag           任务的标记，可以为null
+     * @param retryNullable 是否接受null返回值
+     * @param fallback      降级方法，参数为最后一次执行抛出的异常，为null则不降级
+     * @param <V>           任务返回值类型
+     * @return 任务提交到线程池后返回的 Future 类，全部重试（以及降级）结束后才完成
+     */
+    public <V> Future<V> submitWithRetry(Callable<V> callable, Object tag, boolean retryNullable, Fallback<V> fallback) {
+        if (retryScheduler == null) {
+            if (fallback == null) {
+                return submit(callable, tag);
+            }
+            return submit(() -> {
+                Exception failure = null;
+                try {
+                    V v = callable.call();
+                    if (v != null || retryNullable) {
+                        return v;
+                    }
+                } catch (Exception e) {
+                    failure = e;
+                }
+                return fallback.call(failure);
+            }, tag);
+        }
+        retryScheduler.recordCall();
+        return submit(new RetryingBatchTask<>(callable, tag, retryNullable, fallback));
+    }
+
+    private <V> Future<V> submit(BatchTask<V> task) {
+        synchronized (lock) {
+            pending++;
+        }
+        pendingTasks.add(task);
+        if (failFast && isFailed()) {
+            task.cancel(false);
+            return task;
+        }
+        if (limiter != null) {
+            try {
+                limiter.acquire();
+                task.permitted = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                task.cancel(false);
+                return task;
+            }
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.cancel(false);
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * 等待本组已提交的任务全部完成（包括被取消的）
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public void await() throws InterruptedException {
+        synchronized (lock) {
+            while (pending > 0) {
+                lock.wait();
+            }
+        }
+    }
+
+    /**
+     * 取消本组中还没有开始执行（包括等待重试）的任务，正在执行的任务不会被取消，执行结束后照常记录结果，
+     * 因此 {@link #await()} 仍会等待正在执行的任务
+     * <p>
+     * 被取消的任务视为失败
+     */
+    public void cancel() {
+        for (Future<?> task : pendingTasks) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * @return 是否有任务失败或者被取消
+     */
+    public boolean isFailed() {
+        synchronized (lock) {
+            return failed > 0 || cancelled > 0;
+        }
+    }
+
+    /**
+     * @return 已提交但尚未完成的任务数
+     */
+    public int getPending() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    public long getSucceeded() {
+        synchronized (lock) {
+            return succeeded;
+        }
+    }
+
+    public long getFailed() {
+        synchronized (lock) {
+            return failed;
+        }
+    }
+
+    public long getCancelled() {
+        synchronized (lock) {
+            return cancelled;
+        }
+    }
+
+    /**
+     * @return 第一个失败任务抛出的异常，没有异常则返回null
+     */
+    public Throwable getFailure() {
+        synchronized (lock) {
+            return failure;
+        }
+    }
+
+    /**
+     * @return 失败或被取消的任务的标记
+     */
+    public List<Object> getFailedTags() {
+        synchronized (lock) {
+            return new ArrayList<>(failedTags);
+        }
+    }
+
+    /**
+     * 设置任务完成时的回调，被取消的任务也会回调，必须在提交任务之前设置
+     *
+     * @param listener 回调，参数为提交任务时的标记和任务是否成功
+     */
+    public void setListener(BiConsumer<Object, Boolean> listener) {
+        this.listener = listener;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    private void complete(BatchTask<?> task) {
+        pendingTasks.remove(task);
+        Object tag = task.tag;
+        boolean cancel = false;
+        boolean taskSucceeded;
+        synchronized (lock) {
+            long failedBefore = failed + cancelled;
+            if (task.isCancelled()) {
+                cancelled++;
+            } else {
+                try {
+                    Object obj = task.get();
+                    // 返回值为null则说明执行失败
+                    if (obj == null || Objects.equals(obj, false)) {
+                        failed++;
+                    } else {
+                        succeeded++;
+                    }
+                } catch (ExecutionException e) {
+                    failed++;
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    // 任务已完成，get() 不会阻塞
+                    Thread.currentThread().interrupt();
+                }
+                cancel = failFast && failed == 1;
+            }
+            taskSucceeded = failed + cancelled == failedBefore;
+            if (tag != null && !taskSucceeded) {
+                failedTags.add(tag);
+            }
+        }
+        releasePermit(task, taskSucceeded);
+        // 先回调再减少计数，保证 await() 返回时所有回调都已执行完毕
+        try {
+            BiConsumer<Object, Boolean> l = listener;
+            if (l != null) {
+                l.accept(tag, taskSucceeded);
+            }
+        } finally {
+            synchronized (lock) {
+                pending--;
+                if (pending <= 0) {
+                    lock.notifyAll();
+                }
+            }
+        }
+        if (cancel) {
+            cancel();
+        }
+    }
+
+    private void releasePermit(BatchTask<?> task, boolean taskSucceeded) {
+        if (limiter == null || !task.permitted) {
+            return;
+        }
+        if (task.startNanos == 0 || task.isCancelled()) {
+            // 没有执行或者被取消的任务不能反映目标系统的耗时
+            limiter.release();
+        } else {
+            limiter.release(System.nanoTime() - task.startNanos, taskSucceeded);
+        }
+    }
+
+    /**
+     * 不再重试时执行的降级方法
+     *
+     * @param <V> 任务返回值类型
+     */
+    @FunctionalInterface
+    public interface Fallback<V> {
+
+        /**
+         * @param failure 最后一次执行抛出的异常，返回null值而失败时为null
+         * @return 作为任务结果的返回值
+         * @throws Exception 降级失败时抛出，作为任务的异常
+         */
+        V call(Throwable failure) throws Exception;
+    }
+
+    /**
+     * 批次任务，完成时（包括被取消）立即记录结果
+     */
+    private class BatchTask<V> extends FutureTask<V> {
+        private static final int IDLE = 0;
+        private static final int RUNNING = 1;
+        private static final int CANCELLED = 2;
+        private final Object tag;
+        /**
+         * 是否已从并发限制器获取了许可
+         */
+        private volatile boolean permitted;
+        volatile long startNanos;
+        /**
+         * 执行状态，正在执行的任务不能被取消，否则任务还在执行时就会记录结果并归还许可
+         */
+        private final AtomicInteger runState = new AtomicInteger(IDLE);
+
+        BatchTask(Callable<V> callable, Object tag) {
+            super(callable);
+            this.tag = tag;
+        }
+
+        @Override
+        public final void run() {
+            if (!runState.compareAndSet(IDLE, RUNNING)) {
+                return;
+            }
+            Runnable next;
+            try {
+                startNanos = System.nanoTime();
+                next = runOnce();
+            } finally {
+                runState.compareAndSet(RUNNING, IDLE);
+            }
+            // 恢复为未执行状态之后才能安排重试，否则重新提交的任务可能在状态恢复之前执行而被忽略
+            if (next != null) {
+                next.run();
+            }
+        }
+
+        /**
+         * 执行一次任务
+         *
+         * @return 本次执行结束并恢复为未执行状态之后的动作，没有则返回null
+         */
+        Runnable runOnce() {
+            super.run();
+            return null;
+        }
+
+        /**
+         * 只取消还没有开始执行的任务，正在执行的任务返回false
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!runState.compareAndSet(IDLE, CANCELLED)) {
+                return false;
+            }
+            return super.cancel(false);
+        }
+
+        @Override
+        protected void done() {
+            complete(this);
+        }
+    }
+
+    /**
+     * 失败时会重试的批次任务，每次执行只执行一次，失败后由重试调度器在退避间隔之后重新提交，
+     * 成功或者不再重试时才设置结果
+     */
+    private class RetryingBatchTask<V> extends BatchTask<V> {
+        private final Callable<V> callable;
+        private final boolean retryNullable;
+        private final Fallback<V> fallback;
+        private volatile int attempts;
+
+        RetryingBatchTask(Callable<V> callable, Object tag, boolean retryNullable, Fallback<V> fallback) {
+            super(callable, tag);
+            this.callable = callable;
+            this.retryNullable = retryNullable;
+            this.fallback = fallback;
+        }
+
+        @Override
+        Runnable runOnce() {
+            // 等待重试期间被取消
+            if (isDone()) {
+                return null;
+            }
+            attempts++;
+            Throwable failure = null;
+            try {
+                V v = callable.call();
+                if (v != null || retryNullable) {
+                    set(v);
+                    return null;
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+            long delay = retryScheduler.retryDelay(attempts, failure);
+            if (delay < 0) {
+                finish(failure);
+                return null;
+            }
+            Throwable lastFailure = failure;
+            return () -> {
+                try {
+                    retryScheduler.schedule(this::resubmit, delay);
+                } catch (RejectedExecutionException e) {
+                    finish(lastFailure == null ? e : lastFailure);
+                }
+            };
+        }
+
+        private void resubmit() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                setException(e);
+            }
+        }
+
+        private void finish(Throwable failure) {
+            if (fallback != null) {
+                try {
+                    set(fallback.call(failure));
+                } catch (Throwable e) {
+                    if (failure != null && failure != e) {
+                        e.addSuppressed(failure);
+                    }
+                    setException(e);
+                }
+                return;
+            }
+            if (failure == null) {
+                set(null);
+            } else {
+                setException(failure);
+            }
+        }
+    }
+}
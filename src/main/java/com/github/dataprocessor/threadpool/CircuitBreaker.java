@@ -0,0 +1,289 @@
+package com.github.dataprocessor.threadpool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 熔断器，所有分片共享，用于保护数据来源或者处理目标
+ * <p>
+ * 连续失败次数达到阈值，或者最近 windowSize 次调用的失败比例达到阈值时打开，打开期间调用不会被执行而是等待；
+ * 打开 openMillis 之后放行一次探测调用（半开），探测成功则关闭并恢复所有调用，失败则再次打开。
+ * 只有探测调用的结果决定半开之后的状态，打开之前就已经开始的调用完成时不影响状态
+ * 因此目标系统短暂不可用时，处理只是暂停，而不是所有分片都失败后需要重新处理
+ * <p>
+ * 打开的时间超过 maxWaitMillis 时等待的调用抛出 {@link CircuitBreakerOpenException}，避免目标系统长时间不可用时任务一直挂起
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    public static final int DEFAULT_CONSECUTIVE_FAILURES = 5;
+    public static final double DEFAULT_FAILURE_RATE = 0.5;
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final long DEFAULT_OPEN_MILLIS = 10_000;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30 * 60_000;
+
+    /**
+     * 熔断器的状态
+     */
+    public enum State {
+        /**
+         * 关闭，正常调用
+         */
+        CLOSED,
+        /**
+         * 打开，调用需要等待
+         */
+        OPEN,
+        /**
+         * 半开，正在进行探测调用
+         */
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int consecutiveFailureThreshold;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final long maxWaitMillis;
+    /**
+     * 最近的调用结果，true 为失败
+     */
+    private final boolean[] window;
+    private int windowPos;
+    private int windowCount;
+    private int windowFailures;
+    private int consecutiveFailures;
+    private State state = State.CLOSED;
+    private long openUntilNanos;
+    private long trips;
+    /**
+     * 状态的代数，每次打开和进入半开时加1。调用开始时记录当前代数，完成时代数已经变化说明是状态变化之前开始的调用，
+     * 其结果不影响状态；半开时只有探测调用与当前代数相同
+     */
+    private long generation;
+
+    /**
+     * 使用默认的阈值：连续失败5次或者最近20次调用失败一半时打开，打开10秒后探测，最长等待30分钟
+     *
+     * @param name 名称，用于日志
+     */
+    public CircuitBreaker(String name) {
+        this(name, DEFAULT_CONSECUTIVE_FAILURES, DEFAULT_FAILURE_RATE, DEFAULT_WINDOW_SIZE, DEFAULT_OPEN_MILLIS, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param name                        名称，用于日志
+     * @param consecutiveFailureThreshold 连续失败多少次时打开
+     * @param failureRateThreshold        最近 windowSize 次调用的失败比例达到多少时打开，取值 (0, 1]
+     * @param windowSize                  统计失败比例的调用次数
+     * @param openMillis                  打开多久之后放行探测调用，单位毫秒
+     * @param maxWaitMillis               调用最长等待多久，超过则抛出异常，单位毫秒
+     * @throws IllegalArgumentException 参数不合法时抛出
+     */
+    public CircuitBreaker(String name, int consecutiveFailureThreshold, double failureRateThreshold, int windowSize,
+                          long openMillis, long maxWaitMillis) {
+        if (consecutiveFailureThreshold <= 0 || windowSize <= 0) {
+            throw new IllegalArgumentException("连续失败次数和统计窗口必须大于0");
+        }
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+            throw new IllegalArgumentException("失败比例必须在0到1之间, failureRateThreshold:" + failureRateThreshold);
+        }
+        if (openMillis < 0 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("打开时间和最长等待时间不能为负数");
+        }
+        this.name = name;
+        this.consecutiveFailureThreshold = consecutiveFailureThreshold;
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[windowSize];
+        this.openMillis = openMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * 通过熔断器执行调用，抛出异常视为失败
+     *
+     * @param callable      被执行的方法
+     * @param nullIsFailure 返回null是否视为失败
+     * @param <V>           返回值类型
+     * @return 被执行的方法的返回值
+     * @throws Exception                   被执行的方法抛出的异常，或者等待时被中断
+     * @throws CircuitBreakerOpenException 等待超过最长等待时间时抛出
+     */
+    public <V> V call(Callable<V> callable, boolean nullIsFailure) throws Exception {
+        return call(callable, v -> nullIsFailure && v == null);
+    }
+
+    /**
+     * 通过熔断器执行调用，抛出异常或者返回值满足失败条件视为失败
+     *
+     * @param callable  被执行的方法
+     * @param isFailure 根据返回值判断调用是否失败
+     * @param <V>       返回值类型
+     * @return 被执行的方法的返回值
+     * @throws Exception                   被执行的方法抛出的异常，或者等待时被中断
+     * @throws CircuitBreakerOpenException 等待超过最长等待时间时抛出
+     */
+    public <V> V call(Callable<V> callable, Predicate<? super V> isFailure) throws Exception {
+        long ticket = acquire();
+        boolean failed = true;
+        try {
+            V v = callable.call();
+            failed = isFailure.test(v);
+            return v;
+        } finally {
+            if (failed) {
+                onFailure(ticket);
+            } else {
+                onSuccess(ticket);
+            }
+        }
+    }
+
+    /**
+     * 等待熔断器可以放行调用：关闭，或者打开的时间已到可以探测。用于在熔断期间暂停启动分片和获取分页，
+     * 本方法不进行探测，探测由之后的调用完成
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public synchronized void awaitReady() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        boolean logged = false;
+        while (state == State.HALF_OPEN || (state == State.OPEN && openUntilNanos - System.nanoTime() > 0)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            if (!logged) {
+                logger.info("熔断器 {} 已打开，暂停等待", name);
+                logged = true;
+            }
+            long waitNanos = state == State.OPEN ? Math.min(remaining, openUntilNanos - System.nanoTime()) : remaining;
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+        }
+    }
+
+    /**
+     * @return 放行时的代数，调用完成时用于判断是否是状态变化之前开始的调用
+     */
+    private synchronized long acquire() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        while (!tryAcquire()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new CircuitBreakerOpenException("熔断器 " + name + " 打开的时间超过最长等待时间: " + maxWaitMillis + "ms");
+            }
+            long waitNanos = state == State.OPEN ? Math.min(remaining, openUntilNanos - System.nanoTime()) : remaining;
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+        }
+        return generation;
+    }
+
+    private boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (openUntilNanos - System.nanoTime() <= 0) {
+                    state = State.HALF_OPEN;
+                    generation++;
+                    logger.info("熔断器 {} 进入半开状态，开始探测", name);
+                    return true;
+                }
+                return false;
+            default:
+                // 半开时只放行一个探测调用
+                return false;
+        }
+    }
+
+    private synchronized void onSuccess(long ticket) {
+        if (ticket != generation) {
+            // 打开之前开始的调用，不影响状态
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            logger.info("熔断器 {} 探测成功，恢复调用", name);
+            state = State.CLOSED;
+            resetWindow();
+            notifyAll();
+        } else if (state == State.CLOSED) {
+            consecutiveFailures = 0;
+            record(false);
+        }
+    }
+
+    private synchronized void onFailure(long ticket) {
+        if (ticket != generation) {
+            // 打开之前开始的调用，不影响状态
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            logger.warn("熔断器 {} 探测失败，{}ms 后再次探测", name, openMillis);
+            open();
+        } else if (state == State.CLOSED) {
+            consecutiveFailures++;
+            record(true);
+            if (consecutiveFailures >= consecutiveFailureThreshold
+                    || (windowCount == window.length && windowFailures >= failureRateThreshold * window.length)) {
+                logger.warn("熔断器 {} 打开，连续失败次数: {}, 最近 {} 次调用失败次数: {}, {}ms 后探测",
+                        name, consecutiveFailures, windowCount, windowFailures, openMillis);
+                trips++;
+                open();
+            }
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        generation++;
+        openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMillis);
+        resetWindow();
+        notifyAll();
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length && window[windowPos]) {
+            windowFailures--;
+        }
+        window[windowPos] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPos = (windowPos + 1) % window.length;
+        windowCount = Math.min(window.length, windowCount + 1);
+    }
+
+    private void resetWindow() {
+        windowPos = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return 从关闭状态打开的次数
+     */
+    public synchronized long getTrips() {
+        return trips;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" +
+                "name='" + name + '\'' +
+                ", state=" + state +
+                ", trips=" + trips +
+                '}';
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.dataprocessor.threadpool;
+
+/**
+ * 熔断器打开的时间超过最长等待时间时抛出，此时调用不会被执行
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.dataprocessor.threadpool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在途数据预算，限制所有分片已提交但还没有处理完的数据总量，避免来源获取得比处理快时无限占用内存
+ * <p>
+ * 可以同时限制数据条数和估算的字节数，批次提交前获取预算，超出预算时阻塞，批次完成（包括失败和被取消）时归还。
+ * 当前没有在途数据时总是允许获取，因此单个批次超过预算也不会死锁
+ */
+public class InFlightBudget {
+    private final long maxRecords;
+    private final long maxBytes;
+    private long records;
+    private long bytes;
+    private long peakRecords;
+    private long peakBytes;
+    private long waits;
+    private long waitNanos;
+
+    /**
+     * @param maxRecords 在途数据条数的上限，小于等于0则不限制
+     * @param maxBytes   在途数据估算字节数的上限，小于等于0则不限制
+     * @throws IllegalArgumentException 两个上限都不限制时抛出
+     */
+    public InFlightBudget(long maxRecords, long maxBytes) {
+        if (maxRecords <= 0 && maxBytes <= 0) {
+            throw new IllegalArgumentException("数据条数和字节数至少需要限制一个, maxRecords:" + maxRecords + ", maxBytes:" + maxBytes);
+        }
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取预算，超出预算时阻塞直到有批次完成归还预算
+     *
+     * @param records 数据条数
+     * @param bytes   估算的字节数
+     * @throws InterruptedException 等待时被中断
+     */
+    public synchronized void acquire(long records, long bytes) throws InterruptedException {
+        if (!fits(records, bytes)) {
+            waits++;
+            long start = System.nanoTime();
+            try {
+                while (!fits(records, bytes)) {
+                    wait();
+                }
+            } finally {
+                waitNanos += System.nanoTime() - start;
+            }
+        }
+        this.records += records;
+        this.bytes += bytes;
+        peakRecords = Math.max(peakRecords, this.records);
+        peakBytes = Math.max(peakBytes, this.bytes);
+    }
+
+    /**
+     * 归还预算，必须与 {@link #acquire(long, long)} 的参数相同
+     *
+     * @param records 数据条数
+     * @param bytes   估算的字节数
+     */
+    public synchronized void release(long records, long bytes) {
+        this.records -= records;
+        this.bytes -= bytes;
+        notifyAll();
+    }
+
+    private boolean fits(long records, long bytes) {
+        if (this.records <= 0 && this.bytes <= 0) {
+            return true;
+        }
+        return (maxRecords <= 0 || this.records + records <= maxRecords)
+                && (maxBytes <= 0 || this.bytes + bytes <= maxBytes);
+    }
+
+    public long getMaxRecords() {
+        return maxRecords;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return 当前在途的数据条数
+     */
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return 当前在途数据的估算字节数
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getPeakRecords() {
+        return peakRecords;
+    }
+
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * @return 因超出预算而等待的次数
+     */
+    public synchronized long getWaits() {
+        return waits;
+    }
+
+    /**
+     * @return 因超出预算而等待的总时间，单位毫秒
+     */
+    public synchronized long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "InFlightBudget{records=" + getRecords() + ", bytes=" + getBytes() + ", peakRecords=" + getPeakRecords()
+                + ", peakBytes=" + getPeakBytes() + ", waits=" + getWaits() + ", waitMillis=" + getWaitMillis() + "}";
+    }
+}
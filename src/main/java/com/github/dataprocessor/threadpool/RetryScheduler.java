@@ -0,0 +1,226 @@
+package com.github.dataprocessor.threadpool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重试调度器，失败的调用按指数退避加随机抖动的间隔重试，并通过重试预算限制重试的总量
+ * <p>
+ * 批次任务的重试通过 {@link BatchGroup#submitWithRetry} 提交：失败后在定时线程中等待退避间隔，
+ * 到期后交给单独的转交线程重新提交到批次线程池，等待期间不占用批次线程；随机抖动使同时失败的批次不会在同一时刻一起重试。
+ * 批次线程池满时阻塞的是转交线程而不是定时线程，其他重试的退避计时不受影响
+ * <p>
+ * 重试预算：每次新的调用存入 budgetRatio 个令牌，每次重试取出一个令牌，令牌不足时不再重试而直接失败，
+ * 因此长期来看重试次数不超过调用次数的 budgetRatio 倍（加上最多 {@link #MAX_BUDGET_TOKENS} 个令牌的初始余量），
+ * 目标系统故障时不会因为大量重试而雪上加霜
+ */
+public class RetryScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+    /**
+     * 令牌的最大余量，也是初始的令牌数
+     */
+    public static final int MAX_BUDGET_TOKENS = 100;
+    /**
+     * 令牌以千分之一为单位保存，避免使用浮点数的原子操作
+     */
+    private static final long TOKEN_UNIT = 1000;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long depositPerCall;
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET_TOKENS * TOKEN_UNIT);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejectedRetries = new AtomicLong();
+    private final ScheduledThreadPoolExecutor timer;
+    /**
+     * 转交线程，把到期的重试提交到批次线程池，队列无界，因此定时线程把重试交给它时不会阻塞
+     */
+    private final ExecutorService handoff;
+
+    /**
+     * @param maxAttempts     最多执行的次数（包括第一次）
+     * @param baseDelayMillis 第一次重试前的退避间隔，之后每次翻倍
+     * @param maxDelayMillis  退避间隔的上限
+     * @param budgetRatio     重试预算，即重试次数与调用次数的比例上限，如0.2表示最多20%
+     * @throws IllegalArgumentException 参数不合法时抛出
+     */
+    public RetryScheduler(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double budgetRatio) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("执行次数必须大于0, maxAttempts:" + maxAttempts);
+        }
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("退避间隔不能小于0且上限不能小于初始间隔, baseDelayMillis:" + baseDelayMillis + ", maxDelayMillis:" + maxDelayMillis);
+        }
+        if (!(budgetRatio > 0)) {
+            throw new IllegalArgumentException("重试预算必须大于0, budgetRatio:" + budgetRatio);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.depositPerCall = Math.max(1, Math.round(budgetRatio * TOKEN_UNIT));
+        this.handoff = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "retry-handoff");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "retry-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }) {
+            @Override
+            protected void terminated() {
+                // 已经安排的重试都交给转交线程之后才关闭转交线程
+                handoff.shutdown();
+            }
+        };
+    }
+
+    /**
+     * 同步执行并在失败时重试，退避期间阻塞当前线程，用于在分片启动线程中获取分页等不占用批次线程的调用
+     *
+     * @param callable      被执行的方法
+     * @param retryNullable 是否接受null返回值，若否则返回null时也会重试
+     * @param <T>           返回值类型
+     * @return 被执行的方法的返回值，重试之后仍然返回null则返回null
+     * @throws Exception 不再重试时最后一次执行抛出的异常，或者退避时被中断
+     */
+    public <T> T call(Callable<T> callable, boolean retryNullable) throws Exception {
+        recordCall();
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            Exception failure = null;
+            try {
+                T t = callable.call();
+                if (t != null || retryNullable) {
+                    return t;
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            long delay = retryDelay(attempts, failure);
+            if (delay < 0) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return null;
+            }
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
+    }
+
+    /**
+     * 记录一次新的调用，存入重试预算
+     */
+    void recordCall() {
+        calls.incrementAndGet();
+        budget.getAndUpdate(b -> Math.min(MAX_BUDGET_TOKENS * TOKEN_UNIT, b + depositPerCall));
+    }
+
+    /**
+     * 判断失败的调用是否可以重试，可以则取出一个令牌并返回退避间隔
+     *
+     * @param attempts 已经执行的次数
+     * @param failure  最后一次执行抛出的异常，返回null值时为null
+     * @return 退避间隔，不再重试时返回-1
+     */
+    long retryDelay(int attempts, Throwable failure) {
+        if (attempts >= maxAttempts) {
+            logger.error("执行失败且已达到最大执行次数: " + attempts, failure);
+            return -1;
+        }
+        if (budget.getAndUpdate(b -> b >= TOKEN_UNIT ? b - TOKEN_UNIT : b) < TOKEN_UNIT) {
+            rejectedRetries.incrementAndGet();
+            logger.error("执行失败且重试预算已用完，不再重试，已执行次数: " + attempts, failure);
+            return -1;
+        }
+        retries.incrementAndGet();
+        long delay = backoffMillis(attempts);
+        logger.warn("第{}次执行失败，{}ms后重试: {}", attempts, delay, failure == null ? "返回值为空" : failure.toString());
+        return delay;
+    }
+
+    /**
+     * 带随机抖动的指数退避间隔：上限为 baseDelayMillis * 2^(attempts-1)（不超过 maxDelayMillis），
+     * 取上限的一半加上 [0, 一半) 之间的随机数
+     *
+     * @param attempts 已经执行的次数
+     * @return 退避间隔，毫秒
+     */
+    long backoffMillis(int attempts) {
+        long cap = baseDelayMillis;
+        for (int i = 1; i < attempts && cap < maxDelayMillis; i++) {
+            cap <<= 1;
+        }
+        cap = Math.min(cap, maxDelayMillis);
+        long half = cap / 2;
+        return half + (cap - half <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap - half));
+    }
+
+    /**
+     * 在退避间隔之后由转交线程执行任务，任务（如提交到批次线程池）阻塞时不影响其他重试的计时
+     *
+     * @param task        任务
+     * @param delayMillis 退避间隔
+     */
+    void schedule(Runnable task, long delayMillis) {
+        timer.schedule(() -> {
+            try {
+                handoff.execute(task);
+            } catch (RejectedExecutionException e) {
+                // 转交线程只在定时线程结束后才关闭，正常不会发生
+                task.run();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 关闭定时线程和转交线程，已经安排的重试仍会执行
+     */
+    public void shutdown() {
+        timer.shutdown();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return 新的调用次数（不包括重试）
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return 因为重试预算用完而没有重试的次数
+     */
+    public long getRejectedRetries() {
+        return rejectedRetries.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RetryScheduler{" +
+                "calls=" + calls.get() +
+                ", retries=" + retries.get() +
+                ", rejectedRetries=" + rejectedRetries.get() +
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.dataprocessor.threadpool;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用信号量限制并发数的线程池包装类
+ * <p>
+ * 被包装的线程池（如每个任务一个虚拟线程的线程池）本身不限制并发数，
+ * 提交任务时先获取许可，许可用完时阻塞提交者，任务执行完毕后归还许可，
+ * 效果与 {@link BlockRejectedExecutionHandler} 的阻塞式提交一致
+ */
+public class SemaphoreExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final Semaphore semaphore;
+    private final int maxConcurrency;
+
+    /**
+     * @param delegate       实际执行任务的线程池
+     * @param maxConcurrency 最大并发数
+     */
+    public SemaphoreExecutorService(ExecutorService delegate, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("最大并发数必须大于0, maxConcurrency:" + maxConcurrency);
+        }
+        this.delegate = delegate;
+        this.maxConcurrency = maxConcurrency;
+        this.semaphore = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * 获取许可后提交任务，没有许可时阻塞
+     *
+     * @throws RejectedExecutionException 线程池已关闭或者等待许可时被中断
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (delegate.isShutdown()) {
+            throw new RejectedExecutionException("线程池已关闭，不再执行此任务:" + command);
+        }
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("等待执行许可时被中断:" + command, e);
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    semaphore.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 正在执行的任务数
+     */
+    public int getActiveCount() {
+        return maxConcurrency - semaphore.availablePermits();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
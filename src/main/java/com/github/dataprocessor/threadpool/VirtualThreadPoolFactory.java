@@ -0,0 +1,126 @@
+package com.github.dataprocessor.threadpool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程池工厂，适用于数据库查询、HTTP/ES写入等IO密集型的任务
+ * <p>
+ * 在支持虚拟线程的JDK（21及以上）上，每个任务使用一个虚拟线程执行，并发数由信号量而不是平台线程数限制，
+ * 因此可以有成千上万个同时执行的批次而不需要同样数量的操作系统线程。
+ * 建议的线程池大小即为信号量的许可数，也可以在构造时统一指定。
+ * <p>
+ * 在不支持虚拟线程的JDK（如Java 8）上，退回使用 {@link DefaultThreadPoolFactory} 创建固定大小的线程池，
+ * 为避免创建过多的平台线程，此时线程池大小不超过 fallbackMaxPoolSize
+ */
+public class VirtualThreadPoolFactory implements ThreadPoolFactory {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPoolFactory.class);
+    /**
+     * 不支持虚拟线程时，线程池大小的默认上限
+     */
+    private static final int DEFAULT_FALLBACK_MAX_POOL_SIZE = 128;
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final boolean SUPPORTED;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newExecutor = null;
+        boolean supported = false;
+        try {
+            // 编译目标为Java 8，只能通过反射使用虚拟线程的API
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // 预览版本的JDK在没有开启预览特性时调用会抛出异常
+            ofVirtual.invoke(null);
+            supported = true;
+        } catch (Throwable e) {
+            logger.debug("当前JDK不支持虚拟线程: {}", e.toString());
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newExecutor;
+        SUPPORTED = supported;
+    }
+
+    /**
+     * 最大并发数，小于等于0时使用建议的线程池大小
+     */
+    private final int maxConcurrency;
+    private final int fallbackMaxPoolSize;
+    private final ThreadPoolFactory fallbackFactory;
+
+    /**
+     * 使用建议的线程池大小作为最大并发数
+     */
+    public VirtualThreadPoolFactory() {
+        this(0);
+    }
+
+    /**
+     * @param maxConcurrency 每个线程池的最大并发数，小于等于0时使用建议的线程池大小
+     */
+    public VirtualThreadPoolFactory(int maxConcurrency) {
+        this(maxConcurrency, DEFAULT_FALLBACK_MAX_POOL_SIZE, new DefaultThreadPoolFactory());
+    }
+
+    /**
+     * @param maxConcurrency      每个线程池的最大并发数，小于等于0时使用建议的线程池大小
+     * @param fallbackMaxPoolSize 不支持虚拟线程时线程池大小的上限
+     * @param fallbackFactory     不支持虚拟线程时使用的线程池工厂
+     */
+    public VirtualThreadPoolFactory(int maxConcurrency, int fallbackMaxPoolSize, ThreadPoolFactory fallbackFactory) {
+        if (fallbackMaxPoolSize <= 0) {
+            throw new IllegalArgumentException("线程池大小的上限必须大于0, fallbackMaxPoolSize:" + fallbackMaxPoolSize);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.fallbackMaxPoolSize = fallbackMaxPoolSize;
+        this.fallbackFactory = fallbackFactory;
+    }
+
+    /**
+     * @return 当前JDK是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * 生成使用虚拟线程的线程池，并发数由信号量限制，不支持虚拟线程时生成固定大小的平台线程池
+     *
+     * @param suggestPoolSize 建议线程池大小，即最大并发数
+     * @param threadName      线程池生成的线程名称
+     * @return 线程池
+     */
+    @Override
+    public ExecutorService createThreadPool(int suggestPoolSize, String threadName) {
+        int concurrency = maxConcurrency > 0 ? maxConcurrency : suggestPoolSize;
+        if (!SUPPORTED) {
+            int poolSize = Math.min(concurrency, fallbackMaxPoolSize);
+            logger.info("当前JDK不支持虚拟线程，使用平台线程池，线程数: {}", poolSize);
+            return fallbackFactory.createThreadPool(poolSize, threadName);
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, threadName + "-", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            ExecutorService executor = (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+            return new SemaphoreExecutorService(executor, concurrency);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程池失败", e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.dataprocessor;
+
+import com.github.dataprocessor.slice.PageCursor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试分页检查点跟踪器的乱序确认和失败后不再保留后续的页
+ */
+public class PageCheckpointTrackerTest {
+
+    @Test
+    public void advanceInOrder() {
+        List<Integer> checkpoints = new ArrayList<>();
+        PageCheckpointTracker tracker = new PageCheckpointTracker(cursor -> checkpoints.add(cursor.getCurrentPage()));
+        long first = tracker.register(new PageCursor(0, 10), 2);
+        long second = tracker.register(new PageCursor(1, 10), 1);
+        // 后面的页先完成时检查点不能推进
+        tracker.ack(second, true);
+        tracker.ack(first, true);
+        assertEquals(0, checkpoints.size());
+        tracker.ack(first, true);
+        assertEquals(1, checkpoints.size());
+        assertEquals(1, (int) checkpoints.get(0));
+        assertEquals(0, tracker.getTrackedPages());
+    }
+
+    @Test
+    public void dropPagesAfterFailure() {
+        List<Integer> checkpoints = new ArrayList<>();
+        PageCheckpointTracker tracker = new PageCheckpointTracker(cursor -> checkpoints.add(cursor.getCurrentPage()));
+        long first = tracker.register(new PageCursor(0, 10), 1);
+        long second = tracker.register(new PageCursor(1, 10), 1);
+        tracker.register(new PageCursor(2, 10), 1);
+        tracker.ack(second, false);
+        // 失败页及其之后的页不再跟踪，之后登记的页也不再保留
+        assertEquals(1, tracker.getTrackedPages());
+        for (int i = 3; i < 100; i++) {
+            tracker.ack(tracker.register(new PageCursor(i, 10), 1), true);
+        }
+        assertEquals(1, tracker.getTrackedPages());
+        assertEquals(0, checkpoints.size());
+        // 失败页之前的页仍然可以确认
+        tracker.ack(first, true);
+        assertEquals(1, checkpoints.size());
+        assertEquals(0, (int) checkpoints.get(0));
+        assertEquals(0, tracker.getTrackedPages());
+    }
+}
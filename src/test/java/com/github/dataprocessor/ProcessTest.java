@@ -1,18 +1,41 @@
 package com.github.dataprocessor;
 
+import com.github.dataprocessor.deadletter.DeadLetterFile;
+import com.github.dataprocessor.lease.FileLeaseStore;
+import com.github.dataprocessor.lease.SliceLeaseCoordinator;
 import com.github.dataprocessor.provider.DataProvider;
 import com.github.dataprocessor.provider.LongSliceDataProvider;
 import com.github.dataprocessor.provider.Page;
+import com.github.dataprocessor.slice.DefaultSliceParser;
+import com.github.dataprocessor.slice.DefaultSliceRecorder;
 import com.github.dataprocessor.slice.Slice;
+import com.github.dataprocessor.slice.SliceCostEstimator;
+import com.github.dataprocessor.slice.SliceRecorders;
+import com.github.dataprocessor.threadpool.CircuitBreaker;
+import com.github.dataprocessor.threadpool.InFlightBudget;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -25,6 +48,8 @@ public class ProcessTest {
     private List<Integer> source;
     private List<Integer> target;
     private int span = 128;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Before
     public void setUp() throws Exception {
@@ -48,8 +73,633 @@ public class ProcessTest {
         assertTrue(target.containsAll(source));
     }
 
+    @Test
+    public void processEmptyRange() {
+        MockDataProvider provider = new MockDataProvider();
+        provider.setMax(provider.getMin());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(provider);
+        assertTrue(migrator.process());
+        assertTrue(target.isEmpty());
+    }
+
+    @Test
+    public void processOverriddenGenerateSlices() {
+        DataProvider<Integer, Long> provider = new MockDataProvider();
+        // 子类重写 generateSlices 时只处理它生成的分片
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<Integer, Long>(provider) {
+            @Override
+            protected Set<Slice<Long>> generateSlices() {
+                return Collections.singleton(new Slice<>(0L, 10L));
+            }
+        };
+        assertTrue(migrator.process());
+        assertEquals(new HashSet<>(source.subList(0, 10)), new HashSet<>(target));
+    }
+
+    @Test
+    public void processWithPrefetch() {
+        DataProvider<Integer, Long> provider = new MockDataProvider();
+        DefaultDataProcessor migrator = new DefaultDataProcessor<>(provider);
+        migrator.setLaunchInterval(0);
+        migrator.setPrefetchDepth(2);
+        assertTrue(migrator.process());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void processWithAdaptiveConcurrency() {
+        DataProvider<Integer, Long> provider = new MockDataProvider();
+        DefaultDataProcessor migrator = new DefaultDataProcessor<>(provider);
+        migrator.setLaunchInterval(0);
+        migrator.setAdaptiveConcurrency(true);
+        assertTrue(migrator.process());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+        assertTrue(migrator.getConcurrencyLimiter().getLimit() >= 1);
+        assertEquals(0, migrator.getConcurrencyLimiter().getInFlight());
+    }
+
+    @Test
+    public void processWithInFlightBudget() {
+        DataProvider<Integer, Long> provider = new MockDataProvider();
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setLaunchInterval(0);
+        migrator.setPrefetchDepth(2);
+        // 每条数据按4个字节估算，字节数的预算比条数的预算更小
+        migrator.setInFlightBudget(60, 160, r -> 4);
+        assertTrue(migrator.process());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+        InFlightBudget budget = migrator.getInFlightBudget();
+        assertTrue("在途数据不应该超过预算: " + budget, budget.getPeakBytes() <= 160);
+        assertTrue(budget.getPeakRecords() <= 40);
+        assertEquals(0, budget.getRecords());
+        assertEquals(0, budget.getBytes());
+    }
+
+    @Test(timeout = 30_000)
+    public void releaseBudgetWhenCreateTaskFails() {
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                throw new IllegalStateException("测试创建任务失败");
+            }
+        };
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setLaunchInterval(0);
+        migrator.setInFlightBudget(40);
+        // 创建任务失败时不能占用预算，否则后面的分片会一直等待
+        assertFalse(migrator.process());
+        assertEquals(0, migrator.getInFlightBudget().getRecords());
+    }
+
+    @Test
+    public void awaitBatchesBeforeRetryingSlice() {
+        // 只有一个分片，第一次处理时第二页获取失败
+        span = source.size();
+        AtomicInteger running = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        AtomicBoolean fetchFailed = new AtomicBoolean();
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Page<Integer> getResources(Slice<Long> slice, Page<Integer> lastPage) throws Exception {
+                if (lastPage == null && running.get() > 0) {
+                    // 重新处理分片时上一次的批次还在执行
+                    overlapped.set(true);
+                }
+                if (lastPage != null && lastPage.getCurrentPage() == 0 && fetchFailed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("测试获取分页失败");
+                }
+                return super.getResources(slice, lastPage);
+            }
+
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                Callable<?> task = super.createTask(resources);
+                return (Callable<Object>) () -> {
+                    running.incrementAndGet();
+                    try {
+                        Thread.sleep(50);
+                        return task.call();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                };
+            }
+        };
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(1);
+        migrator.setBatchThreadNum(2);
+        assertTrue(migrator.process());
+        assertTrue(fetchFailed.get());
+        assertFalse(overlapped.get());
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void adaptiveLaunchInterval() {
+        DataProvider<Integer, Long> provider = new MockDataProvider();
+        DefaultDataProcessor migrator = new DefaultDataProcessor<>(provider);
+        // 首页获取很快，上一个分片获取到第一页就启动下一个，不会等满启动间隔
+        migrator.setLaunchInterval(5000);
+        migrator.setAdaptiveLaunchInterval(true);
+        long start = System.currentTimeMillis();
+        assertTrue(migrator.process());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void dynamicSplitting() {
+        AtomicInteger processed = new AtomicInteger();
+        Set<Slice<Long>> processedSlices = ConcurrentHashMap.newKeySet();
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Page<Integer> getResources(Slice<Long> slice, Page<Integer> lastPage) throws Exception {
+                processedSlices.add(slice);
+                return super.getResources(slice, lastPage);
+            }
+
+            @Override
+            public Slice<Long> remainingSlice(Slice<Long> slice, Page<Integer> lastPage) {
+                // 按下标顺序分页，已读取到的位置之后就是还没有读取的部分
+                return new Slice<>(slice.getBegin() + (lastPage.getCurrentPage() + 1) * pageSize, slice.getEnd());
+            }
+
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                Callable<?> task = super.createTask(resources);
+                return (Callable<Object>) () -> {
+                    processed.addAndGet(resources.size());
+                    return task.call();
+                };
+            }
+        };
+        // 只有一个大分片，空闲的启动线程需要通过拆分分片分担
+        provider.setSpan(source.size());
+        provider.pageSize = 10;
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(10, 4, provider);
+        migrator.setSliceRecorder(recorder);
+        migrator.setLaunchInterval(0);
+        migrator.setDynamicSplitting(true);
+        assertTrue(migrator.process());
+        assertTrue(processedSlices.size() > 1);
+        assertFalse(recorder.getSplitSlices().isEmpty());
+        // 拆分后每条数据只处理一次
+        assertEquals(source.size(), processed.get());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void reprocessFailedSplitSlices() {
+        AtomicBoolean failChildren = new AtomicBoolean(true);
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Page<Integer> getResources(Slice<Long> slice, Page<Integer> lastPage) throws Exception {
+                if (slice.getBegin() > 0 && failChildren.get()) {
+                    throw new IllegalStateException("测试拆分出来的子分片处理失败");
+                }
+                return super.getResources(slice, lastPage);
+            }
+
+            @Override
+            public Slice<Long> remainingSlice(Slice<Long> slice, Page<Integer> lastPage) {
+                return new Slice<>(slice.getBegin() + (lastPage.getCurrentPage() + 1) * pageSize, slice.getEnd());
+            }
+        };
+        provider.setSpan(source.size());
+        provider.pageSize = 10;
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(10, 4, provider);
+        migrator.setSliceRecorder(recorder);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(1);
+        migrator.setDynamicSplitting(true);
+        assertFalse(migrator.process());
+        assertFalse(recorder.getSplitSlices().isEmpty());
+        assertFalse(target.containsAll(source));
+        // 被拆分的分片已完成，但失败的子分片仍然需要重新处理
+        failChildren.set(false);
+        assertTrue(migrator.processErrorSlices());
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void processLongestFirst() {
+        DataProvider<Integer, Long> provider = new MockDataProvider();
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(provider);
+        migrator.setLaunchInterval(0);
+        assertTrue(migrator.process());
+        Map<Slice<Long>, Long> costs = migrator.getSliceCosts();
+        assertEquals(provider.generateSlices().size(), costs.size());
+        // 使用上次的实际成本作为估算，按成本从大到小启动
+        target.clear();
+        migrator.setSliceCostEstimator(SliceCostEstimator.fromHistory(costs, 0));
+        assertTrue(migrator.process());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void retryFailedBatchesOnly() {
+        AtomicInteger processed = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        Integer poison = source.get(source.size() / 2);
+        DataProvider<Integer, Long> provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                Callable<?> task = super.createTask(resources);
+                return (Callable<Object>) () -> {
+                    // 包含该数据的批次第一次处理时失败
+                    if (resources.contains(poison) && failed.compareAndSet(false, true)) {
+                        throw new IllegalStateException("测试批次处理失败");
+                    }
+                    processed.addAndGet(resources.size());
+                    return task.call();
+                };
+            }
+        };
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(1);
+        migrator.setBatchThreadNum(4);
+        migrator.setRetryFailedBatchesOnly(true);
+        assertTrue(migrator.process());
+        assertTrue(failed.get());
+        // 只有失败的批次被重新处理，成功的批次不会重复处理
+        assertEquals(source.size(), processed.get());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void resumeFromCheckpoint() throws Exception {
+        AtomicInteger processed = new AtomicInteger();
+        AtomicBoolean broken = new AtomicBoolean(true);
+        // 第一个分片的第7页一直失败，直到恢复任务
+        Integer poison = source.get(60);
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                Callable<?> task = super.createTask(resources);
+                return (Callable<Object>) () -> {
+                    if (broken.get() && resources.contains(poison)) {
+                        throw new IllegalStateException("测试批次处理失败");
+                    }
+                    processed.addAndGet(resources.size());
+                    return task.call();
+                };
+            }
+        };
+        provider.pageSize = 10;
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(10, 4, provider);
+        migrator.setSliceRecorder(new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath()));
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(1);
+        migrator.setBatchThreadNum(4);
+        migrator.setCheckpointEnabled(true);
+        assertFalse(migrator.process());
+
+        broken.set(false);
+        processed.set(0);
+        assertTrue(migrator.resumeProgress());
+        // 第一个分片的前6页已确认，恢复时从第7页开始处理
+        assertEquals(span - 60, processed.get());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void processOnMultipleNodes() throws Exception {
+        FileLeaseStore store = new FileLeaseStore(folder.newFolder("lease").getPath());
+        DefaultSliceParser<Long> parser = new DefaultSliceParser<>();
+        // 崩溃的节点领取了第一个分片后不再续约，租约过期后由其他节点重新领取
+        Slice<Long> crashedSlice = new Slice<>(0L, (long) span);
+        assertTrue(store.tryAcquire(parser.serialize(crashedSlice), "crashed", 500));
+        Map<Slice<Long>, AtomicInteger> launches = new ConcurrentHashMap<>();
+        List<Thread> nodes = new ArrayList<>();
+        List<Boolean> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            MockDataProvider provider = new MockDataProvider() {
+                @Override
+                public Page<Integer> getResources(Slice<Long> slice, Page<Integer> lastPage) throws Exception {
+                    if (lastPage == null) {
+                        launches.computeIfAbsent(slice, k -> new AtomicInteger()).incrementAndGet();
+                        Thread.sleep(20);
+                    }
+                    return super.getResources(slice, lastPage);
+                }
+            };
+            DefaultDataProcessor<Integer, Long> node = new DefaultDataProcessor<>(100, 2, provider);
+            node.setSliceRecorder(new DefaultSliceRecorder<>(parser, folder.newFolder("node" + i).getPath()));
+            node.setLaunchInterval(0);
+            node.setLeaseCoordinator(new SliceLeaseCoordinator<>(store, parser, "node" + i, 300));
+            nodes.add(new Thread(() -> results.add(node.process())));
+        }
+        for (Thread node : nodes) {
+            node.start();
+        }
+        for (Thread node : nodes) {
+            node.join();
+        }
+        assertEquals(2, results.size());
+        assertFalse(results.contains(false));
+        // 每个分片只被一个节点处理一次
+        assertEquals(new MockDataProvider().generateSlices().size(), launches.size());
+        for (AtomicInteger count : launches.values()) {
+            assertEquals(1, count.get());
+        }
+        assertTrue(store.getLease(parser.serialize(crashedSlice)).isCompleted());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void shardByHashWithLaunchEstimator() {
+        Map<Slice<Long>, AtomicInteger> launches = new ConcurrentHashMap<>();
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Page<Integer> getResources(Slice<Long> slice, Page<Integer> lastPage) throws Exception {
+                if (lastPage == null) {
+                    launches.computeIfAbsent(slice, k -> new AtomicInteger()).incrementAndGet();
+                }
+                return super.getResources(slice, lastPage);
+            }
+        };
+        Random random = new Random();
+        int shardCount = 3;
+        for (int i = 0; i < shardCount; i++) {
+            DefaultDataProcessor<Integer, Long> shard = new DefaultDataProcessor<>(100, 2, provider);
+            shard.setLaunchInterval(0);
+            shard.setShard(i, shardCount);
+            // 各进程的估算结果不同，只影响启动顺序，不影响分区
+            shard.setSliceCostEstimator(slice -> random.nextInt(100));
+            assertTrue(shard.process());
+        }
+        assertEquals(provider.generateSlices(), launches.keySet());
+        for (AtomicInteger count : launches.values()) {
+            assertEquals(1, count.get());
+        }
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void processShards() throws Exception {
+        Map<Slice<Long>, AtomicInteger> launches = new ConcurrentHashMap<>();
+        AtomicBoolean broken = new AtomicBoolean(true);
+        Integer poison = source.get(source.size() - 1);
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Page<Integer> getResources(Slice<Long> slice, Page<Integer> lastPage) throws Exception {
+                if (lastPage == null) {
+                    launches.computeIfAbsent(slice, k -> new AtomicInteger()).incrementAndGet();
+                }
+                return super.getResources(slice, lastPage);
+            }
+
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                Callable<?> task = super.createTask(resources);
+                return (Callable<Object>) () -> {
+                    if (broken.get() && resources.contains(poison)) {
+                        throw new IllegalStateException("测试批次处理失败");
+                    }
+                    return task.call();
+                };
+            }
+        };
+        DefaultSliceParser<Long> parser = new DefaultSliceParser<>();
+        List<DefaultSliceRecorder<Long>> recorders = new ArrayList<>();
+        int shardCount = 3;
+        for (int i = 0; i < shardCount; i++) {
+            DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(parser, folder.newFolder("shard" + i).getPath());
+            recorders.add(recorder);
+            DefaultDataProcessor<Integer, Long> shard = new DefaultDataProcessor<>(100, 2, provider);
+            shard.setSliceRecorder(recorder);
+            shard.setLaunchInterval(0);
+            shard.setRetryTime(1);
+            shard.setShard(i, shardCount);
+            shard.process();
+        }
+        // 各分区的分片互不重叠且合起来是全部分片（失败的分片会在本分区重试一次）
+        Set<Slice<Long>> all = provider.generateSlices();
+        assertEquals(all, launches.keySet());
+        Set<Slice<Long>> recorded = new HashSet<>();
+        for (DefaultSliceRecorder<Long> recorder : recorders) {
+            for (Slice<Long> slice : recorder.getAllSlices()) {
+                assertTrue(recorded.add(slice));
+            }
+        }
+        assertEquals(all, recorded);
+
+        // 合并各分区的记录后由一个进程重新处理失败的分片
+        broken.set(false);
+        DefaultSliceRecorder<Long> merged = new DefaultSliceRecorder<>(parser, folder.newFolder("merged").getPath());
+        SliceRecorders.merge(merged, recorders);
+        assertEquals(all, merged.getAllSlices());
+        assertEquals(1, merged.getErrorSlices().size());
+        DefaultDataProcessor<Integer, Long> processor = new DefaultDataProcessor<>(100, 2, provider);
+        processor.setSliceRecorder(merged);
+        processor.setLaunchInterval(0);
+        assertTrue(processor.processErrorSlices());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void pauseOnSinkOutage() {
+        long outageEnd = System.currentTimeMillis() + 500;
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                Callable<?> task = super.createTask(resources);
+                return (Callable<Object>) () -> {
+                    // 模拟处理目标暂时不可用
+                    if (System.currentTimeMillis() < outageEnd) {
+                        throw new IllegalStateException("测试目标不可用");
+                    }
+                    return task.call();
+                };
+            }
+        };
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setSliceRecorder(recorder);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(2);
+        migrator.setRetryBackoff(10, 10);
+        CircuitBreaker breaker = new CircuitBreaker("sink", 3, 0.5, 10, 200, 60_000);
+        migrator.setSinkCircuitBreaker(breaker);
+        // 熔断期间暂停而不是让分片失败
+        assertTrue(migrator.process());
+        assertTrue(recorder.getErrorSlices().isEmpty());
+        assertTrue(breaker.getTrips() > 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(source.containsAll(target));
+        assertTrue(target.containsAll(source));
+    }
+
+    @Test
+    public void isolatePoisonRecords() throws Exception {
+        Set<Integer> poison = new HashSet<>(Arrays.asList(source.get(3), source.get(500), source.get(998)));
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                Callable<?> task = super.createTask(resources);
+                return (Callable<Object>) () -> {
+                    // 模拟个别数据无法处理，整个批次失败
+                    for (Integer resource : resources) {
+                        if (poison.contains(resource)) {
+                            throw new IllegalArgumentException("测试无法处理的数据: " + resource);
+                        }
+                    }
+                    return task.call();
+                };
+            }
+        };
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setSliceRecorder(recorder);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(2);
+        migrator.setRetryBackoff(1, 1);
+        DeadLetterFile<Integer> deadLetterFile = new DeadLetterFile<>(folder.newFile("dead-letter.json").getPath());
+        migrator.setFailureIsolation(deadLetterFile, 1);
+        assertTrue(migrator.process());
+        assertTrue(recorder.getErrorSlices().isEmpty());
+        deadLetterFile.close();
+        Set<Integer> deadLetters = new HashSet<>();
+        for (String record : deadLetterFile.readRecords()) {
+            deadLetters.add(Integer.valueOf(record));
+        }
+        assertEquals(poison, deadLetters);
+        // 记录最后一次处理的异常
+        String content = new String(Files.readAllBytes(deadLetterFile.getFile().toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("测试无法处理的数据"));
+        Set<Integer> expected = new HashSet<>(source);
+        expected.removeAll(poison);
+        assertEquals(expected, new HashSet<>(target));
+    }
+
+    @Test
+    public void isolatePoisonRecordsInBothHalves() throws Exception {
+        // 同一个批次（0~20）中的两条数据分别在拆分后的两半中
+        Set<Integer> poison = new HashSet<>(Arrays.asList(source.get(3), source.get(15)));
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                Callable<?> task = super.createTask(resources);
+                return (Callable<Object>) () -> {
+                    for (Integer resource : resources) {
+                        if (poison.contains(resource)) {
+                            throw new IllegalArgumentException("测试无法处理的数据: " + resource);
+                        }
+                    }
+                    return task.call();
+                };
+            }
+        };
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setSliceRecorder(recorder);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(2);
+        migrator.setRetryBackoff(1, 1);
+        DeadLetterFile<Integer> deadLetterFile = new DeadLetterFile<>(folder.newFile("dead-letter.json").getPath());
+        migrator.setFailureIsolation(deadLetterFile, 1);
+        assertTrue(migrator.process());
+        deadLetterFile.close();
+        Set<Integer> deadLetters = new HashSet<>();
+        for (String record : deadLetterFile.readRecords()) {
+            deadLetters.add(Integer.valueOf(record));
+        }
+        assertEquals(poison, deadLetters);
+        Set<Integer> expected = new HashSet<>(source);
+        expected.removeAll(poison);
+        assertEquals(expected, new HashSet<>(target));
+    }
+
+    @Test
+    public void isolatePoisonRecordsWhenCreateTaskFails() throws Exception {
+        Integer poison = source.get(3);
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                // 创建任务时就发现无法处理的数据
+                if (resources.contains(poison)) {
+                    throw new IllegalArgumentException("测试无法处理的数据: " + poison);
+                }
+                return super.createTask(resources);
+            }
+        };
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setSliceRecorder(recorder);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(2);
+        migrator.setRetryBackoff(1, 1);
+        DeadLetterFile<Integer> deadLetterFile = new DeadLetterFile<>(folder.newFile("dead-letter.json").getPath());
+        migrator.setFailureIsolation(deadLetterFile, 1);
+        assertTrue(migrator.process());
+        assertEquals(1, deadLetterFile.getCount());
+        Set<Integer> expected = new HashSet<>(source);
+        expected.remove(poison);
+        assertEquals(expected, new HashSet<>(target));
+    }
+
+    @Test
+    public void failWholeBatchOnSystemicFailure() throws Exception {
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                return (Callable<Object>) () -> {
+                    throw new IllegalStateException("测试目标不可用");
+                };
+            }
+        };
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setSliceRecorder(recorder);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(1);
+        DeadLetterFile<Integer> deadLetterFile = new DeadLetterFile<>(folder.newFile("dead-letter.json").getPath());
+        migrator.setFailureIsolation(deadLetterFile, 1);
+        // 全部数据都失败时不能写入死信而让分片成功
+        assertFalse(migrator.process());
+        assertFalse(recorder.getErrorSlices().isEmpty());
+        assertEquals(0, deadLetterFile.getCount());
+    }
+
+    @Test
+    public void failBatchNotLargerThanMinIsolationSize() throws Exception {
+        MockDataProvider provider = new MockDataProvider() {
+            @Override
+            public Callable<?> createTask(List<Integer> resources) {
+                return (Callable<Object>) () -> {
+                    throw new IllegalStateException("测试目标不可用");
+                };
+            }
+        };
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), folder.getRoot().getPath());
+        DefaultDataProcessor<Integer, Long> migrator = new DefaultDataProcessor<>(20, 4, provider);
+        migrator.setSliceRecorder(recorder);
+        migrator.setLaunchInterval(0);
+        migrator.setRetryTime(1);
+        DeadLetterFile<Integer> deadLetterFile = new DeadLetterFile<>(folder.newFile("dead-letter.json").getPath());
+        // 批次不超过最小拆分大小，目标不可用时不能把整个批次写入死信
+        migrator.setFailureIsolation(deadLetterFile, 20);
+        assertFalse(migrator.process());
+        assertFalse(recorder.getErrorSlices().isEmpty());
+        assertEquals(0, deadLetterFile.getCount());
+    }
+
     private class MockDataProvider extends LongSliceDataProvider<Integer> {
-        private int pageSize = 100;
+        int pageSize = 100;
 
         public MockDataProvider() {
             super(0, source.size(), span, true);
@@ -0,0 +1,81 @@
+package com.github.dataprocessor;
+
+import com.github.dataprocessor.slice.Slice;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试按预估成本从大到小的分片启动顺序
+ */
+public class SliceScheduleTest {
+
+    @Test
+    public void longestFirst() {
+        List<Slice<Long>> slices = new ArrayList<>();
+        for (long cost : Arrays.asList(3L, 7L, 1L, 4L, 2L, 5L)) {
+            // 分片的长度即成本
+            slices.add(new Slice<>(0L, cost));
+        }
+        SliceSchedule<Long> schedule = SliceSchedule.longestFirst(slices, slice -> slice.getEnd() - slice.getBegin(), 2);
+        List<Long> order = new ArrayList<>();
+        for (Slice<Long> slice : schedule.getSlices()) {
+            order.add(slice.getEnd());
+        }
+        assertEquals(Arrays.asList(7L, 5L, 4L, 3L, 2L, 1L), order);
+        assertEquals(22, schedule.getTotalCost());
+        // 7+3+1 与 5+4+2
+        assertEquals(11, schedule.getPredictedMakespan());
+        assertEquals(1.0, schedule.predictedImbalance(2), 0.001);
+    }
+
+    @Test
+    public void estimatorFailure() {
+        List<Slice<Long>> slices = Arrays.asList(new Slice<>(0L, 1L), new Slice<>(1L, 2L));
+        SliceSchedule<Long> schedule = SliceSchedule.longestFirst(slices, slice -> {
+            if (slice.getBegin() == 0L) {
+                throw new IllegalStateException("测试估算失败");
+            }
+            return 10;
+        }, 4);
+        assertEquals(new Slice<>(1L, 2L), schedule.getSlices().get(0));
+        assertEquals(10, schedule.getTotalCost());
+    }
+
+    @Test
+    public void shardByCost() {
+        List<Slice<Long>> slices = new ArrayList<>();
+        for (long cost : Arrays.asList(3L, 7L, 1L, 4L, 2L, 5L)) {
+            slices.add(new Slice<>(0L, cost));
+        }
+        List<Long> first = new ArrayList<>();
+        for (Slice<Long> slice : SliceSchedule.shardByCost(slices, slice -> slice.getEnd() - slice.getBegin(), Slice::toString, 0, 2)) {
+            first.add(slice.getEnd());
+        }
+        // 分配结果与分片的原始顺序无关
+        Collections.reverse(slices);
+        List<Long> second = new ArrayList<>();
+        for (Slice<Long> slice : SliceSchedule.shardByCost(slices, slice -> slice.getEnd() - slice.getBegin(), Slice::toString, 1, 2)) {
+            second.add(slice.getEnd());
+        }
+        assertEquals(Arrays.asList(7L, 3L, 1L), first);
+        assertEquals(Arrays.asList(5L, 4L, 2L), second);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shardByCostFailsOnEstimateError() {
+        List<Slice<Long>> slices = Arrays.asList(new Slice<>(0L, 1L), new Slice<>(1L, 2L));
+        // 估算失败时各节点的分配结果可能不同，不能按0处理
+        SliceSchedule.shardByCost(slices, slice -> {
+            if (slice.getBegin() == 1L) {
+                throw new IllegalArgumentException("测试估算失败");
+            }
+            return 1;
+        }, Slice::toString, 0, 2);
+    }
+}
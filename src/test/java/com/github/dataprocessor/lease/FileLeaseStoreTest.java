@@ -0,0 +1,73 @@
+package com.github.dataprocessor.lease;
+
+import com.github.dataprocessor.slice.DefaultSliceParser;
+import com.github.dataprocessor.slice.Slice;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileLeaseStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void acquireRenewComplete() throws Exception {
+        FileLeaseStore store = new FileLeaseStore(folder.getRoot().getPath());
+        assertTrue(store.tryAcquire("[0,10)", "a", 100));
+        // 同一个节点可以重复领取，其他节点在过期之前不能领取
+        assertTrue(store.tryAcquire("[0,10)", "a", 100));
+        assertFalse(store.tryAcquire("[0,10)", "b", 100));
+        assertTrue(store.renew("[0,10)", "a", 100));
+        assertFalse(store.renew("[0,10)", "b", 100));
+
+        Thread.sleep(150);
+        // 过期之后其他节点可以领取，原来的节点不能再续约
+        assertTrue(store.tryAcquire("[0,10)", "b", 10_000));
+        assertFalse(store.renew("[0,10)", "a", 100));
+        assertFalse(store.complete("[0,10)", "a"));
+        assertTrue(store.complete("[0,10)", "b"));
+        assertTrue(store.getLease("[0,10)").isCompleted());
+        assertFalse(store.tryAcquire("[0,10)", "a", 100));
+
+        // 释放之后其他节点立即可以领取
+        assertTrue(store.tryAcquire("[10,20)", "a", 10_000));
+        store.release("[10,20)", "a");
+        assertTrue(store.tryAcquire("[10,20)", "b", 10_000));
+
+        store.clear();
+        assertEquals(null, store.getLease("[0,10)"));
+    }
+
+    @Test
+    public void reclaimExpiredLease() throws Exception {
+        FileLeaseStore store = new FileLeaseStore(folder.getRoot().getPath());
+        DefaultSliceParser<Long> parser = new DefaultSliceParser<>();
+        SliceLeaseCoordinator<Long> alive = new SliceLeaseCoordinator<>(store, parser, "alive", 300);
+        Slice<Long> first = new Slice<>(0L, 10L);
+        Slice<Long> second = new Slice<>(10L, 20L);
+        // 崩溃的节点领取了第一个分片之后不再续约，第二个分片已完成
+        assertTrue(store.tryAcquire(parser.serialize(first), "crashed", 300));
+        assertTrue(store.complete(parser.serialize(second), "crashed"));
+        assertFalse(alive.tryClaim(first));
+        assertFalse(alive.tryClaim(second));
+
+        List<Slice<Long>> waiting = new ArrayList<>(Arrays.asList(first, second));
+        long start = System.currentTimeMillis();
+        assertEquals(Collections.singletonList(first), alive.awaitClaimable(waiting));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertTrue(waiting.isEmpty());
+        assertTrue(alive.tryClaim(first));
+        alive.finish(first, true);
+        assertTrue(alive.isCompleted(first));
+        alive.close();
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.dataprocessor.lease;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcLeaseStoreTest {
+
+    @Test
+    public void acquireRenewComplete() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:lease" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcLeaseStore store = new JdbcLeaseStore(dataSource, "job");
+        store.createTable();
+        assertTrue(store.tryAcquire("[0,10)", "a", 100));
+        assertTrue(store.tryAcquire("[0,10)", "a", 100));
+        assertFalse(store.tryAcquire("[0,10)", "b", 100));
+        assertTrue(store.renew("[0,10)", "a", 100));
+
+        Thread.sleep(150);
+        assertTrue(store.tryAcquire("[0,10)", "b", 10_000));
+        assertFalse(store.renew("[0,10)", "a", 100));
+        assertFalse(store.complete("[0,10)", "a"));
+        assertTrue(store.complete("[0,10)", "b"));
+        assertFalse(store.tryAcquire("[0,10)", "a", 100));
+
+        assertTrue(store.tryAcquire("[10,20)", "a", 10_000));
+        store.release("[10,20)", "a");
+        assertTrue(store.tryAcquire("[10,20)", "b", 10_000));
+        // 不同任务的租约互不影响
+        assertTrue(new JdbcLeaseStore(dataSource, "other").tryAcquire("[10,20)", "a", 10_000));
+
+        store.clear();
+        assertNull(store.getLease("[0,10)"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.dataprocessor.provider;
+
+import com.github.dataprocessor.slice.Slice;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试根据键的分布生成等深分片
+ */
+public class EquiDepthLongSliceDataProviderTest {
+
+    @Test
+    public void skewedSamples() {
+        // 90%的数据集中在 [0, 1000)，其余分布在 [1000, 100000)
+        Random random = new Random(1);
+        long[] keys = new long[10_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i % 10 == 0 ? 1000 + random.nextInt(99_000) : random.nextInt(1000);
+        }
+        TestProvider provider = new TestProvider(0, 100_000, 10, KeyHistogram.fromSamples(keys));
+        List<Slice<Long>> slices = new ArrayList<>(provider.generateSlices());
+        assertEquals(10, slices.size());
+        assertCovered(slices, 0, 100_000);
+        for (Slice<Long> slice : slices) {
+            long count = 0;
+            for (long key : keys) {
+                if (key >= slice.getBegin() && key < slice.getEnd()) {
+                    count++;
+                }
+            }
+            // 每个分片的数据量大致相等
+            assertTrue("分片 " + slice + " 的数据量: " + count, Math.abs(count - 1000) <= 100);
+        }
+    }
+
+    @Test
+    public void noHistogram() {
+        TestProvider provider = new TestProvider(0, 1000, 4, null);
+        List<Slice<Long>> slices = new ArrayList<>(provider.generateSlices());
+        assertEquals(4, slices.size());
+        assertCovered(slices, 0, 1000);
+    }
+
+    @Test
+    public void serialize() {
+        KeyHistogram histogram = KeyHistogram.fromSamples(new long[]{5, 1, 5, 9});
+        KeyHistogram parsed = KeyHistogram.parse(histogram.serialize());
+        assertEquals(3, parsed.size());
+        assertEquals(4, parsed.getTotal());
+    }
+
+    private void assertCovered(List<Slice<Long>> slices, long min, long max) {
+        slices.sort((a, b) -> Long.compare(a.getBegin(), b.getBegin()));
+        long last = min;
+        for (Slice<Long> slice : slices) {
+            assertEquals("分片必须首尾相连", last, (long) slice.getBegin());
+            assertTrue(slice.getEnd() > slice.getBegin());
+            last = slice.getEnd();
+        }
+        assertEquals(max, last);
+    }
+
+    private static class TestProvider extends EquiDepthLongSliceDataProvider<Object> {
+        TestProvider(long min, long max, int sliceCount, KeyHistogram histogram) {
+            super(min, max, sliceCount, histogram, false);
+        }
+
+        @Override
+        public Page<Object> getResources(Slice<Long> slice, Page<Object> lastPage) {
+            return null;
+        }
+
+        @Override
+        public Callable<?> createTask(List<Object> resources) {
+            return null;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package com.github.dataprocessor.slice;
 
 import org.junit.Test;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
@@ -71,6 +73,71 @@ public class DefaultSliceParserTest {
         assertTrue(slice2.getBegin().before(slice2.getEnd()));
     }
 
+    @Test
+    public void compactFormat() {
+        DefaultSliceParser<Long> parser = new DefaultSliceParser<>();
+        Slice<Long> slice = new Slice<>(Long.MIN_VALUE, -1L);
+        String str = parser.serialize(slice);
+        assertEquals("~L:-9223372036854775808,-1", str);
+        assertEquals(slice, parser.parse(str));
+
+        Set<Slice<Long>> slices = new HashSet<>();
+        for (long i = 0; i < 100; i++) {
+            slices.add(new Slice<>(i * 10, i * 10 + 10));
+        }
+        assertEquals(slices, parser.parseSlices(parser.serialize(slices)));
+    }
+
+    @Test
+    public void compactStringAndInstant() {
+        DefaultSliceParser<String> parser = new DefaultSliceParser<>();
+        Slice<String> slice = new Slice<>("a,b;c\\", "d\te\nf");
+        assertEquals(slice, parser.parse(parser.serialize(slice)));
+        Set<Slice<String>> slices = new HashSet<>(Arrays.asList(slice, new Slice<>("", ";")));
+        assertEquals(slices, parser.parseSlices(parser.serialize(slices)));
+
+        DefaultSliceParser<Instant> instantParser = new DefaultSliceParser<>();
+        Slice<Instant> instantSlice = new Slice<>(Instant.ofEpochSecond(-5, 123), Instant.now());
+        assertEquals(instantSlice, instantParser.parse(instantParser.serialize(instantSlice)));
+    }
+
+    @Test
+    public void parseLegacyFormat() {
+        DefaultSliceParser<Long> parser = new DefaultSliceParser<>();
+        assertEquals(new Slice<>(1L, 2L), parser.parse("java.lang.Long__{\"begin\":1,\"end\":2}"));
+        Set<Slice<Long>> slices = parser.parseSlices("java.lang.Long__[{\"begin\":1,\"end\":2},{\"begin\":2,\"end\":3}]");
+        assertEquals(new HashSet<>(Arrays.asList(new Slice<>(1L, 2L), new Slice<>(2L, 3L))), slices);
+    }
+
+    @Test
+    public void registerCodec() {
+        DefaultSliceParser<Integer> parser = new DefaultSliceParser<>();
+        parser.registerCodec(new SliceCodec<Integer>() {
+            @Override
+            public char getTypeId() {
+                return 'i';
+            }
+
+            @Override
+            public Class<Integer> getType() {
+                return Integer.class;
+            }
+
+            @Override
+            public void encode(Integer value, StringBuilder out) {
+                out.append(value.intValue());
+            }
+
+            @Override
+            public Integer decode(String str, int begin, int end) {
+                return Integer.valueOf(str.substring(begin, end));
+            }
+        });
+        Slice<Integer> slice = new Slice<>(1, 2);
+        assertEquals("~i:1,2", parser.serialize(slice));
+        assertEquals(slice, parser.parse("~i:1,2"));
+    }
+
     @Test
     public void serialize() {
     }
@@ -0,0 +1,65 @@
+package com.github.dataprocessor.slice;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultSliceRecorderTest {
+
+    @Test
+    public void compact() throws Exception {
+        String dir = Files.createTempDirectory("recorder").toString();
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), dir);
+        recorder.setCompactThreshold(0);
+        for (long i = 0; i < 100; i++) {
+            recorder.saveErrorSlice(new Slice<>(i, i + 1));
+        }
+        // 重新处理之后大部分失败的分片都完成了
+        for (long i = 0; i < 90; i++) {
+            recorder.saveCompletedSlice(new Slice<>(i, i + 1));
+        }
+        recorder.compact();
+        File infoDir = new File(dir, "processInfo");
+        assertTrue(new File(infoDir, "snapshot.txt").exists());
+        assertFalse(new File(infoDir, "completedSlices.txt").exists());
+        assertFalse(new File(infoDir, "errorSlice.txt").exists());
+        assertEquals(10, recorder.getErrorSlices().size());
+
+        // 合并之后追加的记录从增量日志中读取
+        recorder.saveCompletedSlice(new Slice<>(95L, 96L));
+        Set<Slice<Long>> completed = recorder.getCompletedSlices();
+        assertEquals(91, completed.size());
+        assertTrue(completed.contains(new Slice<>(95L, 96L)));
+        recorder.compact();
+        assertEquals(9, recorder.getErrorSlices().size());
+        assertFalse(recorder.getErrorSlices().contains(new Slice<>(95L, 96L)));
+
+        recorder.clearRecord();
+        assertTrue(recorder.getCompletedSlices().isEmpty());
+        assertTrue(recorder.getErrorSlices().isEmpty());
+    }
+
+    @Test
+    public void compactInBackground() throws Exception {
+        String dir = Files.createTempDirectory("recorder").toString();
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), dir);
+        recorder.setCompactThreshold(50);
+        for (long i = 0; i < 200; i++) {
+            recorder.saveCompletedSlice(new Slice<>(i, i + 1));
+        }
+        File snapshot = new File(new File(dir, "processInfo"), "snapshot.txt");
+        for (int i = 0; i < 100 && !snapshot.exists(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(snapshot.exists());
+        assertEquals(200, recorder.getCompletedSlices().size());
+        assertEquals(Collections.emptySet(), recorder.getErrorSlices());
+    }
+}
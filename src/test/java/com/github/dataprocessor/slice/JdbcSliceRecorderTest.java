@@ -0,0 +1,131 @@
+package com.github.dataprocessor.slice;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcSliceRecorderTest {
+    private JdbcDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+    }
+
+    @Test
+    public void saveAndRead() {
+        JdbcSliceRecorder<Long> recorder = new JdbcSliceRecorder<>(dataSource, new DefaultSliceParser<>(), "job", "dp_", 10_000, 7);
+        recorder.createTables();
+        Set<Slice<Long>> all = new HashSet<>();
+        for (long i = 0; i < 30; i++) {
+            all.add(new Slice<>(i, i + 1));
+        }
+        recorder.saveAllSlices(all);
+        for (long i = 0; i < 20; i++) {
+            recorder.saveCompletedSlice(new Slice<>(i, i + 1));
+        }
+        recorder.saveErrorSlice(new Slice<>(25L, 26L));
+        // 已完成的分片不会被改为失败
+        recorder.saveErrorSlice(new Slice<>(0L, 1L));
+        recorder.saveCheckpoint(new Slice<>(28L, 29L), new PageCursor(1, 10));
+        recorder.saveCheckpoint(new Slice<>(28L, 29L), new PageCursor(2, 10));
+        recorder.saveSplitSlice(new Slice<>(29L, 30L), Arrays.asList(new Slice<>(29L, 30L)));
+        recorder.close();
+
+        // 另一个进程使用同一个任务名称读取
+        JdbcSliceRecorder<Long> other = new JdbcSliceRecorder<>(dataSource, new DefaultSliceParser<>(), "job");
+        assertEquals(all, other.getAllSlices());
+        assertEquals(20, other.getCompletedSlices().size());
+        assertEquals(Collections.singleton(new Slice<>(25L, 26L)), other.getErrorSlices());
+        assertEquals(new PageCursor(2, 10), other.getCheckpoints().get(new Slice<>(28L, 29L)));
+        assertEquals(1, other.getSplitSlices().get(new Slice<>(29L, 30L)).size());
+        assertEquals(JdbcSliceRecorder.SliceStatus.COMPLETED, other.getStatus(new Slice<>(0L, 1L)));
+
+        Map<JdbcSliceRecorder.SliceStatus, Long> counts = other.countByStatus();
+        assertEquals(Long.valueOf(20), counts.get(JdbcSliceRecorder.SliceStatus.COMPLETED));
+        assertEquals(Long.valueOf(1), counts.get(JdbcSliceRecorder.SliceStatus.ERROR));
+        assertEquals(Long.valueOf(9), counts.get(JdbcSliceRecorder.SliceStatus.PENDING));
+
+        // 其他任务的记录互不影响
+        JdbcSliceRecorder<Long> another = new JdbcSliceRecorder<>(dataSource, new DefaultSliceParser<>(), "another");
+        assertTrue(another.getCompletedSlices().isEmpty());
+
+        other.clearRecord();
+        assertTrue(other.getCompletedSlices().isEmpty());
+        assertTrue(other.getSliceSource().isEmpty());
+        assertNull(other.getStatus(new Slice<>(0L, 1L)));
+    }
+
+    @Test
+    public void rangeSourceIsNotExpanded() {
+        JdbcSliceRecorder<Long> recorder = new JdbcSliceRecorder<>(dataSource, new DefaultSliceParser<>(), "range");
+        recorder.createTables();
+        RangeSliceSource<Long> source = RangeSliceSource.ofLong(0, 1000, 10);
+        recorder.saveSliceSource(source);
+        recorder.saveCompletedSlice(new Slice<>(0L, 10L));
+        recorder.close();
+
+        assertEquals(source.size(), recorder.getSliceSource().size());
+        assertEquals(Collections.singleton(new Slice<>(0L, 10L)), recorder.getCompletedSlices());
+        assertNull(recorder.countByStatus().get(JdbcSliceRecorder.SliceStatus.PENDING));
+    }
+
+    @Test
+    public void batchWithoutUpdateCounts() {
+        // 模拟批量执行时不返回每一行更新数的驱动
+        DataSource noInfo = wrap(DataSource.class, dataSource, (method, result) -> {
+            if ("getConnection".equals(method)) {
+                return wrap(java.sql.Connection.class, result, (m, r) -> "prepareStatement".equals(m)
+                        ? wrap(java.sql.PreparedStatement.class, r, (m2, r2) -> {
+                            if ("executeBatch".equals(m2)) {
+                                int[] counts = ((int[]) r2).clone();
+                                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                                return counts;
+                            }
+                            return r2;
+                        }) : r);
+            }
+            return result;
+        });
+        JdbcSliceRecorder<Long> recorder = new JdbcSliceRecorder<>(noInfo, new DefaultSliceParser<>(), "noInfo");
+        recorder.createTables();
+        Set<Slice<Long>> all = new HashSet<>(Arrays.asList(new Slice<>(0L, 1L), new Slice<>(1L, 2L)));
+        recorder.saveAllSlices(all);
+        recorder.saveCompletedSlice(new Slice<>(0L, 1L));
+        recorder.saveErrorSlice(new Slice<>(1L, 2L));
+        recorder.close();
+
+        assertEquals(all, recorder.getAllSlices());
+        assertEquals(JdbcSliceRecorder.SliceStatus.COMPLETED, recorder.getStatus(new Slice<>(0L, 1L)));
+        assertEquals(Collections.singleton(new Slice<>(1L, 2L)), recorder.getErrorSlices());
+    }
+
+    private interface ResultMapper {
+        Object map(String method, Object result);
+    }
+
+    private static <T> T wrap(Class<T> type, Object target, ResultMapper mapper) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            try {
+                return mapper.map(method.getName(), method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }));
+    }
+}
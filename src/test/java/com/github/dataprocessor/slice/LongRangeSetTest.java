@@ -0,0 +1,85 @@
+package com.github.dataprocessor.slice;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongRangeSetTest {
+
+    @Test
+    public void addAndCoalesce() {
+        LongRangeSet set = new LongRangeSet(1);
+        // 乱序完成的连续分片最终合并为一个区间
+        for (long i = 99; i >= 0; i -= 2) {
+            set.add(i * 10, i * 10 + 10);
+        }
+        for (long i = 0; i < 100; i += 2) {
+            set.add(i * 10, i * 10 + 10);
+        }
+        assertEquals(1, set.rangeCount());
+        assertEquals(new LongRange(0, 1000), set.get(0));
+        assertTrue(set.covers(100, 200));
+        assertFalse(set.covers(900, 1010));
+        assertTrue(set.contains(999));
+        assertFalse(set.contains(1000));
+    }
+
+    @Test
+    public void removeAndDifference() {
+        LongRangeSet set = new LongRangeSet();
+        set.add(0, 100);
+        set.remove(20, 30);
+        set.remove(90, 200);
+        assertEquals("[0-20, 30-90]", set.toString());
+        assertFalse(set.intersects(20, 30));
+        assertTrue(set.intersects(25, 31));
+
+        LongRangeSet other = new LongRangeSet();
+        other.add(10, 40);
+        other.add(50, 60);
+        assertEquals("[0-10, 40-50, 60-90]", set.difference(other).toString());
+        assertEquals(50, set.difference(other).totalLength());
+    }
+
+    @Test
+    public void sameAsBitSet() {
+        Random random = new Random(42);
+        LongRangeSet set = new LongRangeSet();
+        boolean[] bits = new boolean[500];
+        for (int n = 0; n < 2000; n++) {
+            int begin = random.nextInt(500);
+            int end = Math.min(500, begin + random.nextInt(20));
+            boolean add = random.nextBoolean();
+            if (add) {
+                set.add(begin, end);
+            } else {
+                set.remove(begin, end);
+            }
+            Arrays.fill(bits, begin, end, add);
+        }
+        long total = 0;
+        for (int i = 0; i < bits.length; i++) {
+            assertEquals("index " + i, bits[i], set.contains(i));
+            total += bits[i] ? 1 : 0;
+        }
+        assertEquals(total, set.totalLength());
+        LongRange previous = null;
+        for (LongRange range : set) {
+            // 合并之后区间之间不相交也不相邻
+            assertTrue(previous == null || previous.getEnd() < range.getBegin());
+            previous = range;
+        }
+    }
+
+    @Test
+    public void tryOf() {
+        assertEquals(1, LongRangeSet.tryOf(new HashSet<>(Arrays.asList(new Slice<>(0L, 10L), new Slice<>(10L, 20L)))).rangeCount());
+        assertEquals(null, LongRangeSet.tryOf(new HashSet<>(Arrays.asList(new Slice<>(0, 10)))));
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.dataprocessor.slice;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedBitmapSliceRecorderTest {
+
+    @Test
+    public void rangeSource() throws Exception {
+        String dir = Files.createTempDirectory("bitmap").toString();
+        MappedBitmapSliceRecorder<Long> recorder = new MappedBitmapSliceRecorder<>(new DefaultSliceParser<>(), dir);
+        RangeSliceSource<Long> source = RangeSliceSource.ofLong(0, 10_000_000, 10);
+        recorder.saveSliceSource(source);
+        for (long i = 0; i < 500_000; i++) {
+            recorder.saveCompletedSlice(new Slice<>(i * 10, i * 10 + 10));
+        }
+        recorder.saveErrorSlice(new Slice<>(9_999_990L, 10_000_000L));
+        // 不在全部分片中的分片另外记录
+        recorder.saveCompletedSlice(new Slice<>(5_000_000L, 5_000_005L));
+        recorder.close();
+
+        MappedBitmapSliceRecorder<Long> reopened = new MappedBitmapSliceRecorder<>(new DefaultSliceParser<>(), dir);
+        Set<Slice<Long>> completed = reopened.getCompletedSlices();
+        assertEquals(500_001, completed.size());
+        assertTrue(completed.contains(new Slice<>(4_999_990L, 5_000_000L)));
+        assertTrue(completed.contains(new Slice<>(5_000_000L, 5_000_005L)));
+        assertFalse(completed.contains(new Slice<>(5_000_000L, 5_000_010L)));
+        assertEquals(Collections.singleton(new Slice<>(9_999_990L, 10_000_000L)), reopened.getErrorSlices());
+
+        SliceSource<Long> pending = reopened.getSliceSource().excluding(completed, Collections.emptyList());
+        assertEquals(500_000, pending.size());
+        assertEquals(new Slice<>(5_000_000L, 5_000_010L), pending.iterator().next());
+        reopened.clearRecord();
+        assertTrue(reopened.getCompletedSlices().isEmpty());
+    }
+
+    @Test
+    public void listSource() throws Exception {
+        String dir = Files.createTempDirectory("bitmap").toString();
+        MappedBitmapSliceRecorder<String> recorder = new MappedBitmapSliceRecorder<>(new DefaultSliceParser<>(), dir);
+        Set<Slice<String>> all = new HashSet<>(Arrays.asList(new Slice<>("a", "b"), new Slice<>("b", "c"), new Slice<>("c", "d")));
+        recorder.saveAllSlices(all);
+        recorder.saveCompletedSlice(new Slice<>("b", "c"));
+        recorder.flush();
+
+        MappedBitmapSliceRecorder<String> reopened = new MappedBitmapSliceRecorder<>(new DefaultSliceParser<>(), dir);
+        assertEquals(all, reopened.getAllSlices());
+        assertEquals(Collections.singleton(new Slice<>("b", "c")), new HashSet<>(reopened.getCompletedSlices()));
+        reopened.saveCompletedSlice(new Slice<>("c", "d"));
+        assertEquals(2, recorder.getCompletedSlices().size());
+        recorder.close();
+        reopened.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.dataprocessor.slice;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RangeSliceSourceTest {
+
+    @Test
+    public void iterate() {
+        RangeSliceSource<Long> source = RangeSliceSource.ofLong(0, 25, 10);
+        List<Slice<Long>> slices = toList(source);
+        assertEquals(3, source.size());
+        assertEquals(3, slices.size());
+        assertEquals(new Slice<>(0L, 10L), slices.get(0));
+        assertEquals(new Slice<>(20L, 25L), slices.get(2));
+        assertTrue(source.contains(new Slice<>(20L, 25L)));
+        assertFalse(source.contains(new Slice<>(5L, 15L)));
+    }
+
+    @Test
+    public void excluding() {
+        RangeSliceSource<Long> source = RangeSliceSource.ofLong(0, 100, 10);
+        Set<Slice<Long>> completed = new HashSet<>();
+        completed.add(new Slice<>(0L, 10L));
+        completed.add(new Slice<>(50L, 60L));
+        // 不属于本范围的分片不需要记录
+        completed.add(new Slice<>(1000L, 1010L));
+        SliceSource<Long> pending = source.excluding(completed, Collections.singletonList(new Slice<>(55L, 60L)));
+        List<Slice<Long>> slices = toList(pending);
+        assertEquals(9, pending.size());
+        assertEquals(9, slices.size());
+        assertFalse(slices.contains(new Slice<>(0L, 10L)));
+        assertFalse(slices.contains(new Slice<>(50L, 60L)));
+        assertEquals(new Slice<>(55L, 60L), slices.get(slices.size() - 1));
+        assertEquals(2, ((RangeSliceSource<Long>) pending).getExcluded().size());
+    }
+
+    @Test
+    public void saveAndRestore() throws Exception {
+        File dir = Files.createTempDirectory("rangeSliceSource").toFile();
+        DefaultSliceRecorder<Long> recorder = new DefaultSliceRecorder<>(new DefaultSliceParser<>(), dir.getAbsolutePath() + File.separator);
+        SliceSource<Long> source = RangeSliceSource.ofLong(0, 1000, 10)
+                .excluding(Collections.singleton(new Slice<>(10L, 20L)), Collections.singletonList(new Slice<>(15L, 20L)));
+        recorder.saveSliceSource(source);
+        SliceSource<Long> restored = recorder.getSliceSource();
+        assertTrue(restored instanceof RangeSliceSource);
+        assertEquals(toList(source), toList(restored));
+        assertEquals(100, recorder.getAllSlices().size());
+    }
+
+    private static <S> List<Slice<S>> toList(SliceSource<S> source) {
+        List<Slice<S>> list = new ArrayList<>();
+        for (Slice<S> slice : source) {
+            list.add(slice);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.dataprocessor.slice;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WalSliceRecorderTest {
+
+    @Test
+    public void saveAndRead() throws Exception {
+        String dir = Files.createTempDirectory("wal").toString();
+        WalSliceRecorder<Long> recorder = new WalSliceRecorder<>(new DefaultSliceParser<>(), dir, FsyncPolicy.everyRecords(10), 200);
+        Set<Slice<Long>> all = new HashSet<>();
+        for (long i = 0; i < 50; i++) {
+            all.add(new Slice<>(i, i + 1));
+        }
+        recorder.saveAllSlices(all);
+        for (long i = 0; i < 40; i++) {
+            recorder.saveCompletedSlice(new Slice<>(i, i + 1));
+        }
+        recorder.saveErrorSlice(new Slice<>(45L, 46L));
+        recorder.saveCheckpoint(new Slice<>(48L, 49L), new PageCursor(1, 10));
+        recorder.saveCheckpoint(new Slice<>(48L, 49L), new PageCursor(2, 10));
+        recorder.saveSplitSlice(new Slice<>(0L, 1L), Arrays.asList(new Slice<>(0L, 1L), new Slice<>(1L, 2L)));
+        recorder.close();
+
+        // 重新打开后从日志中恢复，日志段很小，已经切换过多个日志段
+        WalSliceRecorder<Long> reopened = new WalSliceRecorder<>(new DefaultSliceParser<>(), dir, FsyncPolicy.always(), 200);
+        assertTrue(new File(dir, "processWal").listFiles().length > 1);
+        assertEquals(all, reopened.getAllSlices());
+        assertEquals(40, reopened.getCompletedSlices().size());
+        assertEquals(Collections.singleton(new Slice<>(45L, 46L)), reopened.getErrorSlices());
+        assertEquals(new PageCursor(2, 10), reopened.getCheckpoints().get(new Slice<>(48L, 49L)));
+        assertEquals(2, reopened.getSplitSlices().get(new Slice<>(0L, 1L)).size());
+
+        reopened.clearRecord();
+        assertTrue(reopened.getCompletedSlices().isEmpty());
+        assertTrue(reopened.getSliceSource().isEmpty());
+    }
+
+    @Test
+    public void dropTornTail() throws Exception {
+        String dir = Files.createTempDirectory("wal").toString();
+        WalSliceRecorder<Long> recorder = new WalSliceRecorder<>(new DefaultSliceParser<>(), dir);
+        recorder.saveCompletedSlice(new Slice<>(0L, 10L));
+        recorder.saveCompletedSlice(new Slice<>(10L, 20L));
+        recorder.close();
+        File segment = new File(dir, "processWal").listFiles()[0];
+        // 模拟写入最后一条记录时被中断
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        WalSliceRecorder<Long> reopened = new WalSliceRecorder<>(new DefaultSliceParser<>(), dir);
+        assertEquals(Collections.singleton(new Slice<>(0L, 10L)), reopened.getCompletedSlices());
+        // 追加时截断不完整的尾部，之后的记录可以正常读取
+        reopened.saveCompletedSlice(new Slice<>(20L, 30L));
+        assertEquals(new HashSet<>(Arrays.asList(new Slice<>(0L, 10L), new Slice<>(20L, 30L))), reopened.getCompletedSlices());
+        reopened.close();
+    }
+
+    @Test
+    public void concurrentAppend() throws Exception {
+        String dir = Files.createTempDirectory("wal").toString();
+        WalSliceRecorder<Long> recorder = new WalSliceRecorder<>(new DefaultSliceParser<>(), dir, FsyncPolicy.always(), 4096);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long base = t * 1000L;
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < 50; i++) {
+                    recorder.saveCompletedSlice(new Slice<>(base + i, base + i + 1));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400, recorder.getCompletedSlices().size());
+        recorder.close();
+    }
+
+    @Test
+    public void appendWhenInterrupted() throws Exception {
+        String dir = Files.createTempDirectory("wal").toString();
+        WalSliceRecorder<Long> recorder = new WalSliceRecorder<>(new DefaultSliceParser<>(), dir, FsyncPolicy.always(), 4096);
+        Thread.currentThread().interrupt();
+        try {
+            // 被中断的线程追加记录不能关闭文件通道，返回时保留中断标记
+            recorder.saveCompletedSlice(new Slice<>(0L, 10L));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        recorder.saveCompletedSlice(new Slice<>(10L, 20L));
+        assertEquals(new HashSet<>(Arrays.asList(new Slice<>(0L, 10L), new Slice<>(10L, 20L))), recorder.getCompletedSlices());
+        recorder.close();
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.dataprocessor.threadpool;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试自适应并发限制器的加性增、乘性减
+ */
+public class AdaptiveConcurrencyLimiterTest {
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void increaseWhenLatencyFlat() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, 1);
+        for (int round = 0; round < 100; round++) {
+            runWave(limiter, LATENCY, true);
+        }
+        assertEquals(8, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void decreaseWhenFailed() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 20, 20);
+        limiter.acquire();
+        limiter.release(LATENCY, false);
+        assertEquals(18, limiter.getLimit());
+        assertEquals(1, limiter.getFailed());
+    }
+
+    @Test
+    public void decreaseWhenLatencyRises() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 20, 20);
+        runWave(limiter, LATENCY, true);
+        assertEquals(20, limiter.getLimit());
+        // 耗时明显上升后减少并发数，但两次减少之间至少间隔一个平均耗时，不会一次减到最小
+        for (int round = 0; round < 5; round++) {
+            runWave(limiter, LATENCY * 10, true);
+        }
+        int limit = limiter.getLimit();
+        assertTrue("并发数应该减少: " + limit, limit < 20);
+        assertTrue("并发数不应该减到最小: " + limit, limit > 1);
+    }
+
+    @Test
+    public void cancelledTaskNotSampled() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, 2);
+        limiter.acquire();
+        limiter.release();
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getCompleted());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private void runWave(AdaptiveConcurrencyLimiter limiter, long latency, boolean success) throws InterruptedException {
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < limit; i++) {
+            limiter.release(latency, success);
+        }
+    }
+}
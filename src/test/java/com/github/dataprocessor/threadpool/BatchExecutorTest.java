@@ -0,0 +1,135 @@
+package com.github.dataprocessor.threadpool;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试共享线程池的批次任务组
+ */
+public class BatchExecutorTest {
+
+    @Test
+    public void awaitGroup() throws InterruptedException {
+        int poolSize = 4;
+        BatchExecutor executor = new BatchExecutor(new DefaultThreadPoolFactory(), poolSize, "testBatch");
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        AtomicInteger done = new AtomicInteger();
+        try {
+            // 多个任务组共享同一个线程池
+            for (int g = 0; g < 10; g++) {
+                BatchGroup group = executor.newGroup();
+                int before = done.get();
+                for (int i = 0; i < 20; i++) {
+                    group.submit(() -> {
+                        threadNames.add(Thread.currentThread().getName());
+                        Thread.sleep(1);
+                        return done.incrementAndGet();
+                    });
+                }
+                group.await();
+                assertEquals("任务组等待结束时本组的任务必须全部完成", before + 20, done.get());
+                assertEquals(0, group.getPending());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // 线程数量不会随任务组数量增长
+        assertTrue(threadNames.size() <= poolSize);
+    }
+
+    @Test
+    public void failFast() throws InterruptedException {
+        // 单线程保证后面的任务都还在排队
+        BatchExecutor executor = new BatchExecutor(new DefaultThreadPoolFactory(), 1, "testBatch");
+        AtomicInteger executed = new AtomicInteger();
+        try {
+            BatchGroup group = executor.newGroup(true);
+            group.submit(() -> {
+                executed.incrementAndGet();
+                throw new IllegalStateException("测试批次失败");
+            });
+            for (int i = 0; i < 50; i++) {
+                group.submit(() -> {
+                    Thread.sleep(5);
+                    return executed.incrementAndGet();
+                });
+            }
+            group.await();
+            assertTrue(group.isFailed());
+            assertEquals(1, group.getFailed());
+            assertTrue(group.getFailure() instanceof IllegalStateException);
+            assertEquals("第一个任务失败后排队的任务应该被取消", 51, group.getCancelled() + group.getSucceeded() + group.getFailed());
+            assertTrue(group.getCancelled() > 0);
+            assertEquals(group.getSucceeded() + 1, executed.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void nullResultIsFailure() throws InterruptedException {
+        BatchExecutor executor = new BatchExecutor(new DefaultThreadPoolFactory(), 2, "testBatch");
+        try {
+            BatchGroup group = executor.newGroup();
+            for (int i = 0; i < 10; i++) {
+                final int n = i;
+                group.submit(() -> n == 0 ? null : true);
+            }
+            group.await();
+            // 不快速失败的情况下其他任务全部执行
+            assertEquals(9, group.getSucceeded());
+            assertEquals(1, group.getFailed());
+            assertEquals(0, group.getCancelled());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void awaitEmptyGroup() throws InterruptedException {
+        BatchExecutor executor = new BatchExecutor(new DefaultThreadPoolFactory(), 1, "testBatch");
+        try {
+            executor.newGroup().await();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelDoesNotCompleteRunningTask() throws InterruptedException {
+        BatchExecutor executor = new BatchExecutor(new DefaultThreadPoolFactory(), 1, "testBatch");
+        try {
+            BatchGroup group = executor.newGroup();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicBoolean finished = new AtomicBoolean();
+            group.submit(() -> {
+                started.countDown();
+                release.await();
+                finished.set(true);
+                return true;
+            });
+            group.submit(() -> true);
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+            // 只取消还在排队的任务，正在执行的任务照常执行完并记录结果
+            group.cancel();
+            assertEquals(1, group.getPending());
+            release.countDown();
+            group.await();
+            assertTrue(finished.get());
+            assertEquals(1, group.getSucceeded());
+            assertEquals(1, group.getCancelled());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
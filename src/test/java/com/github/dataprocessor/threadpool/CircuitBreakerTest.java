@@ -0,0 +1,134 @@
+package com.github.dataprocessor.threadpool;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 测试熔断器的打开、探测和恢复
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void openAndRecover() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 1, 10, 200, 10_000);
+        for (int i = 0; i < 3; i++) {
+            callFailing(breaker);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTrips());
+        // 打开期间调用等待，到时间后作为探测调用执行，探测成功则关闭
+        long start = System.currentTimeMillis();
+        assertEquals("ok", breaker.call(() -> "ok", true));
+        assertTrue(System.currentTimeMillis() - start >= 150);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void probeFailureReopens() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 1, 10, 100, 10_000);
+        callFailing(breaker);
+        callFailing(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        // 探测失败不算新的一次熔断
+        assertEquals(1, breaker.getTrips());
+        long start = System.currentTimeMillis();
+        breaker.awaitReady();
+        assertTrue(System.currentTimeMillis() - start >= 50);
+    }
+
+    @Test
+    public void failureRate() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 100, 0.5, 10, 1000, 10_000);
+        for (int i = 0; i < 5; i++) {
+            breaker.call(() -> "ok", true);
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            callFailing(breaker);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void maxWait() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 1, 10, 10_000, 100);
+        callFailing(breaker);
+        try {
+            breaker.call(() -> "ok", true);
+            fail("熔断器打开的时间超过最长等待时间时应该抛出异常");
+        } catch (CircuitBreakerOpenException expected) {
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        }
+    }
+
+    @Test
+    public void failurePredicate() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, 1, 10, 10_000, 10_000);
+        // 返回false的调用视为失败
+        breaker.call(() -> false, Boolean.FALSE::equals);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.call(() -> false, Boolean.FALSE::equals);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void staleCallDoesNotDecideProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 1, 10, 100, 10_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 打开之前开始的调用
+        Thread stale = new Thread(() -> {
+            try {
+                breaker.call(() -> {
+                    started.countDown();
+                    release.await();
+                    return "ok";
+                }, true);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        stale.start();
+        started.await();
+        callFailing(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(150);
+        // 半开期间探测调用还没有完成时，打开之前开始的调用成功不能关闭熔断器
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch probeRelease = new CountDownLatch(1);
+        Thread probe = new Thread(() -> {
+            try {
+                breaker.call(() -> {
+                    probing.countDown();
+                    probeRelease.await();
+                    throw new IllegalStateException("测试探测失败");
+                }, true);
+            } catch (Exception expected) {
+                // 预期的失败
+            }
+        });
+        probe.start();
+        probing.await();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        release.countDown();
+        stale.join();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        probeRelease.countDown();
+        probe.join();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void callFailing(CircuitBreaker breaker) throws Exception {
+        try {
+            breaker.call(() -> {
+                throw new IllegalStateException("测试调用失败");
+            }, true);
+            fail();
+        } catch (IllegalStateException expected) {
+            // 预期的失败
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.dataprocessor.threadpool;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试在途数据预算的阻塞和归还
+ */
+public class InFlightBudgetTest {
+
+    @Test
+    public void blockUntilReleased() throws InterruptedException {
+        InFlightBudget budget = new InFlightBudget(100, 1000);
+        budget.acquire(60, 100);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                budget.acquire(60, 100);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        // 超出条数的预算，需要等待
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        budget.release(60, 100);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(60, budget.getRecords());
+        assertEquals(1, budget.getWaits());
+        assertEquals(60, budget.getPeakRecords());
+    }
+
+    @Test
+    public void limitBytes() throws InterruptedException {
+        InFlightBudget budget = new InFlightBudget(0, 1000);
+        budget.acquire(1, 800);
+        Thread thread = new Thread(() -> {
+            try {
+                budget.acquire(1, 800);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        thread.join(100);
+        assertTrue("超出字节数的预算，需要等待", thread.isAlive());
+        budget.release(1, 800);
+        thread.join(1000);
+        assertEquals(800, budget.getBytes());
+    }
+
+    @Test
+    public void allowOversizedWhenEmpty() throws InterruptedException {
+        InFlightBudget budget = new InFlightBudget(10, 0);
+        // 没有在途数据时即使超出预算也允许，避免死锁
+        budget.acquire(50, 0);
+        assertEquals(50, budget.getRecords());
+        assertEquals(0, budget.getWaits());
+        budget.release(50, 0);
+        assertEquals(0, budget.getRecords());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requireLimit() {
+        new InFlightBudget(0, 0);
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.dataprocessor.threadpool;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试重试调度器的退避间隔、重试预算和不占用线程的批次重试
+ */
+public class RetrySchedulerTest {
+
+    @Test
+    public void exponentialBackoffWithJitter() {
+        RetryScheduler scheduler = new RetryScheduler(10, 100, 1000, 1);
+        try {
+            for (int i = 0; i < 100; i++) {
+                long first = scheduler.backoffMillis(1);
+                long third = scheduler.backoffMillis(3);
+                long tenth = scheduler.backoffMillis(10);
+                assertTrue(first >= 50 && first < 100);
+                assertTrue(third >= 200 && third < 400);
+                // 不超过上限
+                assertTrue(tenth >= 500 && tenth < 1000);
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void retryBudget() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler(3, 0, 0, 0.1);
+        try {
+            AtomicInteger calls = new AtomicInteger();
+            // 一直返回null，每次调用都用完全部重试，直到初始的令牌用完
+            for (int i = 0; i < 100; i++) {
+                assertNull(scheduler.call(() -> {
+                    calls.incrementAndGet();
+                    return null;
+                }, false));
+            }
+            assertTrue(scheduler.getRejectedRetries() > 0);
+            // 重试次数不超过初始余量加上调用次数的10%
+            assertTrue(scheduler.getRetries() <= RetryScheduler.MAX_BUDGET_TOKENS + 10);
+            assertEquals(100 + scheduler.getRetries(), calls.get());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void retryWithoutHoldingWorker() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler(3, 200, 200, 1);
+        // 只有一个线程，失败的批次等待重试期间其他批次可以执行
+        BatchExecutor executor = new BatchExecutor(Executors.newFixedThreadPool(1), null, scheduler);
+        try {
+            BatchGroup group = executor.newGroup();
+            AtomicInteger attempts = new AtomicInteger();
+            CountDownLatch otherDone = new CountDownLatch(1);
+            group.submitWithRetry(() -> {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new IllegalStateException("测试批次失败");
+                }
+                return true;
+            }, null, true);
+            group.submitWithRetry(() -> {
+                otherDone.countDown();
+                return true;
+            }, null, true);
+            assertTrue(otherDone.await(150, TimeUnit.MILLISECONDS));
+            group.await();
+            assertEquals(3, attempts.get());
+            assertEquals(2, group.getSucceeded());
+            assertEquals(2, scheduler.getRetries());
+        } finally {
+            executor.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void retryWithoutDelay() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler(3, 0, 0, 1);
+        BatchExecutor executor = new BatchExecutor(Executors.newFixedThreadPool(4), null, scheduler);
+        try {
+            // 没有退避间隔时，重新提交的任务可能在上一次执行结束之前就被线程池取出执行，次数不超过重试预算
+            for (int i = 0; i < 40; i++) {
+                BatchGroup group = executor.newGroup();
+                AtomicInteger attempts = new AtomicInteger();
+                group.submitWithRetry(() -> attempts.incrementAndGet() < 3 ? null : true, null, false);
+                group.await();
+                assertEquals(3, attempts.get());
+                assertEquals(1, group.getSucceeded());
+            }
+        } finally {
+            executor.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void resubmitOffTimerThread() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler(3, 0, 0, 1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(2);
+            List<String> threads = new CopyOnWriteArrayList<>();
+            // 模拟批次线程池已满，重新提交时一直阻塞
+            scheduler.schedule(() -> {
+                threads.add(Thread.currentThread().getName());
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }, 0);
+            scheduler.schedule(() -> {
+                threads.add(Thread.currentThread().getName());
+                done.countDown();
+            }, 10);
+            release.countDown();
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            // 重新提交在转交线程中执行，阻塞时不会占住定时线程
+            assertFalse(threads.contains("retry-scheduler"));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.dataprocessor.threadpool;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试虚拟线程池工厂，不支持虚拟线程的JDK上测试的是退回的平台线程池
+ */
+public class VirtualThreadPoolFactoryTest {
+
+    @Test
+    public void concurrencyLimit() throws Exception {
+        int limit = 4;
+        String name = "testVirtualPool";
+        ExecutorService executorService = new VirtualThreadPoolFactory(limit).createThreadPool(100, name);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executorService.submit(() -> {
+                int current = running.incrementAndGet();
+                maxRunning.accumulateAndGet(current, Math::max);
+                Thread.sleep(2);
+                running.decrementAndGet();
+                return Thread.currentThread().getName().startsWith(name);
+            }));
+        }
+        for (Future<Boolean> future : futures) {
+            assertTrue("线程名称都应该以 " + name + " 开头", future.get());
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue("并发数不能超过限制: " + maxRunning.get(), maxRunning.get() <= limit);
+    }
+
+    @Test
+    public void semaphoreExecutor() throws Exception {
+        SemaphoreExecutorService executorService = new SemaphoreExecutorService(
+                new DefaultThreadPoolFactory().createThreadPool(8, "testSemaphore"), 2);
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executorService.submit(() -> {
+                maxRunning.accumulateAndGet(executorService.getActiveCount(), Math::max);
+                Thread.sleep(2);
+                return true;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+        assertTrue("并发数不能超过限制: " + maxRunning.get(), maxRunning.get() <= 2);
+    }
+}